@@ -0,0 +1,174 @@
+package com.filemanager.benchmark;
+
+import com.filemanager.FileClassifier;
+import com.filemanager.entity.FileListing;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates the directories and listings the benchmarks run over. Everything is
+ * derived from a fixed seed, so every run sees the same names, sizes and types.
+ */
+final class Fixtures {
+    private static final String[] EXTENSIONS = {
+            "jpg", "png", "mp3", "mp4", "pdf", "doc", "zip", "txt", "xml", "apk", ""
+    };
+    private static final long SEED = 0x5eed;
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param prefix the start of the name of the directory
+     * @return a new empty directory in the temporary directory
+     */
+    static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+
+        if (!dir.delete() || !dir.mkdir())
+            throw new IOException("can't create " + dir);
+
+        return dir;
+    }
+
+    /**
+     * Fills a directory with empty files of mixed types and a few sub directories,
+     * like a camera or download folder. Listing it costs the stats, not the reads.
+     *
+     * @param dir     an empty directory
+     * @param entries the number of entries to create
+     */
+    static void createFlatDir(File dir, int entries) throws IOException {
+        Random random = new Random(SEED);
+
+        for (int i = 0; i < entries; i++) {
+            String name = name(random, i);
+
+            if (i % 50 == 0) {
+                new File(dir, name).mkdir();
+            } else {
+                File file = new File(dir, name + extension(random));
+                if (!file.createNewFile())
+                    throw new IOException("can't create " + file);
+            }
+        }
+    }
+
+    /**
+     * Creates a tree of directories with small files of random content.
+     *
+     * @param dir      an empty directory
+     * @param depth    the number of directory levels below dir
+     * @param fanout   the number of sub directories of every directory
+     * @param files    the number of files in every directory
+     * @param fileSize the size of every file in bytes
+     */
+    static void createTree(File dir, int depth, int fanout, int files, int fileSize) throws IOException {
+        fill_tree(dir, depth, fanout, files, new byte[fileSize], new Random(SEED));
+    }
+
+    /**
+     * @param file a file to create or overwrite
+     * @param size its size in bytes, of random content
+     */
+    static void createFile(File file, long size) throws IOException {
+        Random random = new Random(SEED);
+        byte[] data = new byte[64 * 1024];
+        FileOutputStream out = new FileOutputStream(file);
+
+        try {
+            for (long written = 0; written < size; written += data.length) {
+                random.nextBytes(data);
+                out.write(data, 0, (int) Math.min(data.length, size - written));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Builds a listing in memory, without any file behind it.
+     *
+     * @param entries the number of entries
+     * @return a listing in the order the names were generated
+     */
+    static FileListing createListing(int entries) {
+        Random random = new Random(SEED);
+        FileListing listing = new FileListing(entries);
+
+        for (int i = 0; i < entries; i++) {
+            if (i % 50 == 0) {
+                listing.add(name(random, i), 0, 0, FileClassifier.TYPE_DIRECTORY,
+                        FileListing.FLAG_DIRECTORY);
+            } else {
+                String extension = extension(random);
+                String name = name(random, i) + extension;
+                int type = extension.length() == 0 ? FileClassifier.TYPE_UNKNOWN :
+                        FileClassifier.typeOfExtension(extension.substring(1));
+
+                listing.add(name, (long) (random.nextDouble() * random.nextDouble() * 50000000L),
+                        random.nextLong() >>> 24, type, FileListing.FLAG_FILE);
+            }
+        }
+        return listing;
+    }
+
+    /**
+     * Deletes a directory and everything below it.
+     */
+    static void deleteTree(File file) {
+        File[] list = file.listFiles();
+
+        if (list != null) {
+            for (File child : list)
+                deleteTree(child);
+        }
+        file.delete();
+    }
+
+    private static void fill_tree(File dir, int depth, int fanout, int files, byte[] data,
+                                  Random random) throws IOException {
+        for (int i = 0; i < files; i++) {
+            random.nextBytes(data);
+
+            FileOutputStream out = new FileOutputStream(new File(dir, name(random, i) + extension(random)));
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+        }
+
+        if (depth == 0)
+            return;
+
+        for (int i = 0; i < fanout; i++) {
+            File child = new File(dir, "dir" + i);
+            child.mkdir();
+            fill_tree(child, depth - 1, fanout, files, data, random);
+        }
+    }
+
+    /*
+     * mixed case names of varying length, unique by their index
+     */
+    private static String name(Random random, int index) {
+        StringBuilder name = new StringBuilder();
+        int length = 4 + random.nextInt(16);
+
+        for (int i = 0; i < length; i++) {
+            char c = (char) ('a' + random.nextInt(26));
+            name.append(random.nextInt(4) == 0 ? Character.toUpperCase(c) : c);
+        }
+        return name.append('_').append(index).toString();
+    }
+
+    private static String extension(Random random) {
+        String extension = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+
+        return extension.length() == 0 ? "" : "." + extension;
+    }
+}
@@ -0,0 +1,61 @@
+package com.filemanager.benchmark;
+
+import com.filemanager.FileManager;
+import com.filemanager.entity.FileListing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists a directory the way the app does when a folder is opened: read the
+ * names, stat and classify every entry, highlight the second largest file and
+ * sort. The page cache is warm after the first iteration, so this measures the
+ * cost of the calls, not of the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ListingBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int entries;
+
+    private File mDir;
+    private FileManager mFileManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDir = Fixtures.createTempDir("listing");
+        Fixtures.createFlatDir(mDir, entries);
+        mFileManager = new FileManager();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fixtures.deleteTree(mDir);
+    }
+
+    /*
+     * setHomeDir runs populate_list on the directory
+     */
+    @Benchmark
+    public FileListing populateList() {
+        return mFileManager.setHomeDir(mDir.getPath());
+    }
+}
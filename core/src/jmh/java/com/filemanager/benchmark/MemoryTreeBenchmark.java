@@ -0,0 +1,88 @@
+package com.filemanager.benchmark;
+
+import com.filemanager.FileManager;
+import com.filemanager.MemoryFileSystem;
+import com.filemanager.SearchSession;
+import com.filemanager.TreeSnapshot;
+import com.filemanager.entity.FileListing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists, searches and sizes a generated tree held in a {@link MemoryFileSystem},
+ * so the numbers are those of the FileManager code alone and trees far larger
+ * than the disk fixtures can be measured. The largest tree has 1111 directories
+ * of 1000 files, 1.1 million entries. searchAsYouType types "f01" one key at a
+ * time into a {@link SearchSession}, against one walk of searchInDirectory.
+ * rescanTree finds what changed in the tree since a {@link TreeSnapshot},
+ * stat'ing every directory and listing none.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class MemoryTreeBenchmark {
+    private static final String ROOT = "/tree";
+
+    @Param({"100", "1000"})
+    public int files;
+
+    private FileManager mFileManager;
+    private TreeSnapshot mSnapshot;
+
+    @Setup
+    public void setUp() {
+        MemoryFileSystem fs = new MemoryFileSystem();
+
+        fs.generate(ROOT, 3, 10, files, 0x5eed);
+        mFileManager = new FileManager(fs);
+        mSnapshot = mFileManager.snapshotTree(ROOT, null, null, null);
+    }
+
+    @Benchmark
+    public FileListing populateList() {
+        return mFileManager.setHomeDir(ROOT + "/d0/d0/d0");
+    }
+
+    @Benchmark
+    public List<String> searchInDirectory() {
+        return mFileManager.searchInDirectory(ROOT, "f01");
+    }
+
+    /*
+     * one walk for the first key, then every key is answered from memory
+     */
+    @Benchmark
+    public List<String> searchAsYouType() {
+        SearchSession session = mFileManager.openSearch(ROOT);
+
+        session.query("f");
+        session.query("f0");
+        return session.query("f01");
+    }
+
+    @Benchmark
+    public long getDirSize() {
+        return mFileManager.getDirSize(ROOT);
+    }
+
+    @Benchmark
+    public TreeSnapshot rescanTree() {
+        return mFileManager.snapshotTree(ROOT, mSnapshot, null, null);
+    }
+}
@@ -0,0 +1,65 @@
+package com.filemanager.benchmark;
+
+import com.filemanager.FileManager;
+import com.filemanager.entity.FileListing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorts a listing in every sort mode, and finds its second largest file.
+ * The listings are generated in memory, so no file system is involved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SortBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int entries;
+
+    @Param({"0", "1", "2", "3"})
+    public int sortType;
+
+    private final FileManager mFileManager = new FileManager();
+    private final FileListing mWork = new FileListing();
+    private FileListing mUnsorted;
+
+    @Setup
+    public void setUp() {
+        mUnsorted = Fixtures.createListing(entries);
+    }
+
+    /*
+     * every sort starts from the same unsorted order
+     */
+    @Setup(Level.Invocation)
+    public void reset() {
+        mWork.copyFrom(mUnsorted);
+    }
+
+    @Benchmark
+    public FileListing sort() {
+        mWork.sort(sortType);
+        return mWork;
+    }
+
+    @Benchmark
+    public int secondLargest() {
+        return mFileManager.getSecondLargestIndex(mWork);
+    }
+}
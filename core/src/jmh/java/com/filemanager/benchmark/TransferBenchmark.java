@@ -0,0 +1,101 @@
+package com.filemanager.benchmark;
+
+import com.filemanager.FileManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies, zips and unzips generated data: one 16 MB file, and a tree of 111
+ * directories with 10 files of 16 KB each. Every invocation starts from an
+ * empty target directory and without a zip of the tree, so the numbers include
+ * creating the files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransferBenchmark {
+    private static final long LARGE_FILE = 16 * 1024 * 1024;
+
+    private File mSource;
+    private File mLargeFile;
+    private File mTree;
+    private File mZip;
+    private File mTarget;
+    private FileManager mFileManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        mSource = Fixtures.createTempDir("transfer");
+        mLargeFile = new File(mSource, "large.bin");
+        mTree = new File(mSource, "tree");
+        mTree.mkdir();
+
+        Fixtures.createFile(mLargeFile, LARGE_FILE);
+        Fixtures.createTree(mTree, 2, 10, 10, 16 * 1024);
+
+        mFileManager = new FileManager();
+
+        //createZipFile writes <dir>/<name>.zip inside the zipped directory
+        mFileManager.createZipFile(mTree.getPath());
+        mZip = new File(mSource, "tree.zip");
+        new File(mTree, "tree.zip").renameTo(mZip);
+    }
+
+    @Setup(Level.Invocation)
+    public void createTarget() throws IOException {
+        mTarget = Fixtures.createTempDir("target");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteTarget() {
+        Fixtures.deleteTree(mTarget);
+        new File(mTree, "tree.zip").delete();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fixtures.deleteTree(mSource);
+    }
+
+    @Benchmark
+    public int copyFile() {
+        return mFileManager.copyToDirectory(mLargeFile.getPath(), mTarget.getPath());
+    }
+
+    @Benchmark
+    public int copyTree() {
+        return mFileManager.copyToDirectory(mTree.getPath(), mTarget.getPath());
+    }
+
+    @Benchmark
+    public File zip() {
+        mFileManager.createZipFile(mTree.getPath());
+
+        return mTree;
+    }
+
+    @Benchmark
+    public File unzip() {
+        mFileManager.extractZipFiles(mZip.getPath(), mTarget.getPath());
+
+        return mTarget;
+    }
+}
@@ -0,0 +1,57 @@
+package com.filemanager.benchmark;
+
+import com.filemanager.FileManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walks a tree of 1111 directories holding 20 files each, the way a search and a
+ * folder size calculation do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TreeBenchmark {
+    private File mDir;
+    private FileManager mFileManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDir = Fixtures.createTempDir("tree");
+        Fixtures.createTree(mDir, 3, 10, 20, 512);
+        mFileManager = new FileManager();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fixtures.deleteTree(mDir);
+    }
+
+    @Benchmark
+    public List<String> searchInDirectory() {
+        return mFileManager.searchInDirectory(mDir.getPath(), "_1");
+    }
+
+    @Benchmark
+    public long getDirSize() {
+        return mFileManager.getDirSize(mDir.getPath());
+    }
+}
@@ -0,0 +1,305 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileStat;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the results of list and stat of another file system, so walking the same
+ * tree twice, or stat-ing every entry of a listing that was just shown, costs no
+ * I/O. Paths that don't exist are cached too. Changes made through this class
+ * drop the affected entries; changes made by others are only seen once an entry
+ * is older than the maximum age, or after {@link #invalidate(String)}.
+ * <br>
+ * <br>
+ * Entries are evicted least recently used first. Cached paths are indexed by
+ * their parent, so invalidating a directory only visits what is cached below it.
+ * A result read from the file system is not cached if anything was invalidated
+ * while it was read, since it may be older than the change.
+ */
+public class CachingFileSystem implements FileSystem {
+    //cached for paths that don't exist
+    private static final FileStat MISSING = new FileStat(false, false, -1, -1);
+    private static final String[] NOT_A_DIRECTORY = new String[0];
+
+    private final FileSystem mFileSystem;
+    private final int mMaxEntries;
+    private final long mMaxAge;
+    private final LinkedHashMap<String, Item> mStats;
+    private final LinkedHashMap<String, Item> mLists;
+    //the paths with something cached at or below them, by parent
+    private final HashMap<String, HashSet<String>> mChildren = new HashMap<String, HashSet<String>>();
+    //incremented by every invalidation
+    private long mGeneration = 0;
+    private long mHits = 0;
+    private long mMisses = 0;
+
+    private static class Item {
+        final Object value;
+        final long cachedAt;
+
+        Item(Object value, long cachedAt) {
+            this.value = value;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    /**
+     * @param fileSystem the file system whose results are cached
+     * @param maxEntries the number of stats, and separately of listings, to keep
+     * @param maxAge     the time in milliseconds an entry is trusted, 0 to trust it
+     *                   until it is evicted or invalidated
+     */
+    public CachingFileSystem(FileSystem fileSystem, int maxEntries, long maxAge) {
+        mFileSystem = fileSystem;
+        mMaxEntries = maxEntries;
+        mMaxAge = maxAge;
+        mStats = new LinkedHashMap<String, Item>(16, 0.75f, true);
+        mLists = new LinkedHashMap<String, Item>(16, 0.75f, true);
+    }
+
+    public String[] list(String path) {
+        Object cached = get(mLists, key(path));
+
+        if (cached == null) {
+            long generation = generation();
+            String[] list = mFileSystem.list(path);
+            put(mLists, key(path), list == null ? NOT_A_DIRECTORY : list, generation);
+
+            return list == null ? null : list.clone();
+        }
+        //callers may sort or change the array
+        return cached == NOT_A_DIRECTORY ? null : ((String[]) cached).clone();
+    }
+
+    public FileStat stat(String path) {
+        Object cached = get(mStats, key(path));
+
+        if (cached == null) {
+            long generation = generation();
+            FileStat stat = mFileSystem.stat(path);
+            put(mStats, key(path), stat == null ? MISSING : stat, generation);
+
+            return stat;
+        }
+        return cached == MISSING ? null : (FileStat) cached;
+    }
+
+    public boolean canRead(String path) {
+        return mFileSystem.canRead(path);
+    }
+
+    public boolean canWrite(String path) {
+        return mFileSystem.canWrite(path);
+    }
+
+    public boolean isSymlink(String path) {
+        return mFileSystem.isSymlink(path);
+    }
+
+    public InputStream openRead(String path) throws IOException {
+        return mFileSystem.openRead(path);
+    }
+
+    public OutputStream openWrite(final String path) throws IOException {
+        OutputStream stream = mFileSystem.openWrite(path);
+        invalidate(path);
+
+        //the size and time change while the file is written
+        return new FilterOutputStream(stream) {
+            @Override
+            public void write(byte[] data, int off, int len) throws IOException {
+                out.write(data, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    invalidate(path);
+                }
+            }
+        };
+    }
+
+    public boolean mkdir(String path) {
+        boolean created = mFileSystem.mkdir(path);
+
+        invalidate(path);
+        return created;
+    }
+
+    public boolean rename(String from, String to) {
+        boolean renamed = mFileSystem.rename(from, to);
+
+        invalidate(from);
+        invalidate(to);
+        return renamed;
+    }
+
+    public boolean delete(String path) {
+        boolean deleted = mFileSystem.delete(path);
+
+        invalidate(path);
+        return deleted;
+    }
+
+    public boolean link(String existing, String link) {
+        boolean linked = mFileSystem.link(existing, link);
+
+        invalidate(link);
+        return linked;
+    }
+
+    /**
+     * Drops what is cached about a path, everything below it and the listing and
+     * stat of its directory. Call it after the path was changed by someone else.
+     *
+     * @param path a full path
+     */
+    public synchronized void invalidate(String path) {
+        String key = key(path);
+        String parent = parent_of(key);
+
+        mGeneration++;
+        remove_tree(key);
+        unindex(key);
+
+        mStats.remove(parent);
+        mLists.remove(parent);
+        unindex(parent);
+    }
+
+    public synchronized void clear() {
+        mGeneration++;
+        mStats.clear();
+        mLists.clear();
+        mChildren.clear();
+    }
+
+    /**
+     * @return the number of list and stat calls answered from the cache
+     */
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return the number of list and stat calls passed to the file system
+     */
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    private synchronized Object get(LinkedHashMap<String, Item> items, String path) {
+        Item item = items.get(path);
+
+        if (item != null && mMaxAge > 0 && System.currentTimeMillis() - item.cachedAt > mMaxAge) {
+            items.remove(path);
+            unindex(path);
+            item = null;
+        }
+
+        if (item == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return item.value;
+    }
+
+    private synchronized long generation() {
+        return mGeneration;
+    }
+
+    /*
+     * caches a value read while the generation was the given one, unless
+     * something was invalidated since
+     */
+    private synchronized void put(LinkedHashMap<String, Item> items, String path, Object value,
+                                  long generation) {
+        if (generation != mGeneration)
+            return;
+
+        items.put(path, new Item(value, System.currentTimeMillis()));
+        index(path);
+
+        Iterator<Map.Entry<String, Item>> it = items.entrySet().iterator();
+        while (items.size() > mMaxEntries && it.hasNext()) {
+            String evicted = it.next().getKey();
+            it.remove();
+            unindex(evicted);
+        }
+    }
+
+    /*
+     * the same path with and without a trailing slash is one entry
+     */
+    private static String key(String path) {
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private static String parent_of(String key) {
+        int slash = key.lastIndexOf('/');
+
+        return slash <= 0 ? "/" : key.substring(0, slash);
+    }
+
+    /*
+     * records a path under its parent, and the parent under its own, up to the
+     * first one that was already recorded
+     */
+    private void index(String key) {
+        while (!key.equals("/")) {
+            String parent = parent_of(key);
+            HashSet<String> children = mChildren.get(parent);
+
+            if (children == null) {
+                children = new HashSet<String>();
+                mChildren.put(parent, children);
+            }
+            if (!children.add(key))
+                return;
+            key = parent;
+        }
+    }
+
+    /*
+     * forgets a path, and then its parents, once nothing is cached at or below it
+     */
+    private void unindex(String key) {
+        while (!key.equals("/") && !mStats.containsKey(key) && !mLists.containsKey(key)
+                && !mChildren.containsKey(key)) {
+            String parent = parent_of(key);
+            HashSet<String> children = mChildren.get(parent);
+
+            if (children == null || !children.remove(key) || !children.isEmpty())
+                return;
+            mChildren.remove(parent);
+            key = parent;
+        }
+    }
+
+    /*
+     * drops a path and everything cached below it, the path stays in the index of its parent
+     */
+    private void remove_tree(String key) {
+        mStats.remove(key);
+        mLists.remove(key);
+
+        HashSet<String> children = mChildren.remove(key);
+        if (children != null) {
+            for (String child : children)
+                remove_tree(child);
+        }
+    }
+}
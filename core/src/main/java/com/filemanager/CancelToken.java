@@ -0,0 +1,18 @@
+package com.filemanager;
+
+/**
+ * A flag shared between the code that starts a long running operation and
+ * the code that runs it. The operation checks the token between units of work
+ * and stops early once it has been cancelled. A token can not be reset.
+ */
+public final class CancelToken {
+    private volatile boolean mCancelled = false;
+
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+}
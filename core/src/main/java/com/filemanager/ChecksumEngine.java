@@ -0,0 +1,396 @@
+package com.filemanager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes CRC-32C, MD5 and SHA-256 checksums of files. Large files are read
+ * through memory mapped windows, so the data goes from the page cache to the
+ * hash function without being copied into a stream buffer; small files, for which
+ * a mapping costs more than it saves, are read into a direct buffer. Several files
+ * are hashed at the same time.
+ * <br>
+ * <br>
+ * Results are cached by path, size and modification time, so verifying the same
+ * unchanged files again costs one stat per file. Like FileManager, this class has
+ * no reference to any GUI activity.
+ */
+public class ChecksumEngine {
+    public static final int ALGORITHM_CRC32C = 0;
+    public static final int ALGORITHM_MD5 = 1;
+    public static final int ALGORITHM_SHA256 = 2;
+
+    private static final long MAP_WINDOW = 8 * 1024 * 1024;
+    private static final long MAP_THRESHOLD = 256 * 1024;
+    private static final int CHUNK = 64 * 1024;
+    private static final int CACHE_SIZE = 4096;
+
+    //one hasher per algorithm and thread, so small files don't each allocate a direct buffer
+    private static final ThreadLocal<Hasher[]> HASHERS = new ThreadLocal<Hasher[]>() {
+        @Override
+        protected Hasher[] initialValue() {
+            return new Hasher[ALGORITHM_SHA256 + 1];
+        }
+    };
+
+    private final int mThreads;
+    private final LinkedHashMap<String, Cached> mCache;
+
+    /**
+     * Receives the results of {@link ChecksumEngine#checksumAll(List, int, Listener, CancelToken)}.
+     * The methods are called from the hashing threads.
+     */
+    public interface Listener {
+        void onChecksum(String path, String checksum);
+
+        void onError(String path, IOException e);
+
+        /**
+         * @param bytesDone  bytes hashed so far, over all files
+         * @param bytesTotal bytes to hash in total
+         */
+        void onProgress(long bytesDone, long bytesTotal);
+    }
+
+    private static class Cached {
+        final long size;
+        final long modified;
+        final String checksum;
+
+        Cached(long size, long modified, String checksum) {
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+        }
+    }
+
+    private static class CacheMap extends LinkedHashMap<String, Cached> {
+        private static final long serialVersionUID = 1L;
+
+        CacheMap() {
+            super(64, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    }
+
+    /**
+     * @param threads the number of files hashed at the same time
+     */
+    public ChecksumEngine(int threads) {
+        mThreads = Math.max(1, threads);
+        mCache = new CacheMap();
+    }
+
+    /**
+     * Computes the checksum of one file on the calling thread.
+     *
+     * @param path      the full path of the file
+     * @param algorithm one of the ALGORITHM_ constants
+     * @param token     stops hashing between windows once cancelled, may be null
+     * @return the checksum as lowercase hex, null if cancelled
+     * @throws IOException if the file can't be read
+     */
+    public String checksum(String path, int algorithm, CancelToken token) throws IOException {
+        return checksum(path, algorithm, token, null, null, 0);
+    }
+
+    /**
+     * Computes the checksums of files, several at a time, and blocks until all are
+     * done or the token is cancelled. Directories are expanded to the files they
+     * contain, symbolic links to directories are not followed.
+     *
+     * @param paths     full paths of files and directories, such as the multi-select set
+     * @param algorithm one of the ALGORITHM_ constants
+     * @param listener  receives every checksum and the progress, may be null
+     * @param token     stops hashing once cancelled
+     * @return the checksum of every file that was hashed, by path
+     */
+    public Map<String, String> checksumAll(List<String> paths, final int algorithm,
+                                           final Listener listener, final CancelToken token) {
+        final ArrayList<String> files = new ArrayList<String>();
+        long total = 0;
+
+        for (String path : paths)
+            total += expand(new File(path), files);
+
+        final long bytesTotal = total;
+        final AtomicLong bytesDone = new AtomicLong();
+        LinkedHashMap<String, String> results = new LinkedHashMap<String, String>();
+        ArrayList<Future<String>> futures = new ArrayList<Future<String>>(files.size());
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+
+        try {
+            for (final String file : files) {
+                futures.add(pool.submit(new Callable<String>() {
+                    public String call() {
+                        try {
+                            String sum = checksum(file, algorithm, token, listener,
+                                    bytesDone, bytesTotal);
+
+                            if (sum != null && listener != null)
+                                listener.onChecksum(file, sum);
+                            return sum;
+
+                        } catch (IOException e) {
+                            if (listener != null)
+                                listener.onError(file, e);
+                            return null;
+                        }
+                    }
+                }));
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    String sum = futures.get(i).get();
+
+                    if (sum != null)
+                        results.put(files.get(i), sum);
+
+                } catch (ExecutionException e) {
+                    //reported to the listener by the task
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    token.cancel();
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * @param algorithm one of the ALGORITHM_ constants
+     * @return the name of the algorithm, as used in manifests
+     */
+    public static String getName(int algorithm) {
+        switch (algorithm) {
+            case ALGORITHM_CRC32C:
+                return "CRC32C";
+            case ALGORITHM_MD5:
+                return "MD5";
+            default:
+                return "SHA-256";
+        }
+    }
+
+    /**
+     * Creates the object that computes a checksum incrementally.
+     *
+     * @param algorithm one of the ALGORITHM_ constants
+     * @return a new, reset hasher
+     */
+    public static Hasher newHasher(int algorithm) {
+        return new Hasher(algorithm);
+    }
+
+    /**
+     * Computes one checksum from data handed to it piece by piece.
+     */
+    public static class Hasher {
+        private final Crc32c mCrc;
+        private final MessageDigest mDigest;
+        private byte[] mChunk;
+        private ByteBuffer mDirect;
+
+        private Hasher(int algorithm) {
+            if (algorithm == ALGORITHM_CRC32C) {
+                mCrc = new Crc32c();
+                mDigest = null;
+
+            } else {
+                mCrc = null;
+                try {
+                    mDigest = MessageDigest.getInstance(getName(algorithm));
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(getName(algorithm) + " is not available");
+                }
+            }
+        }
+
+        public void update(byte[] data, int off, int len) {
+            if (mCrc != null)
+                mCrc.update(data, off, len);
+            else
+                mDigest.update(data, off, len);
+        }
+
+        /**
+         * Hashes the remaining bytes of a buffer, mapped or direct ones are not copied
+         * unless the checksum is CRC-32C.
+         *
+         * @param buffer the data, its position is moved to its limit
+         */
+        public void update(ByteBuffer buffer) {
+            if (mDigest != null) {
+                mDigest.update(buffer);
+                return;
+            }
+
+            if (mChunk == null)
+                mChunk = new byte[CHUNK];
+
+            while (buffer.hasRemaining()) {
+                int len = Math.min(CHUNK, buffer.remaining());
+
+                buffer.get(mChunk, 0, len);
+                mCrc.update(mChunk, 0, len);
+            }
+        }
+
+        /* forgets the data of a checksum that was not finished */
+        private void reset() {
+            if (mDigest != null)
+                mDigest.reset();
+            else
+                mCrc.reset();
+        }
+
+        private ByteBuffer direct_buffer() {
+            if (mDirect == null)
+                mDirect = ByteBuffer.allocateDirect(CHUNK);
+
+            mDirect.clear();
+            return mDirect;
+        }
+
+        /**
+         * @return the checksum as lowercase hex. The hasher is reset.
+         */
+        public String finish() {
+            if (mDigest != null)
+                return DuplicateFinder.to_hex(mDigest.digest());
+
+            String hex = Long.toHexString(mCrc.getValue());
+            mCrc.reset();
+
+            return "00000000".substring(hex.length()) + hex;
+        }
+    }
+
+    private String checksum(String path, int algorithm, CancelToken token, Listener listener,
+                            AtomicLong bytesDone, long bytesTotal) throws IOException {
+        File file = new File(path);
+        long size = file.length();
+        long modified = file.lastModified();
+        String key = algorithm + ":" + file.getAbsolutePath();
+        Cached cached;
+
+        synchronized (mCache) {
+            cached = mCache.get(key);
+        }
+        if (cached != null && cached.size == size && cached.modified == modified) {
+            report(listener, bytesDone, size, bytesTotal);
+            return cached.checksum;
+        }
+
+        Hasher hasher = thread_hasher(algorithm);
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            FileChannel channel = in.getChannel();
+            size = channel.size();
+
+            if (size < MAP_THRESHOLD) {
+                ByteBuffer buffer = hasher.direct_buffer();
+                int read;
+
+                while ((read = channel.read(buffer)) != -1) {
+                    buffer.flip();
+                    hasher.update(buffer);
+                    buffer.clear();
+                    report(listener, bytesDone, read, bytesTotal);
+                }
+            } else {
+                for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                    if (token != null && token.isCancelled())
+                        return null;
+
+                    long len = Math.min(MAP_WINDOW, size - pos);
+                    hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, len));
+                    report(listener, bytesDone, len, bytesTotal);
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        String sum = hasher.finish();
+
+        //only cache if the file did not change while it was read
+        if (file.lastModified() == modified && file.length() == size) {
+            synchronized (mCache) {
+                mCache.put(key, new Cached(size, modified, sum));
+            }
+        }
+        return sum;
+    }
+
+    /*
+     * the reset hasher of the calling thread, it is reused for every file the thread hashes
+     */
+    private static Hasher thread_hasher(int algorithm) {
+        //like getName, anything else is SHA-256
+        int slot = algorithm == ALGORITHM_CRC32C || algorithm == ALGORITHM_MD5 ? algorithm : ALGORITHM_SHA256;
+        Hasher[] hashers = HASHERS.get();
+        Hasher hasher = hashers[slot];
+
+        if (hasher == null)
+            hashers[slot] = hasher = newHasher(slot);
+        else
+            hasher.reset();
+        return hasher;
+    }
+
+    private static void report(Listener listener, AtomicLong bytesDone, long bytes, long bytesTotal) {
+        if (listener != null && bytesDone != null)
+            listener.onProgress(bytesDone.addAndGet(bytes), bytesTotal);
+    }
+
+    /*
+     * adds the files below a path to the list and returns their total size
+     */
+    private static long expand(File file, List<String> files) {
+        if (file.isFile()) {
+            files.add(file.getPath());
+            return file.length();
+        }
+
+        long total = 0;
+        File[] list = file.listFiles();
+
+        if (list != null) {
+            for (File child : list) {
+                try {
+                    if (child.isFile() || !FileManager.isSymlink(child))
+                        total += expand(child, files);
+                } catch (IOException e) {
+                    //unresolvable link, skip it
+                }
+            }
+        }
+        return total;
+    }
+}
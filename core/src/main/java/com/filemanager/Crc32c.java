@@ -0,0 +1,70 @@
+package com.filemanager;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli), the checksum used by iSCSI, ext4 and btrfs. The class
+ * library of this platform only has the older CRC-32, so this is a software
+ * implementation that processes eight bytes per step with eight lookup tables.
+ */
+public final class Crc32c implements Checksum {
+    private static final int POLYNOMIAL = 0x82f63b78;
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+
+            for (int k = 0; k < 8; k++)
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+
+            TABLES[0][n] = crc;
+        }
+
+        for (int n = 0; n < 256; n++) {
+            int crc = TABLES[0][n];
+
+            for (int t = 1; t < 8; t++) {
+                crc = TABLES[0][crc & 0xff] ^ (crc >>> 8);
+                TABLES[t][n] = crc;
+            }
+        }
+    }
+
+    private int mCrc = 0xffffffff;
+
+    public void update(int b) {
+        mCrc = TABLES[0][(mCrc ^ b) & 0xff] ^ (mCrc >>> 8);
+    }
+
+    public void update(byte[] b, int off, int len) {
+        int crc = mCrc;
+        int end = off + len;
+        int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+        int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+
+        while (end - off >= 8) {
+            int lo = crc ^ ((b[off] & 0xff) | (b[off + 1] & 0xff) << 8 |
+                    (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24);
+            int hi = (b[off + 4] & 0xff) | (b[off + 5] & 0xff) << 8 |
+                    (b[off + 6] & 0xff) << 16 | (b[off + 7] & 0xff) << 24;
+
+            crc = t7[lo & 0xff] ^ t6[(lo >>> 8) & 0xff] ^ t5[(lo >>> 16) & 0xff] ^ t4[lo >>> 24] ^
+                    t3[hi & 0xff] ^ t2[(hi >>> 8) & 0xff] ^ t1[(hi >>> 16) & 0xff] ^ t0[hi >>> 24];
+            off += 8;
+        }
+
+        while (off < end)
+            crc = t0[(crc ^ b[off++]) & 0xff] ^ (crc >>> 8);
+
+        mCrc = crc;
+    }
+
+    public long getValue() {
+        return (~mCrc) & 0xffffffffL;
+    }
+
+    public void reset() {
+        mCrc = 0xffffffff;
+    }
+}
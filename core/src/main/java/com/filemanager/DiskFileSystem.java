@@ -0,0 +1,126 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileStat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+
+/**
+ * The real file system, through java.io.File. Hard links are made through
+ * java.nio.file on a desktop JVM and android.system.Os from Android 5.0, both
+ * looked up by reflection; where neither exists {@link #link(String, String)}
+ * returns false.
+ */
+public class DiskFileSystem implements FileSystem {
+    private static final Method NIO_LINK;
+    private static final Method NIO_TO_PATH;
+    private static final Method OS_LINK;
+
+    static {
+        Method nioLink = null;
+        Method toPath = null;
+        Method osLink = null;
+
+        try {
+            Class<?> path = Class.forName("java.nio.file.Path");
+            Class<?> files = Class.forName("java.nio.file.Files");
+
+            toPath = File.class.getMethod("toPath");
+            nioLink = files.getMethod("createLink", path, path);
+        } catch (Exception e) {
+            //not a Java 7 runtime
+        }
+        try {
+            osLink = Class.forName("android.system.Os").getMethod("link", String.class, String.class);
+        } catch (Exception e) {
+            //not Android, or older than 5.0
+        }
+
+        NIO_LINK = nioLink;
+        NIO_TO_PATH = toPath;
+        OS_LINK = osLink;
+    }
+
+    public String[] list(String path) {
+        return new File(path).list();
+    }
+
+    /*
+     * isDirectory, isFile, length and lastModified are a stat call each on this
+     * platform, the type and size are not asked for directories
+     */
+    public FileStat stat(String path) {
+        File file = new File(path);
+        long modified = file.lastModified();
+
+        if (modified == 0 && !file.exists())
+            return null;
+
+        boolean directory = file.isDirectory();
+
+        //a FIFO or a device is neither, it must not be read like a file
+        return new FileStat(directory, !directory && file.isFile(), directory ? 0 : file.length(), modified);
+    }
+
+    public boolean canRead(String path) {
+        return new File(path).canRead();
+    }
+
+    public boolean canWrite(String path) {
+        return new File(path).canWrite();
+    }
+
+    public boolean isSymlink(String path) {
+        try {
+            return FileManager.isSymlink(new File(path));
+        } catch (IOException e) {
+            //a link that can't be resolved
+            return true;
+        }
+    }
+
+    public InputStream openRead(String path) throws IOException {
+        return new FileInputStream(path);
+    }
+
+    public OutputStream openWrite(String path) throws IOException {
+        return new FileOutputStream(path);
+    }
+
+    public boolean mkdir(String path) {
+        return new File(path).mkdir();
+    }
+
+    public boolean rename(String from, String to) {
+        return new File(from).renameTo(new File(to));
+    }
+
+    public boolean delete(String path) {
+        return new File(path).delete();
+    }
+
+    /*
+     * the link call fails with an exception across file systems or where links
+     * are not supported, such as on a FAT formatted SD card
+     */
+    public boolean link(String existing, String link) {
+        try {
+            if (NIO_LINK != null) {
+                NIO_LINK.invoke(null, NIO_TO_PATH.invoke(new File(link)), NIO_TO_PATH.invoke(new File(existing)));
+                return true;
+            }
+            if (OS_LINK != null) {
+                OS_LINK.invoke(null, existing, link);
+                return true;
+            }
+        } catch (Exception e) {
+            //no link, the caller falls back to a copy
+        }
+        return false;
+    }
+}
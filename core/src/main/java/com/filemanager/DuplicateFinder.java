@@ -0,0 +1,385 @@
+package com.filemanager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds files with identical content under one or more directories. The work
+ * is done in three stages so that most files are never read:
+ * <ol>
+ * <li>one walk of the trees groups files by size, a file with a unique size has no duplicate</li>
+ * <li>files that share a size are told apart by hashing their first and last few KB</li>
+ * <li>files that still match are hashed completely, in parallel, with memory mapped reads</li>
+ * </ol>
+ * Groups of duplicates are handed to the listener as soon as they are confirmed.
+ * Empty files and symbolic links are skipped, so a file is never reported as a
+ * duplicate of a link to it. Directories are told apart by their canonical path,
+ * so roots that overlap or are spelled differently are walked once. Hard links
+ * can't be told apart through java.io and are reported like copies. Content is
+ * compared by MD5, which is fast and more than enough to tell files apart that
+ * already share their size and samples.
+ * <br>
+ * <br>
+ * Like FileManager, this class has no reference to any GUI activity and runs on
+ * the calling thread, only the full hashes are computed by its own threads.
+ */
+public class DuplicateFinder {
+    private static final int SAMPLE = 4096;
+    private static final long MAP_WINDOW = 16 * 1024 * 1024;
+    private static final String ALGORITHM = "MD5";
+
+    private final int mThreads;
+    private long mFilesScanned;
+    private long mFilesRead;
+    private long mBytesRead;
+
+    /**
+     * Receives the groups of duplicate files.
+     */
+    public interface Listener {
+        /**
+         * Called on the thread that runs {@link DuplicateFinder#find(List, Listener, CancelToken)}.
+         *
+         * @param size  the size of each file in bytes
+         * @param paths two or more files with the same content
+         */
+        void onDuplicates(long size, List<String> paths);
+    }
+
+    /**
+     * @param threads the number of files hashed at the same time in the last stage
+     */
+    public DuplicateFinder(int threads) {
+        mThreads = Math.max(1, threads);
+    }
+
+    /**
+     * Searches the given directories for duplicate files. Directories that are
+     * inside another root, or reached through another path, are only walked once.
+     *
+     * @param roots    full paths of the directories to search
+     * @param listener receives every group of duplicates
+     * @param token    stops the search between files once cancelled
+     * @return the number of duplicate groups found
+     */
+    public int find(List<String> roots, Listener listener, CancelToken token) {
+        mFilesScanned = mFilesRead = mBytesRead = 0;
+
+        HashMap<Long, ArrayList<String>> bySize = group_by_size(roots, token);
+        ArrayList<ArrayList<String>> candidates = new ArrayList<ArrayList<String>>();
+        int found = 0;
+
+        Iterator<Map.Entry<Long, ArrayList<String>>> it = bySize.entrySet().iterator();
+        while (it.hasNext() && !token.isCancelled()) {
+            Map.Entry<Long, ArrayList<String>> group = it.next();
+            long size = group.getKey().longValue();
+            it.remove();
+
+            if (group.getValue().size() < 2)
+                continue;
+
+            for (ArrayList<String> same : group_by_samples(group.getValue(), size, token)) {
+                //the samples covered the whole file, it is already a full comparison
+                if (size <= 2 * SAMPLE) {
+                    listener.onDuplicates(size, same);
+                    found++;
+                } else {
+                    candidates.add(same);
+                }
+            }
+        }
+
+        if (!candidates.isEmpty() && !token.isCancelled())
+            found += hash_candidates(candidates, listener, token);
+
+        return found;
+    }
+
+    /**
+     * @return the number of files seen by the last search
+     */
+    public long getFilesScanned() {
+        return mFilesScanned;
+    }
+
+    /**
+     * @return the number of files the last search had to read, partly or completely
+     */
+    public synchronized long getFilesRead() {
+        return mFilesRead;
+    }
+
+    /**
+     * @return the number of bytes the last search read
+     */
+    public synchronized long getBytesRead() {
+        return mBytesRead;
+    }
+
+    /*
+     * stage one: walks every root once and groups non empty files by size
+     */
+    private HashMap<Long, ArrayList<String>> group_by_size(List<String> roots, CancelToken token) {
+        HashMap<Long, ArrayList<String>> bySize = new HashMap<Long, ArrayList<String>>();
+        HashSet<String> walked = new HashSet<String>();
+        ArrayList<File> pending = new ArrayList<File>();
+
+        for (String root : roots)
+            pending.add(new File(root));
+
+        while (!pending.isEmpty() && !token.isCancelled()) {
+            File dir = pending.remove(pending.size() - 1);
+            String canonical;
+
+            try {
+                canonical = dir.getCanonicalPath();
+            } catch (IOException e) {
+                continue;
+            }
+            if (!walked.add(canonical))
+                continue;
+
+            File[] list = dir.listFiles();
+            if (list == null)
+                continue;
+
+            String prefix = canonical.endsWith("/") ? canonical : canonical + "/";
+
+            for (File file : list) {
+                try {
+                    //an entry that resolves anywhere else is a symbolic link
+                    if (!file.getCanonicalPath().equals(prefix + file.getName()))
+                        continue;
+
+                    if (file.isDirectory()) {
+                        if (file.canRead())
+                            pending.add(file);
+
+                    } else if (file.isFile() && file.canRead()) {
+                        long length = file.length();
+                        mFilesScanned++;
+
+                        if (length == 0)
+                            continue;
+
+                        Long key = Long.valueOf(length);
+                        ArrayList<String> same = bySize.get(key);
+                        if (same == null) {
+                            same = new ArrayList<String>(2);
+                            bySize.put(key, same);
+                        }
+                        same.add(file.getPath());
+                    }
+                } catch (IOException e) {
+                    //unresolvable link, not worth comparing
+                }
+            }
+        }
+        return bySize;
+    }
+
+    /*
+     * stage two: splits files of the same size by a hash of their first and last SAMPLE bytes
+     */
+    private List<ArrayList<String>> group_by_samples(List<String> paths, long size, CancelToken token) {
+        HashMap<String, ArrayList<String>> bySample = new HashMap<String, ArrayList<String>>();
+        ArrayList<ArrayList<String>> groups = new ArrayList<ArrayList<String>>();
+        MessageDigest digest = new_digest();
+        ByteBuffer buffer = ByteBuffer.allocate(SAMPLE);
+
+        for (String path : paths) {
+            if (token.isCancelled())
+                break;
+
+            try {
+                String key = sample_hash(path, size, digest, buffer);
+                ArrayList<String> same = bySample.get(key);
+
+                if (same == null) {
+                    same = new ArrayList<String>(2);
+                    bySample.put(key, same);
+                }
+                same.add(path);
+
+            } catch (IOException e) {
+                //the file changed or disappeared, it can't be compared
+            }
+        }
+
+        for (ArrayList<String> same : bySample.values()) {
+            if (same.size() > 1)
+                groups.add(same);
+        }
+        return groups;
+    }
+
+    /*
+     * stage three: hashes every remaining file completely on the thread pool and
+     * reports the groups in order, each one as soon as all of its files are hashed.
+     */
+    private int hash_candidates(List<ArrayList<String>> candidates, Listener listener, final CancelToken token) {
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+        ArrayList<ArrayList<Future<String>>> pending = new ArrayList<ArrayList<Future<String>>>();
+        int found = 0;
+
+        try {
+            for (ArrayList<String> group : candidates) {
+                ArrayList<Future<String>> hashes = new ArrayList<Future<String>>(group.size());
+
+                for (final String path : group) {
+                    hashes.add(pool.submit(new Callable<String>() {
+                        public String call() throws IOException {
+                            return token.isCancelled() ? null : full_hash(path, token);
+                        }
+                    }));
+                }
+                pending.add(hashes);
+            }
+
+            for (int i = 0; i < candidates.size() && !token.isCancelled(); i++) {
+                ArrayList<String> group = candidates.get(i);
+                ArrayList<Future<String>> hashes = pending.get(i);
+                HashMap<String, ArrayList<String>> byHash = new HashMap<String, ArrayList<String>>();
+
+                for (int j = 0; j < group.size(); j++) {
+                    String hash = get(hashes.get(j));
+                    if (hash == null)
+                        continue;
+
+                    ArrayList<String> same = byHash.get(hash);
+                    if (same == null) {
+                        same = new ArrayList<String>(2);
+                        byHash.put(hash, same);
+                    }
+                    same.add(group.get(j));
+                }
+
+                long size = new File(group.get(0)).length();
+                for (ArrayList<String> same : byHash.values()) {
+                    if (same.size() > 1 && !token.isCancelled()) {
+                        listener.onDuplicates(size, same);
+                        found++;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return found;
+    }
+
+    private static String get(Future<String> future) {
+        try {
+            return future.get();
+
+        } catch (ExecutionException e) {
+            return null;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private String sample_hash(String path, long size, MessageDigest digest, ByteBuffer buffer) throws IOException {
+        FileInputStream in = new FileInputStream(path);
+        FileChannel channel = in.getChannel();
+
+        try {
+            if (channel.size() != size)
+                throw new IOException(path + " changed size");
+
+            digest.reset();
+            read_fully(channel, 0, buffer);
+            digest.update(buffer);
+
+            if (size > SAMPLE) {
+                read_fully(channel, Math.max(SAMPLE, size - SAMPLE), buffer);
+                digest.update(buffer);
+            }
+            count_read(0, 1);
+
+            return to_hex(digest.digest());
+
+        } finally {
+            in.close();
+        }
+    }
+
+    private String full_hash(String path, CancelToken token) throws IOException {
+        MessageDigest digest = new_digest();
+        FileInputStream in = new FileInputStream(path);
+        FileChannel channel = in.getChannel();
+
+        try {
+            long size = channel.size();
+
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                if (token.isCancelled())
+                    return null;
+
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                        Math.min(MAP_WINDOW, size - pos)));
+            }
+            count_read(size, 1);
+
+            return to_hex(digest.digest());
+
+        } finally {
+            in.close();
+        }
+    }
+
+    private void read_fully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                break;
+        }
+        buffer.flip();
+        count_read(buffer.limit(), 0);
+    }
+
+    private synchronized void count_read(long bytes, int files) {
+        mBytesRead += bytes;
+        mFilesRead += files;
+    }
+
+    static MessageDigest new_digest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available");
+        }
+    }
+
+    static String to_hex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        String digits = "0123456789abcdef";
+
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = digits.charAt((bytes[i] >> 4) & 0xf);
+            hex[2 * i + 1] = digits.charAt(bytes[i] & 0xf);
+        }
+        return new String(hex);
+    }
+}
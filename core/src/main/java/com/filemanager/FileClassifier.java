@@ -0,0 +1,215 @@
+package com.filemanager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * This class decides what kind of file an entry is. The result is a small
+ * integer type code that is computed once, when the directory is listed, and
+ * stored with the {@link com.filemanager.entity.FileEntity}. Everything that
+ * needs to know the kind of a file (icons, thumbnails, filters) reads that code
+ * instead of parsing the extension again.
+ * <br>
+ * <br>
+ * Classification is a single hash lookup on the lowercased extension. Files
+ * without an extension can optionally be identified by their first few bytes.
+ * Like FileManager, this class has no reference to any GUI activity.
+ */
+public class FileClassifier {
+    public static final int TYPE_UNKNOWN = 0;
+    public static final int TYPE_DIRECTORY = 1;
+    public static final int TYPE_PDF = 2;
+    public static final int TYPE_AUDIO = 3;
+    public static final int TYPE_IMAGE = 4;
+    public static final int TYPE_ARCHIVE = 5;
+    public static final int TYPE_VIDEO = 6;
+    public static final int TYPE_WORD = 7;
+    public static final int TYPE_EXCEL = 8;
+    public static final int TYPE_PPT = 9;
+    public static final int TYPE_HTML = 10;
+    public static final int TYPE_XML = 11;
+    public static final int TYPE_CONFIG = 12;
+    public static final int TYPE_APK = 13;
+    public static final int TYPE_JAR = 14;
+
+    private static final int SNIFF_LENGTH = 12;
+    private static final HashMap<String, Integer> EXTENSIONS = new HashMap<String, Integer>();
+
+    static {
+        put(TYPE_PDF, "pdf");
+        put(TYPE_AUDIO, "mp3", "wma", "m4a", "m4p");
+        put(TYPE_IMAGE, "png", "jpg", "jpeg", "gif", "tiff", "tif");
+        put(TYPE_ARCHIVE, "zip", "gzip", "gz");
+        put(TYPE_VIDEO, "m4v", "wmv", "3gp", "mp4");
+        put(TYPE_WORD, "doc", "docx");
+        put(TYPE_EXCEL, "xls", "xlsx");
+        put(TYPE_PPT, "ppt", "pptx");
+        put(TYPE_HTML, "html");
+        put(TYPE_XML, "xml");
+        put(TYPE_CONFIG, "conf");
+        put(TYPE_APK, "apk");
+        put(TYPE_JAR, "jar");
+    }
+
+    private boolean mSniffContent = false;
+
+    private static void put(int type, String... extensions) {
+        Integer code = Integer.valueOf(type);
+
+        for (String ext : extensions)
+            EXTENSIONS.put(ext, code);
+    }
+
+    /**
+     * If true, files that have no extension are identified by reading
+     * their first few bytes. This costs one small read per such file.
+     *
+     * @param sniff true to look at the content of files without an extension
+     */
+    public void setSniffContent(boolean sniff) {
+        mSniffContent = sniff;
+    }
+
+    /**
+     * Computes the type code of a directory entry.
+     *
+     * @param file        the entry on disk, only read when content sniffing is on
+     * @param name        the name of the entry
+     * @param isDirectory true if the entry is a directory
+     * @return one of the TYPE_ constants of this class
+     */
+    public int classify(File file, String name, boolean isDirectory) {
+        if (isDirectory)
+            return TYPE_DIRECTORY;
+
+        int dot = name.lastIndexOf('.');
+
+        if (dot >= 0 && dot < name.length() - 1)
+            return typeOfExtension(name.substring(dot + 1));
+
+        if (mSniffContent && file != null) {
+            try {
+                return sniff(new FileInputStream(file));
+            } catch (IOException e) {
+                return TYPE_UNKNOWN;
+            }
+        }
+
+        return TYPE_UNKNOWN;
+    }
+
+    /**
+     * Computes the type code of a directory entry of any file system.
+     *
+     * @param fs          the file system of the entry
+     * @param path        the full path of the entry, only read when content sniffing is on
+     * @param name        the name of the entry
+     * @param isDirectory true if the entry is a directory
+     * @return one of the TYPE_ constants of this class
+     */
+    public int classify(FileSystem fs, String path, String name, boolean isDirectory) {
+        if (isDirectory)
+            return TYPE_DIRECTORY;
+
+        int dot = name.lastIndexOf('.');
+
+        if (dot >= 0 && dot < name.length() - 1)
+            return typeOfExtension(name.substring(dot + 1));
+
+        if (mSniffContent) {
+            try {
+                return sniff(fs.openRead(path));
+            } catch (IOException e) {
+                return TYPE_UNKNOWN;
+            }
+        }
+
+        return TYPE_UNKNOWN;
+    }
+
+    /**
+     * @param extension the file extension without the dot, in any case
+     * @return the type code registered for the extension, TYPE_UNKNOWN otherwise
+     */
+    public static int typeOfExtension(String extension) {
+        Integer type = EXTENSIONS.get(extension.toLowerCase(Locale.US));
+
+        return type == null ? TYPE_UNKNOWN : type.intValue();
+    }
+
+    /**
+     * @param type a type code
+     * @return true if a thumbnail can be decoded for files of this type
+     */
+    public static boolean isImage(int type) {
+        return type == TYPE_IMAGE;
+    }
+
+    /*
+     * Identifies a file from its magic number. Only the formats that have
+     * their own icon are recognised, everything else stays unknown.
+     * The stream is closed.
+     */
+    private static int sniff(InputStream in) {
+        byte[] head = new byte[SNIFF_LENGTH];
+        int len = 0;
+
+        try {
+            int read;
+
+            while (len < SNIFF_LENGTH && (read = in.read(head, len, SNIFF_LENGTH - len)) != -1)
+                len += read;
+
+        } catch (IOException e) {
+            return TYPE_UNKNOWN;
+
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                //nothing to do, the header was already read
+            }
+        }
+
+        if (startsWith(head, len, 0x89, 'P', 'N', 'G') ||
+                startsWith(head, len, 0xff, 0xd8, 0xff) ||
+                startsWith(head, len, 'G', 'I', 'F', '8') ||
+                startsWith(head, len, 'I', 'I', 0x2a, 0x00) ||
+                startsWith(head, len, 'M', 'M', 0x00, 0x2a))
+            return TYPE_IMAGE;
+
+        if (startsWith(head, len, '%', 'P', 'D', 'F'))
+            return TYPE_PDF;
+
+        if (startsWith(head, len, 'P', 'K', 0x03, 0x04) ||
+                startsWith(head, len, 0x1f, 0x8b))
+            return TYPE_ARCHIVE;
+
+        if (startsWith(head, len, 'I', 'D', '3') ||
+                startsWith(head, len, 0xff, 0xfb))
+            return TYPE_AUDIO;
+
+        if (len >= 8 && head[4] == 'f' && head[5] == 't' && head[6] == 'y' && head[7] == 'p')
+            return TYPE_VIDEO;
+
+        if (startsWith(head, len, '<', '?', 'x', 'm', 'l'))
+            return TYPE_XML;
+
+        return TYPE_UNKNOWN;
+    }
+
+    private static boolean startsWith(byte[] head, int len, int... magic) {
+        if (len < magic.length)
+            return false;
+
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[i] & 0xff) != magic[i])
+                return false;
+        }
+        return true;
+    }
+}
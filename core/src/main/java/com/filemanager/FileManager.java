@@ -0,0 +1,1625 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileListing;
+import com.filemanager.entity.FileStat;
+import com.filemanager.entity.PathNode;
+import com.filemanager.entity.StorageReport;
+import com.filemanager.entity.SyncPlan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * This class is completely modular, which is to say that it has
+ * no reference to the any GUI activity. This class could be taken
+ * and placed into in other java (not just Android) project and work.
+ * <br>
+ * <br>
+ * This class handles all file and folder operations on the system.
+ * This class dictates how files and folders are copied/pasted, (un)zipped
+ * renamed and searched. The EventHandler class will generally call these
+ * methods and have them performed in a background thread. Threading is not
+ * done in this class.
+ */
+public class FileManager {
+    /**
+     * Copies are not verified.
+     */
+    public static final int VERIFY_OFF = 0;
+    /**
+     * The source is hashed while it is copied and a manifest of the checksums is
+     * written, which costs no extra read.
+     */
+    public static final int VERIFY_CHECKSUM = 1;
+    /**
+     * Like VERIFY_CHECKSUM, and every copy is synced to the storage and read
+     * back once to compare its checksum, one extra pass over the copied data.
+     */
+    public static final int VERIFY_REREAD = 2;
+    /**
+     * Files are copied byte by byte.
+     */
+    public static final int COPY_MODE_DATA = 0;
+    /**
+     * Files are hard linked where the file system allows it, which costs no time
+     * or space for the data, and copied otherwise. Only for trees whose files are
+     * replaced rather than changed in place, since a change made through one name
+     * shows through the other.
+     */
+    public static final int COPY_MODE_LINK = 1;
+
+    private static final int BUFFER = 2048;
+    private static final int CACHE_ENTRIES = 20000;
+    private static final int MAX_VISITED = 64;
+    private static final int PREFETCH_DIRS = 8;
+    private static final int PREFETCH_ENTRIES = 4000;
+
+    private static final Metrics METRICS = Metrics.getDefault();
+    private static final Metrics.Histogram LISTING_TIME = METRICS.histogram("listing.time");
+    private static final Metrics.Counter LISTING_ENTRIES = METRICS.counter("listing.entries");
+    private static final Metrics.Counter LISTING_STATS = METRICS.counter("listing.stat_calls");
+    private static final Metrics.Counter LISTING_CACHE_HITS = METRICS.counter("listing.cache_hits");
+    private static final Metrics.Histogram SORT_TIME = METRICS.histogram("sort.time");
+    private static final Metrics.Counter SORT_ENTRIES = METRICS.counter("sort.entries");
+    private static final Metrics.Histogram SEARCH_TIME = METRICS.histogram("search.time");
+    private static final Metrics.Counter SEARCH_ENTRIES = METRICS.counter("search.entries");
+    private static final Metrics.Histogram COPY_TIME = METRICS.histogram("copy.time");
+    private static final Metrics.Counter COPY_BYTES = METRICS.counter("copy.bytes");
+    private static final Metrics.Counter COPY_FILES = METRICS.counter("copy.files");
+    private static final Metrics.Counter COPY_LINKS = METRICS.counter("copy.links");
+    private static final Metrics.Histogram ZIP_TIME = METRICS.histogram("zip.time");
+    private static final Metrics.Counter ZIP_BYTES = METRICS.counter("zip.bytes");
+    private static final Metrics.Counter ZIP_FILES = METRICS.counter("zip.files");
+    private static final Metrics.Histogram EXTRACT_TIME = METRICS.histogram("extract.time");
+    private static final Metrics.Counter EXTRACT_BYTES = METRICS.counter("extract.bytes");
+    private static final Metrics.Counter EXTRACT_FILES = METRICS.counter("extract.files");
+
+    private boolean mShowHiddenFiles = false;
+    private int mSortType = FileListing.SORT_ALPHA;
+    private int mVerifyPolicy = VERIFY_OFF;
+    private int mVerifyAlgorithm = ChecksumEngine.ALGORITHM_SHA256;
+    private int mCopyMode = COPY_MODE_DATA;
+    private CopyListener mCopyListener;
+    private long mDirSize = 0;
+    private Stack<PathNode> mPathStack;
+    //the last listing of the current directory, replaced by a new one on every change
+    private volatile FileListing mDirContent = FileListing.EMPTY;
+    private final FileSystem mFileSystem;
+    private final JobScheduler mScheduler = JobScheduler.getDefault();
+    private final FileClassifier mClassifier = new FileClassifier();
+    private final ListingCache mCache;
+    private final Trash mTrash;
+    private final ChecksumEngine mChecksums =
+            new ChecksumEngine(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    //recently entered directories, least recent first
+    private final LinkedHashMap<String, Boolean> mVisited = new LinkedHashMap<String, Boolean>();
+
+    /**
+     * Receives the pages of a streamed directory listing.
+     */
+    public interface ListingListener {
+        /**
+         * Called once per page, on the thread that runs the listing.
+         *
+         * @param listing   a new sorted listing of every entry loaded so far. It is
+         *                  frozen and can be kept without a copy.
+         * @param remaining the number of entries that still have to be loaded
+         * @return false to stop listing, true to continue with the next page
+         */
+        boolean onPage(FileListing listing, int remaining);
+    }
+
+    /**
+     * Learns how every file of a copy was made.
+     */
+    public interface CopyListener {
+        /**
+         * Called on the thread that copies, once per file that was copied.
+         *
+         * @param source the full path of the original
+         * @param target the full path of the copy
+         * @param mode   COPY_MODE_LINK if the copy is a hard link, COPY_MODE_DATA otherwise
+         */
+        void onFileCopied(String source, String target, int mode);
+    }
+
+    /**
+     * Constructs an object of the class
+     * <br>
+     * this class uses a stack to handle the navigation of directories.
+     */
+    public FileManager() {
+        this(new DiskFileSystem());
+    }
+
+    /**
+     * Constructs a FileManager that lists, searches, copies, zips, renames and
+     * deletes through the given file system, for example a {@link MemoryFileSystem}
+     * in tests and benchmarks.
+     *
+     * @param fileSystem the file system every path refers to
+     */
+    public FileManager(FileSystem fileSystem) {
+        mFileSystem = fileSystem;
+        mCache = new ListingCache(CACHE_ENTRIES, fileSystem);
+        mTrash = new Trash(fileSystem, mScheduler, 4);
+        mPathStack = new Stack<PathNode>();
+
+        mPathStack.push(PathNode.ROOT);
+        mPathStack.push(PathNode.ROOT.child("sdcard"));
+    }
+
+    /**
+     * This will return a string of the current directory path
+     *
+     * @return the current directory
+     */
+    public String getCurrentDir() {
+        return mPathStack.peek().getPath();
+    }
+
+    /**
+     * The path node of the current directory. Its children are interned, so
+     * the File of an entry can be looked up without building its path again.
+     *
+     * @return the node of the current directory
+     */
+    public PathNode getCurrentNode() {
+        return mPathStack.peek();
+    }
+
+    /**
+     * The timings and counts of the operations of every FileManager, and of the
+     * thumbnail threads. Take a {@link Metrics#snapshot()} to read or export them.
+     *
+     * @return the shared metrics registry
+     */
+    public Metrics getMetrics() {
+        return METRICS;
+    }
+
+    /**
+     * @return the file system every path refers to
+     */
+    public FileSystem getFileSystem() {
+        return mFileSystem;
+    }
+
+    /**
+     * The scheduler the jobs of this class run on, shared by the whole process.
+     *
+     * @return the scheduler
+     */
+    public JobScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * The listing the last of setHomeDir, getPreviousDir or getNextDir returned.
+     * Every call builds a new listing and swaps it in, so a listing that was
+     * handed out never changes.
+     *
+     * @return the frozen listing, empty before the first of them is called
+     */
+    public FileListing getDirContent() {
+        return mDirContent;
+    }
+
+    /**
+     * This will return a string of the current home path.
+     *
+     * @return the home directory
+     */
+    public FileListing setHomeDir(String name) {
+        enterHomeDir(name);
+
+        return populate_list();
+    }
+
+    /**
+     * Moves to the home directory without listing it, forgetting the directories
+     * before it. Use {@link #listDirectory(String, int, ListingListener)} to load
+     * its content.
+     *
+     * @param name the full path of the home directory
+     * @return the new current directory
+     */
+    public String enterHomeDir(String name) {
+        //This will eventually be placed as a settings item
+        mPathStack.clear();
+        mPathStack.push(PathNode.ROOT);
+        mPathStack.push(PathNode.get(name));
+
+        return mPathStack.peek().getPath();
+    }
+
+    /**
+     * This will determine if hidden files and folders will be visible to the
+     * user.
+     *
+     * @param choice true if user is veiwing hidden files, false otherwise
+     */
+    public void setShowHiddenFiles(boolean choice) {
+        if (choice != mShowHiddenFiles)
+            mCache.clear();
+
+        mShowHiddenFiles = choice;
+    }
+
+    /**
+     * @return true if hidden files and folders are visible to the user
+     */
+    public boolean getShowHiddenFiles() {
+        return mShowHiddenFiles;
+    }
+
+    /**
+     * When true, files without an extension are classified by reading
+     * their first bytes while the directory is listed.
+     *
+     * @param sniff true to sniff the content of files without an extension
+     */
+    public void setSniffFileTypes(boolean sniff) {
+        mClassifier.setSniffContent(sniff);
+        mCache.clear();
+    }
+
+    /**
+     * Sets how copies are verified. With verification on, copying a file or folder
+     * into a directory also writes a manifest next to the copy, named after it with
+     * the algorithm as extension, such as DCIM.sha256. It has one line per copied
+     * file with the checksum and the path relative to the directory, the format
+     * sha256sum -c and md5sum -c read. A copy whose checksum does not match is
+     * left out of the manifest and makes the copy fail.
+     * <br>
+     * The read back of VERIFY_REREAD may be served from the page cache. It proves
+     * what the file system returns after the sync, not what is on the medium.
+     *
+     * @param policy    VERIFY_OFF, VERIFY_CHECKSUM or VERIFY_REREAD
+     * @param algorithm one of the ALGORITHM_ constants of ChecksumEngine
+     */
+    public void setCopyVerification(int policy, int algorithm) {
+        mVerifyPolicy = policy;
+        mVerifyAlgorithm = algorithm;
+    }
+
+    /**
+     * Sets whether copies are hard links. A link is tried for every file and
+     * when it fails, as across file systems or on FAT, the file is copied. With
+     * verification on, a linked file is read once for the manifest.
+     *
+     * @param mode     COPY_MODE_DATA or COPY_MODE_LINK
+     * @param listener learns which of the two every file got, may be null
+     */
+    public void setCopyMode(int mode, CopyListener listener) {
+        mCopyMode = mode;
+        mCopyListener = listener;
+    }
+
+    /**
+     * @param type
+     */
+    public void setSortType(int type) {
+        mSortType = type;
+    }
+
+    /**
+     * This will return a string that represents the path of the previous path
+     *
+     * @return returns the previous path
+     */
+    public FileListing getPreviousDir() {
+        leaveDir();
+
+        return populate_list();
+    }
+
+    /**
+     * @param path
+     * @param isFullPath
+     * @return
+     */
+    public FileListing getNextDir(String path, boolean isFullPath) {
+        enterDir(path, isFullPath);
+
+        return populate_list();
+    }
+
+    /**
+     * Moves back to the previous directory without listing it. Use
+     * {@link #listDirectory(String, int, ListingListener)} to load its content.
+     *
+     * @return the new current directory
+     */
+    public String leaveDir() {
+        int size = mPathStack.size();
+
+        if (size >= 2)
+            mPathStack.pop();
+
+        else if (size == 0)
+            mPathStack.push(PathNode.ROOT);
+
+        return mPathStack.peek().getPath();
+    }
+
+    /**
+     * Moves into a directory without listing it. Use
+     * {@link #listDirectory(String, int, ListingListener)} to load its content.
+     *
+     * @param path       the name of a sub directory, or a full path
+     * @param isFullPath true if path is a full path
+     * @return the new current directory
+     */
+    public String enterDir(String path, boolean isFullPath) {
+        PathNode current = mPathStack.peek();
+
+        if (!path.equals(current.getPath()) && !isFullPath)
+            mPathStack.push(current.child(path));
+        else if (!path.equals(current.getPath()) && isFullPath)
+            mPathStack.push(PathNode.get(path));
+
+        String entered = mPathStack.peek().getPath();
+
+        synchronized (mVisited) {
+            mVisited.remove(entered);
+            mVisited.put(entered, Boolean.TRUE);
+
+            if (mVisited.size() > MAX_VISITED) {
+                Iterator<String> it = mVisited.keySet().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        return entered;
+    }
+
+    /**
+     * Lists a directory page by page. The names are read with one call, then the
+     * entries are stat'ed and classified a page at a time. Every page is sorted
+     * and merged into the entries loaded before it, and the merged listing is handed
+     * to the listener. The first page is small so it can be shown right away, later
+     * pages double in size, so all the merges together copy less than twice the
+     * entries of the directory.
+     * <br>
+     * This does not change the current directory and is safe to call from any thread
+     * as long as the hidden and sort settings are not changed meanwhile.
+     * <br>
+     * A complete listing is kept in the listing cache, see
+     * {@link #getCachedListing(String)}. The directory is always listed again,
+     * so the sizes and dates of files that changed in place are current.
+     *
+     * @param path      the full path of the directory to list
+     * @param firstPage the number of entries in the first page
+     * @param listener  receives every page, may stop the listing early
+     * @return the complete listing, or the entries loaded when the listener stopped
+     */
+    public FileListing listDirectory(String path, int firstPage, ListingListener listener) {
+        long start = LISTING_TIME.start();
+
+        FileStat dir = mFileSystem.stat(path);
+        long modified = dir == null ? 0 : dir.getModified();
+        long listedAt = System.currentTimeMillis();
+        String[] list = mFileSystem.canRead(path) ? mFileSystem.list(path) : null;
+        FileListing loaded = new FileListing(0);
+
+        if (list == null) {
+            loaded.add("Empty", 0, 0, FileClassifier.TYPE_UNKNOWN, 0);
+            listener.onPage(loaded.freeze(), 0);
+            return loaded;
+        }
+
+        int pageSize = Math.max(1, firstPage);
+        int next = 0;
+
+        do {
+            int end = Math.min(list.length, next + pageSize);
+            FileListing page = new FileListing(end - next);
+
+            add_entries(path, list, next, end, page);
+
+            long sortStart = SORT_TIME.start();
+            page.sort(FileListing.SORT_ALPHA);
+            loaded = FileListing.merge(loaded, page, FileListing.SORT_ALPHA);
+            SORT_TIME.stop(sortStart);
+            SORT_ENTRIES.add(loaded.size());
+
+            highlight_second_largest(loaded);
+            loaded.freeze();
+
+            next = end;
+            //every merge copies what was loaded, doubling keeps the copies under 2n in all
+            pageSize = pageSize > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : pageSize * 2;
+
+            if (!listener.onPage(loaded, list.length - next)) {
+                LISTING_TIME.stop(start);
+                return loaded;
+            }
+
+        } while (next < list.length);
+
+        LISTING_TIME.stop(start);
+        mCache.put(path, loaded, modified, listedAt);
+        return loaded;
+    }
+
+    /**
+     * Returns the listing kept by {@link #listDirectory(String, int, ListingListener)}
+     * or the prefetch, without any I/O besides one stat of the directory. The
+     * directory itself is unchanged, but files in it may have grown or been
+     * rewritten in place since, so the listing should be shown and then replaced
+     * by a new one.
+     *
+     * @param path the full path of the directory
+     * @return the cached listing, frozen, or null if there is none or the directory changed
+     */
+    public FileListing getCachedListing(String path) {
+        FileListing cached = mCache.get(path);
+
+        if (cached != null)
+            LISTING_CACHE_HITS.increment();
+        return cached;
+    }
+
+    /**
+     * Lists the directories the user is most likely to open next and keeps them in
+     * the listing cache: the parent, then sub directories that were recently visited,
+     * then sub directories from the top of the listing, which is what is on screen
+     * right after it was opened. At most {@value #PREFETCH_DIRS} directories and
+     * {@value #PREFETCH_ENTRIES} entries are listed, a directory that would go over
+     * the entry budget is skipped after its names were read.
+     * <br>
+     * This runs on the calling thread, stopping between directories once the
+     * token is cancelled.
+     *
+     * @param path    the full path of the directory that was just listed
+     * @param listing its complete listing
+     * @param token   cancelled when the user navigates
+     * @return the number of directories that were listed
+     */
+    public int prefetchDirectories(String path, FileListing listing, CancelToken token) {
+        ArrayList<String> candidates = new ArrayList<String>();
+        String prefix = path.endsWith("/") ? path : path + "/";
+        String parent = new File(path).getParent();
+
+        if (parent != null)
+            candidates.add(parent);
+
+        synchronized (mVisited) {
+            ArrayList<String> visited = new ArrayList<String>(mVisited.keySet());
+
+            //most recent first
+            for (int i = visited.size() - 1; i >= 0; i--) {
+                String dir = visited.get(i);
+
+                if (dir.startsWith(prefix) && dir.indexOf('/', prefix.length()) < 0)
+                    candidates.add(dir);
+            }
+        }
+
+        for (int i = 0; i < listing.size() && candidates.size() < PREFETCH_DIRS * 2; i++) {
+            if (listing.isDirectory(i))
+                candidates.add(prefix + listing.getName(i));
+        }
+
+        int budget = PREFETCH_ENTRIES;
+        int fetched = 0;
+
+        for (int i = 0; i < candidates.size() && fetched < PREFETCH_DIRS && budget > 0; i++) {
+            String dir = candidates.get(i);
+
+            if (token.isCancelled())
+                break;
+            if (mCache.contains(dir))
+                continue;
+
+            FileStat stat = mFileSystem.stat(dir);
+            long modified = stat == null ? 0 : stat.getModified();
+            long listedAt = System.currentTimeMillis();
+            String[] list = mFileSystem.canRead(dir) ? mFileSystem.list(dir) : null;
+
+            if (list == null || list.length > budget)
+                continue;
+
+            FileListing prefetched = new FileListing(list.length);
+            add_entries(dir, list, 0, list.length, prefetched);
+            prefetched.sort(FileListing.SORT_ALPHA);
+            highlight_second_largest(prefetched);
+            prefetched.freeze();
+
+            if (token.isCancelled())
+                break;
+
+            mCache.put(dir, prefetched, modified, listedAt);
+            budget -= list.length;
+            fetched++;
+        }
+        return fetched;
+    }
+
+    /**
+     * Copies a file or folder. It is verified as set with
+     * {@link #setCopyVerification(int, int)}.
+     *
+     * @param old    the file to be copied
+     * @param newDir the directory to move the file to
+     * @return 0 on success, -1 if a file could not be copied or verified
+     */
+    public int copyToDirectory(String old, String newDir) {
+        return copy_to_directory(old, newDir, null);
+    }
+
+    /**
+     * Copies files and folders into a directory in the bulk lane of the scheduler.
+     * The progress is counted in bytes. A cancelled copy stops within the file
+     * it is copying and deletes that partial file, what was copied before stays.
+     *
+     * @param paths  the full paths of the files and folders to copy
+     * @param newDir the full path of the directory to copy them into
+     * @return the queued job, it fails if any path could not be copied
+     */
+    public JobScheduler.Job submitCopy(final List<String> paths, final String newDir) {
+        String[] touched = paths.toArray(new String[paths.size() + 1]);
+        touched[paths.size()] = newDir;
+
+        return mScheduler.submit(new CopyJob("Copy to " + newDir, touched) {
+            @Override
+            protected void run() throws IOException {
+                for (String path : paths)
+                    mTotal += get_dir_size(path, true);
+                setProgress(0, mTotal);
+
+                int failed = 0;
+                for (int i = 0; i < paths.size() && !isCancelled(); i++) {
+                    if (copy_to_directory(paths.get(i), newDir, this) != 0)
+                        failed++;
+                }
+                if (failed > 0 && !isCancelled())
+                    throw new IOException(failed + " of " + paths.size() + " could not be copied");
+            }
+        });
+    }
+
+    /**
+     * Deletes files and folders in the bulk lane of the scheduler. The progress
+     * is counted in paths.
+     *
+     * @param paths the full paths of the files and folders to delete
+     * @return the queued job, it fails if any path could not be deleted
+     */
+    public JobScheduler.Job submitDelete(final List<String> paths) {
+        return mScheduler.submit(new JobScheduler.Job("Delete " + paths.size(), JobScheduler.LANE_BULK,
+                paths.toArray(new String[paths.size()])) {
+            @Override
+            protected void run() throws IOException {
+                int failed = 0;
+
+                for (int i = 0; i < paths.size() && !isCancelled(); i++) {
+                    if (deleteTarget(paths.get(i)) != 0)
+                        failed++;
+                    setProgress(i + 1, paths.size());
+                }
+                if (failed > 0)
+                    throw new IOException(failed + " of " + paths.size() + " could not be deleted");
+            }
+        });
+    }
+
+    /**
+     * Deletes files and folders by moving them into the trash of their volume,
+     * which returns right away whatever their size. They are purged by a job in
+     * the bulk lane once the grace period of {@link Trash} has passed, and the
+     * delete can be undone until then.
+     *
+     * @param paths the full paths of the files and folders to delete
+     * @return the deletion, which lists what could not be deleted once its job is done
+     */
+    public Trash.Deletion moveToTrash(List<String> paths) {
+        for (String path : paths)
+            invalidate(path);
+
+        return mTrash.delete(paths);
+    }
+
+    /**
+     * Purges what is left in the trash of a volume, for example after a crash.
+     *
+     * @param path a full path on the volume
+     * @return the queued job
+     */
+    public JobScheduler.Job emptyTrash(String path) {
+        return mTrash.purge(path);
+    }
+
+    /**
+     * Runs {@link #createZipFile(String)} in the bulk lane of the scheduler.
+     *
+     * @param path the full path of the directory to zip
+     * @return the queued job
+     */
+    public JobScheduler.Job submitZip(final String path) {
+        return mScheduler.submit(new JobScheduler.Job("Zip " + path, JobScheduler.LANE_BULK, path) {
+            @Override
+            protected void run() {
+                createZipFile(path);
+                setProgress(1, 1);
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #updateZipFile(String, List, List)} in the bulk lane of the scheduler.
+     *
+     * @param zipFile the full path of the zip file
+     * @param add     the full paths of the files and directories to add, may be null
+     * @param remove  the names of the entries to remove, may be null
+     * @return the queued job, which fails if the zip file could not be updated
+     */
+    public JobScheduler.Job submitZipUpdate(final String zipFile, final List<String> add,
+                                            final List<String> remove) {
+        return mScheduler.submit(new JobScheduler.Job("Update " + zipFile, JobScheduler.LANE_BULK, zipFile) {
+            @Override
+            protected void run() throws IOException {
+                if (updateZipFile(zipFile, add, remove) != 0)
+                    throw new IOException(zipFile + " could not be updated");
+                setProgress(1, 1);
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #extractZipFiles(String, String)} in the bulk lane of the scheduler.
+     *
+     * @param zipFile   the full path of the zip file
+     * @param directory the full path of the directory to extract it into
+     * @return the queued job
+     */
+    public JobScheduler.Job submitExtract(final String zipFile, final String directory) {
+        return mScheduler.submit(new JobScheduler.Job("Extract " + zipFile, JobScheduler.LANE_BULK,
+                zipFile, directory) {
+            @Override
+            protected void run() {
+                extractZipFiles(zipFile, directory);
+                setProgress(1, 1);
+            }
+        });
+    }
+
+    /*
+     * copies a file or a folder into a directory, reporting to and stopping with
+     * the job when there is one, and verifies it as set.
+     */
+    private int copy_to_directory(String old, String newDir, CopyJob job) {
+        int policy = mVerifyPolicy;
+
+        if (policy == VERIFY_OFF)
+            return copy_entry(old, newDir, job, null);
+
+        Verification verify = new Verification(policy, mVerifyAlgorithm, newDir);
+        int result = copy_entry(old, newDir, job, verify);
+
+        if (job != null && job.isCancelled())
+            return -1;
+
+        String name = old.substring(old.lastIndexOf("/") + 1) + "." +
+                ChecksumEngine.getName(verify.mAlgorithm).replace("-", "").toLowerCase();
+
+        try {
+            OutputStream out = mFileSystem.openWrite(child_path(newDir, name));
+            try {
+                out.write(verify.mManifest.toString().getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Logger.e("IOException", e.getMessage());
+            return -1;
+        }
+
+        return result == 0 && verify.mFailures == 0 ? 0 : -1;
+    }
+
+    private int copy_entry(String old, String newDir, CopyJob job, Verification verify) {
+        invalidate(newDir);
+
+        FileStat old_file = mFileSystem.stat(old);
+        FileStat temp_dir = mFileSystem.stat(newDir);
+        boolean writable = temp_dir != null && temp_dir.isDirectory() && mFileSystem.canWrite(newDir);
+        byte[] data = new byte[BUFFER];
+        int read = 0;
+
+        if (old_file != null && old_file.isFile() && writable) {
+            String file_name = old.substring(old.lastIndexOf("/"), old.length());
+            String cp_file = newDir + file_name;
+            long start = COPY_TIME.start();
+            long copied = 0;
+
+            //drops what a failed file before this one left in the checksum
+            if (verify != null)
+                verify.mHasher.finish();
+
+            if (mCopyMode == COPY_MODE_LINK && mFileSystem.link(old, cp_file))
+                return link_copied(old, cp_file, old_file.getSize(), job, verify);
+
+            try {
+                OutputStream raw = mFileSystem.openWrite(cp_file);
+                BufferedOutputStream o_stream = new BufferedOutputStream(raw);
+                BufferedInputStream i_stream = new BufferedInputStream(
+                        mFileSystem.openRead(old));
+
+                while ((read = i_stream.read(data, 0, BUFFER)) != -1) {
+                    if (job != null && job.isCancelled()) {
+                        i_stream.close();
+                        o_stream.close();
+                        mFileSystem.delete(cp_file);
+                        return -1;
+                    }
+
+                    o_stream.write(data, 0, read);
+                    copied += read;
+                    if (verify != null)
+                        verify.mHasher.update(data, 0, read);
+                    if (job != null)
+                        job.copied(read);
+                }
+
+                o_stream.flush();
+                if (verify != null && verify.mPolicy == VERIFY_REREAD && raw instanceof FileOutputStream)
+                    ((FileOutputStream) raw).getFD().sync();
+                i_stream.close();
+                o_stream.close();
+
+                if (verify != null && !verify_copy(cp_file, verify))
+                    return -1;
+
+                COPY_TIME.stop(start);
+                COPY_BYTES.add(copied);
+                COPY_FILES.increment();
+
+                if (mCopyListener != null)
+                    mCopyListener.onFileCopied(old, cp_file, COPY_MODE_DATA);
+
+            } catch (FileNotFoundException e) {
+                Logger.e("FileNotFoundException", e.getMessage());
+                return -1;
+
+            } catch (IOException e) {
+                Logger.e("IOException", e.getMessage());
+                return -1;
+            }
+
+        } else if (old_file != null && old_file.isDirectory() && writable) {
+            String files[] = mFileSystem.list(old);
+            String dir = newDir + old.substring(old.lastIndexOf("/"), old.length());
+
+            if (files == null || !mFileSystem.mkdir(dir))
+                return -1;
+
+            for (int i = 0; i < files.length; i++) {
+                if (job != null && job.isCancelled())
+                    return -1;
+
+                copy_entry(old + "/" + files[i], dir, job, verify);
+            }
+
+        } else if (!mFileSystem.canWrite(newDir))
+            return -1;
+
+        return 0;
+    }
+
+    /*
+     * accounts for a file that was copied as a hard link, hashing it for the
+     * manifest if the copy is verified
+     */
+    private int link_copied(String old, String link, long size, CopyJob job, Verification verify) {
+        if (verify != null) {
+            try {
+                byte[] data = new byte[64 * 1024];
+                InputStream in = mFileSystem.openRead(link);
+                int read;
+
+                try {
+                    while ((read = in.read(data)) != -1)
+                        verify.mHasher.update(data, 0, read);
+                } finally {
+                    in.close();
+                }
+
+                if (!verify_copy(link, verify))
+                    return -1;
+
+            } catch (IOException e) {
+                Logger.e("IOException", e.getMessage());
+                return -1;
+            }
+        }
+
+        if (job != null)
+            job.copied(size);
+        COPY_FILES.increment();
+        COPY_LINKS.increment();
+
+        if (mCopyListener != null)
+            mCopyListener.onFileCopied(old, link, COPY_MODE_LINK);
+        return 0;
+    }
+
+    /*
+     * checks a copied file whose source was hashed while it was copied, re-reading
+     * it if the policy says so, and adds it to the manifest if it matches.
+     */
+    private boolean verify_copy(String path, Verification verify) throws IOException {
+        String checksum = verify.mHasher.finish();
+
+        if (verify.mPolicy == VERIFY_REREAD) {
+            byte[] data = new byte[64 * 1024];
+            InputStream in = mFileSystem.openRead(path);
+            int read;
+
+            try {
+                while ((read = in.read(data)) != -1)
+                    verify.mHasher.update(data, 0, read);
+            } finally {
+                in.close();
+            }
+
+            if (!checksum.equals(verify.mHasher.finish())) {
+                verify.mFailures++;
+                Logger.e("Copy verification failed", path);
+                return false;
+            }
+        }
+
+        int start = verify.mBase.length();
+        while (start < path.length() && path.charAt(start) == '/')
+            start++;
+
+        verify.mManifest.append(checksum).append("  ").append(path.substring(start)).append('\n');
+        return true;
+    }
+
+    /**
+     * @param zipName
+     * @param toDir
+     * @param fromDir
+     */
+    public void extractZipFilesFromDir(String zipName, String toDir, String fromDir) {
+        if (!(toDir.charAt(toDir.length() - 1) == '/'))
+            toDir += "/";
+        if (!(fromDir.charAt(fromDir.length() - 1) == '/'))
+            fromDir += "/";
+
+        String org_path = fromDir + zipName;
+
+        extractZipFiles(org_path, toDir);
+    }
+
+    /**
+     * @param zip_file
+     * @param directory
+     */
+    public void extractZipFiles(String zip_file, String directory) {
+        byte[] data = new byte[BUFFER];
+        String name, path, zipDir;
+        ZipEntry entry;
+        ZipInputStream zipstream;
+
+        if (!(directory.charAt(directory.length() - 1) == '/'))
+            directory += "/";
+
+        invalidate(directory);
+
+        if (zip_file.contains("/")) {
+            path = zip_file;
+            name = path.substring(path.lastIndexOf("/") + 1,
+                    path.length() - 4);
+            zipDir = directory + name + "/";
+
+        } else {
+            path = directory + zip_file;
+            name = path.substring(path.lastIndexOf("/") + 1,
+                    path.length() - 4);
+            zipDir = directory + name + "/";
+        }
+
+        mFileSystem.mkdir(zipDir);
+        long start = EXTRACT_TIME.start();
+
+        try {
+            zipstream = new ZipInputStream(mFileSystem.openRead(path));
+
+            while ((entry = zipstream.getNextEntry()) != null) {
+                String buildDir = zipDir;
+                String[] dirs = entry.getName().split("/");
+
+                if (dirs != null && dirs.length > 0) {
+                    for (int i = 0; i < dirs.length - 1; i++) {
+                        buildDir += dirs[i] + "/";
+                        mFileSystem.mkdir(buildDir);
+                    }
+                }
+
+                int read = 0;
+                OutputStream out = mFileSystem.openWrite(zipDir + entry.getName());
+                while ((read = zipstream.read(data, 0, BUFFER)) != -1) {
+                    out.write(data, 0, read);
+                    EXTRACT_BYTES.add(read);
+                }
+
+                zipstream.closeEntry();
+                out.close();
+                EXTRACT_FILES.increment();
+            }
+            EXTRACT_TIME.stop(start);
+
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param path
+     */
+    public void createZipFile(String path) {
+        invalidate(path);
+
+        String[] list = mFileSystem.list(path);
+        String name = path.substring(path.lastIndexOf("/"), path.length());
+        String _path;
+
+        if (list == null || !mFileSystem.canRead(path) || !mFileSystem.canWrite(path))
+            return;
+
+        int len = list.length;
+
+        if (path.charAt(path.length() - 1) != '/')
+            _path = path + "/";
+        else
+            _path = path;
+
+        long start = ZIP_TIME.start();
+
+        try {
+            ZipOutputStream zip_out = new ZipOutputStream(
+                    new BufferedOutputStream(
+                            mFileSystem.openWrite(_path + name + ".zip"), BUFFER));
+
+            for (int i = 0; i < len; i++)
+                zip_folder(_path + list[i], list[i], zip_out);
+
+            zip_out.close();
+            ZIP_TIME.stop(start);
+
+        } catch (FileNotFoundException e) {
+            Logger.e("File not found", e.getMessage());
+
+        } catch (IOException e) {
+            Logger.e("IOException", e.getMessage());
+        }
+    }
+
+    /**
+     * Adds files to and removes entries from an existing zip file without
+     * recompressing the entries it keeps, see {@link ZipUpdater}. A directory is
+     * added with everything below it, under its own name. The zip file must be
+     * on the local disk.
+     *
+     * @param zipFile the full path of the zip file
+     * @param add     the full paths of the files and directories to add, may be null
+     * @param remove  the names of the entries to remove, may be null
+     * @return 0 on success, -1 if the zip file could not be updated
+     */
+    public int updateZipFile(String zipFile, List<String> add, List<String> remove) {
+        invalidate(zipFile);
+
+        long start = ZIP_TIME.start();
+
+        try {
+            ZipUpdater zip = new ZipUpdater(new File(zipFile));
+
+            if (remove != null) {
+                for (String name : remove)
+                    zip.remove(name);
+            }
+            if (add != null) {
+                for (String path : add) {
+                    File file = new File(path);
+                    add_to_zip(zip, file, file.getName());
+                }
+            }
+
+            ZIP_BYTES.add(zip.commit());
+            ZIP_TIME.stop(start);
+            return 0;
+
+        } catch (IOException e) {
+            Logger.e("IOException", e.getMessage());
+            return -1;
+        }
+    }
+
+    /*
+     * queues a file, or the files below a directory, for a zip update
+     */
+    private void add_to_zip(ZipUpdater zip, File file, String name) {
+        if (file.isFile()) {
+            zip.add(name, file);
+            ZIP_FILES.increment();
+
+        } else if (file.isDirectory()) {
+            String[] list = file.list();
+            int len = list == null ? 0 : list.length;
+
+            for (int i = 0; i < len; i++)
+                add_to_zip(zip, new File(file, list[i]), name + "/" + list[i]);
+        }
+    }
+
+    /**
+     * @param filePath
+     * @param newName
+     * @return
+     */
+    public int renameTarget(String filePath, String newName) {
+        invalidate(filePath);
+
+        FileStat src = mFileSystem.stat(filePath);
+        String ext = "";
+        String dest;
+
+        if (src != null && src.isFile())
+            /*get file extension*/
+            ext = filePath.substring(filePath.lastIndexOf("."), filePath.length());
+
+        if (newName.length() < 1)
+            return -1;
+
+        String temp = filePath.substring(0, filePath.lastIndexOf("/"));
+
+        dest = temp + "/" + newName + ext;
+        if (mFileSystem.rename(filePath, dest))
+            return 0;
+        else
+            return -1;
+    }
+
+    /**
+     * @param path
+     * @param name
+     * @return
+     */
+    public int createDir(String path, String name) {
+        int len = path.length();
+
+        if (len < 1 || len < 1)
+            return -1;
+
+        if (path.charAt(len - 1) != '/')
+            path += "/";
+
+        invalidate(path);
+
+        if (mFileSystem.mkdir(path + name))
+            return 0;
+
+        return -1;
+    }
+
+    /**
+     * The full path name of the file to delete.
+     *
+     * @param path name
+     * @return
+     */
+    public int deleteTarget(String path) {
+        invalidate(path);
+
+        FileStat target = mFileSystem.stat(path);
+
+        if (target != null && target.isFile() && mFileSystem.canWrite(path)) {
+            mFileSystem.delete(path);
+            return 0;
+        } else if (target != null && target.isDirectory() && mFileSystem.canRead(path)) {
+            String[] file_list = mFileSystem.list(path);
+
+            if (file_list != null && file_list.length == 0) {
+                mFileSystem.delete(path);
+                return 0;
+
+            } else if (file_list != null && file_list.length > 0) {
+
+                for (int i = 0; i < file_list.length; i++) {
+                    String temp_f = child_path(path, file_list[i]);
+                    FileStat temp_stat = mFileSystem.stat(temp_f);
+
+                    if (temp_stat != null && temp_stat.isDirectory())
+                        deleteTarget(temp_f);
+                    else if (temp_stat != null)
+                        mFileSystem.delete(temp_f);
+                }
+            }
+            if (mFileSystem.delete(path))
+                return 0;
+        }
+        return -1;
+    }
+
+    /**
+     * @param name
+     * @return
+     */
+    public boolean isDirectory(String name) {
+        FileStat stat = mFileSystem.stat(mPathStack.peek().child(name).getPath());
+
+        return stat != null && stat.isDirectory();
+    }
+
+    /**
+     * converts integer from wifi manager to an IP address.
+     *
+     * @param des
+     * @return
+     */
+    public static String integerToIPAddress(int ip) {
+        String ascii_address = "";
+        int[] num = new int[4];
+
+        num[0] = (ip & 0xff000000) >> 24;
+        num[1] = (ip & 0x00ff0000) >> 16;
+        num[2] = (ip & 0x0000ff00) >> 8;
+        num[3] = ip & 0x000000ff;
+
+        ascii_address = num[0] + "." + num[1] + "." + num[2] + "." + num[3];
+
+        return ascii_address;
+    }
+
+    /**
+     * @param dir
+     * @param pathName
+     * @return
+     */
+    public ArrayList<String> searchInDirectory(String dir, String pathName) {
+        ArrayList<String> names = new ArrayList<String>();
+        long start = SEARCH_TIME.start();
+
+        search_file(dir, pathName, names);
+        SEARCH_TIME.stop(start);
+
+        return names;
+    }
+
+    /**
+     * Starts a search that is refined while the user types, see {@link SearchSession}.
+     *
+     * @param dir the full path of the directory to search in
+     * @return the session, which walks the tree on its first query
+     */
+    public SearchSession openSearch(String dir) {
+        return new SearchSession(mFileSystem, dir);
+    }
+
+    /**
+     * Searches directories for files with identical content. See {@link DuplicateFinder}.
+     *
+     * @param roots    full paths of the directories to search
+     * @param listener receives every group of duplicates as soon as it is confirmed
+     * @param token    stops the search once cancelled
+     * @return the number of duplicate groups found
+     */
+    public int findDuplicates(List<String> roots, DuplicateFinder.Listener listener, CancelToken token) {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        return new DuplicateFinder(threads).find(roots, listener, token);
+    }
+
+    /**
+     * Computes the checksums of files, such as the multi-select set. Checksums of
+     * files that did not change since they were last computed come from a cache.
+     * See {@link ChecksumEngine}.
+     *
+     * @param paths     full paths of files, directories are expanded to the files they contain
+     * @param algorithm one of the ALGORITHM_ constants of ChecksumEngine
+     * @param listener  receives every checksum and the progress, may be null
+     * @param token     stops hashing once cancelled
+     * @return the checksum of every file, as lowercase hex, by path
+     */
+    public Map<String, String> checksumFiles(List<String> paths, int algorithm,
+                                             ChecksumEngine.Listener listener, CancelToken token) {
+        return mChecksums.checksumAll(paths, algorithm, listener, token);
+    }
+
+    /**
+     * Breaks down the space used below a directory by kind of file, age, size
+     * and folder, in one walk of the tree. See {@link StorageAnalyzer}.
+     *
+     * @param path     the full path of the directory to analyse
+     * @param previous the last report of the same directory, whose unchanged
+     *                 directories are not listed again, or null
+     * @param token    stops the scan once cancelled
+     * @return the report, null if the directory can't be read or the scan was cancelled
+     */
+    public StorageReport analyzeStorage(String path, StorageReport previous, CancelToken token) {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        return new StorageAnalyzer(threads).scan(path, previous, token);
+    }
+
+    /**
+     * Takes a snapshot of a directory tree, or a new one of a tree that was
+     * snapshot before, reporting what changed since. See {@link TreeSnapshot}.
+     *
+     * @param path     the full path of the directory
+     * @param previous the last snapshot of the same directory, whose unchanged
+     *                 directories are not listed again, or null
+     * @param listener receives what was added, removed and modified since the
+     *                 previous snapshot, or null
+     * @param token    stops the scan once cancelled
+     * @return the snapshot, null if the directory is gone or the scan was cancelled
+     */
+    public TreeSnapshot snapshotTree(String path, TreeSnapshot previous,
+                                     TreeSnapshot.ChangeListener listener, CancelToken token) {
+        if (previous != null && previous.getPath().equals(path))
+            return previous.rescan(mFileSystem, listener, token);
+
+        return TreeSnapshot.take(mFileSystem, path, token);
+    }
+
+    /**
+     * Compares two directory trees for a one way sync, without changing anything.
+     * See {@link TreeSync}.
+     *
+     * @param source       the full path of the directory to copy from
+     * @param target       the full path of the directory to copy to
+     * @param deleteExtras true to also plan the deletion of what is not in the source
+     * @param verify       true to compare the content of files whose time changed but not their size
+     * @param token        stops the comparison once cancelled
+     * @return the plan, which can be shown as a dry run
+     */
+    public SyncPlan planSync(String source, String target, boolean deleteExtras,
+                             boolean verify, CancelToken token) {
+        TreeSync sync = new TreeSync();
+        sync.setDeleteExtras(deleteExtras);
+        sync.setVerifyContent(verify);
+
+        return sync.plan(source, target, token);
+    }
+
+    /**
+     * Applies a plan from {@link #planSync(String, String, boolean, boolean, CancelToken)}.
+     *
+     * @param plan     the plan to apply
+     * @param listener receives the progress, may be null
+     * @param token    stops the sync between files once cancelled
+     * @return the relative paths of the changes that failed
+     */
+    public List<String> executeSync(SyncPlan plan, TreeSync.Listener listener, CancelToken token) {
+        invalidate(plan.getTarget());
+
+        return new TreeSync().execute(plan, listener, token);
+    }
+
+    /**
+     * @param path
+     * @return
+     */
+    public long getDirSize(String path) {
+        mDirSize += get_dir_size(path, false);
+
+        return mDirSize;
+    }
+
+
+    /* (non-Javadoc)
+     * this function will take the string from the top of the directory stack
+     * and list all files/folders that are in it and return that list so
+     * it can be displayed. Since this function is called every time we need
+     * to update the the list of files to be shown to the user, this is where
+     * we do our sorting (by type, alphabetical, etc).
+     *
+     * @return
+     */
+    private FileListing populate_list() {
+        String path = mPathStack.peek().getPath();
+        String[] list = mFileSystem.canRead(path) ? mFileSystem.list(path) : null;
+        FileListing content = new FileListing(list != null ? list.length : 1);
+
+        if (list != null) {
+            long start = LISTING_TIME.start();
+
+            add_entries(path, list, 0, list.length, content);
+            highlight_second_largest(content);
+
+            //Sort by Alphabet
+            long sortStart = SORT_TIME.start();
+            content.sort(FileListing.SORT_ALPHA);
+            SORT_TIME.stop(sortStart);
+            SORT_ENTRIES.add(content.size());
+            LISTING_TIME.stop(start);
+
+        } else {
+            content.add("Empty", 0, 0, FileClassifier.TYPE_UNKNOWN, 0);
+        }
+
+        //the old listing may still be read elsewhere, it is replaced, not changed
+        mDirContent = content.freeze();
+        return content;
+    }
+
+    /*
+     * stats and classifies list[from] to list[to - 1] and appends them to the
+     * listing, skipping hidden files and folders unless they are shown and
+     * entries that were deleted since the names were read.
+     */
+    private void add_entries(String dir, String[] list, int from, int to, FileListing out) {
+        int added = out.size();
+        int stats = 0;
+
+        for (int i = from; i < to; i++) {
+            boolean hidden = list[i].charAt(0) == '.';
+
+            if (!mShowHiddenFiles && hidden)
+                continue;
+
+            String entry = child_path(dir, list[i]);
+            FileStat stat = mFileSystem.stat(entry);
+            if (stat == null)
+                continue;
+
+            boolean isDir = stat.isDirectory();
+            int flags = isDir ? FileListing.FLAG_DIRECTORY : FileListing.FLAG_FILE;
+
+            if (hidden)
+                flags |= FileListing.FLAG_HIDDEN;
+
+            out.add(list[i], stat.getSize(), stat.getModified(),
+                    mClassifier.classify(mFileSystem, entry, list[i], isDir), flags);
+            stats += isDir ? 2 : 3;
+        }
+
+        //counted once per page, not once per entry
+        LISTING_ENTRIES.add(out.size() - added);
+        LISTING_STATS.add(stats);
+    }
+
+    /*
+     * drops the cached listings of a path and of its parent, called before
+     * any operation that changes the content of a directory.
+     */
+    private void invalidate(String path) {
+        File file = new File(path);
+
+        mCache.remove(file.getPath());
+        if (file.getParent() != null)
+            mCache.remove(file.getParent());
+    }
+
+    /*
+     * the full path of an entry of a directory, without a double slash
+     */
+    private static String child_path(String dir, String name) {
+        return dir.endsWith("/") ? dir + name : dir + "/" + name;
+    }
+
+    private void highlight_second_largest(FileListing listing) {
+        int second = getSecondLargestIndex(listing);
+
+        for (int i = 0; i < listing.size(); i++)
+            listing.setHighlighted(i, i == second);
+    }
+
+    /*
+     *
+     * @param path
+     * @param name
+     * @param zout
+     * @throws IOException
+     */
+    private void zip_folder(String path, String name, ZipOutputStream zout) throws IOException {
+        FileStat file = mFileSystem.stat(path);
+        byte[] data = new byte[BUFFER];
+        int read;
+
+        if (file != null && file.isFile()) {
+            ZipEntry entry = new ZipEntry(name);
+            zout.putNextEntry(entry);
+            InputStream instream = new BufferedInputStream(mFileSystem.openRead(path));
+
+            while ((read = instream.read(data, 0, BUFFER)) != -1) {
+                zout.write(data, 0, read);
+                ZIP_BYTES.add(read);
+            }
+
+            zout.closeEntry();
+            instream.close();
+            ZIP_FILES.increment();
+
+        } else if (file != null && file.isDirectory()) {
+            String[] list = mFileSystem.list(path);
+            int len = list == null ? 0 : list.length;
+
+            for (int i = 0; i < len; i++)
+                zip_folder(path + "/" + list[i], list[i], zout);
+        }
+    }
+
+    /*
+     * the size of the files below a directory, not following links
+     *
+     * @param path
+     * @param self true to return the size of path itself if it is a file
+     */
+    private long get_dir_size(String path, boolean self) {
+        if (self) {
+            FileStat stat = mFileSystem.stat(path);
+            if (stat == null || stat.isFile())
+                return stat == null ? 0 : stat.getSize();
+        }
+
+        String[] list = mFileSystem.list(path);
+        long size = 0;
+        int len;
+
+        if (list != null) {
+            len = list.length;
+
+            for (int i = 0; i < len; i++) {
+                String entry = child_path(path, list[i]);
+                FileStat stat = mFileSystem.stat(entry);
+
+                if (stat == null || !mFileSystem.canRead(entry))
+                    continue;
+
+                if (stat.isFile())
+                    size += stat.getSize();
+                else if (!mFileSystem.isSymlink(entry))
+                    size += get_dir_size(entry, false);
+            }
+        }
+        return size;
+    }
+
+    /*
+     * the state of one verified copy: the running checksum and the manifest
+     */
+    private static class Verification {
+        final int mPolicy;
+        final int mAlgorithm;
+        final String mBase;
+        final ChecksumEngine.Hasher mHasher;
+        final StringBuilder mManifest = new StringBuilder();
+        int mFailures = 0;
+
+        Verification(int policy, int algorithm, String base) {
+            mPolicy = policy;
+            mAlgorithm = algorithm;
+            mBase = base;
+            mHasher = ChecksumEngine.newHasher(algorithm);
+        }
+    }
+
+    /*
+     * a bulk job that counts the bytes it copied
+     */
+    private abstract static class CopyJob extends JobScheduler.Job {
+        long mTotal = 0;
+        private long mCopied = 0;
+
+        CopyJob(String name, String... paths) {
+            super(name, JobScheduler.LANE_BULK, paths);
+        }
+
+        void copied(long bytes) {
+            mCopied += bytes;
+            setProgress(mCopied, mTotal);
+        }
+    }
+
+    // Inspired by org.apache.commons.io.FileUtils.isSymlink()
+    static boolean isSymlink(File file) throws IOException {
+        File fileInCanonicalDir = null;
+        if (file.getParent() == null) {
+            fileInCanonicalDir = file;
+        } else {
+            File canonicalDir = file.getParentFile().getCanonicalFile();
+            fileInCanonicalDir = new File(canonicalDir, file.getName());
+        }
+        return !fileInCanonicalDir.getCanonicalFile().equals(fileInCanonicalDir.getAbsoluteFile());
+    }
+
+    /*
+     * (non-JavaDoc)
+     * I dont like this method, it needs to be rewritten. Its hacky in that
+     * if you are searching in the root dir (/) then it is not going to be treated
+     * as a recursive method so the user dosen't have to sit forever and wait.
+     *
+     * I will rewrite this ugly method.
+     *
+     * @param dir		directory to search in
+     * @param fileName	filename that is being searched for
+     * @param n			ArrayList to populate results
+     */
+    private void search_file(String dir, String fileName, ArrayList<String> n) {
+        String[] list = mFileSystem.list(dir);
+
+        if (list != null && mFileSystem.canRead(dir)) {
+            int len = list.length;
+            SEARCH_ENTRIES.add(len);
+
+            for (int i = 0; i < len; i++) {
+                String check = child_path(dir, list[i]);
+                String name = list[i];
+                FileStat stat = mFileSystem.stat(check);
+
+                if (stat == null)
+                    continue;
+
+                if (stat.isFile() && name.toLowerCase().
+                        contains(fileName.toLowerCase())) {
+                    n.add(check);
+                } else if (stat.isDirectory()) {
+                    if (name.toLowerCase().contains(fileName.toLowerCase()))
+                        n.add(check);
+
+                    else if (mFileSystem.canRead(check) && !dir.equals("/"))
+                        search_file(check, fileName, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Using 2(N-1) comparision gives the second largest file of the listing. Directories are
+     * skipped. If every file has the same size the second file of the listing is returned.
+     * @param listing
+     * @return the index of the second largest file, -1 if there are less than two files
+     */
+    public int getSecondLargestIndex(FileListing listing) {
+        int largest = -1;
+        int second = -1;
+        int tie = -1;
+
+        for (int i = 0; i < listing.size(); i++) {
+            if (!listing.isFile(i))
+                continue;
+
+            long size = listing.getSize(i);
+
+            if (largest < 0) {
+                largest = i;
+
+            } else if (size > listing.getSize(largest)) {
+                second = largest;
+                tie = -1;
+                largest = i;
+
+            } else if (size == listing.getSize(largest)) {
+                if (tie < 0)
+                    tie = i;
+
+            } else if (second < 0 || size > listing.getSize(second)) {
+                second = i;
+            }
+        }
+        return second >= 0 ? second : tie;
+    }
+}
\ No newline at end of file
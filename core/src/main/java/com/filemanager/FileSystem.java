@@ -0,0 +1,90 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileStat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The file operations the FileManager is built on. Paths are full paths with
+ * / as separator. Methods report a missing or inaccessible path by returning
+ * null or false, as java.io.File does; only opening a stream throws.
+ * <br>
+ * <br>
+ * {@link DiskFileSystem} works on the real file system, {@link MemoryFileSystem}
+ * holds a tree in memory and can generate huge trees for tests and benchmarks,
+ * and {@link CachingFileSystem} keeps the results of list and stat of another
+ * file system.
+ */
+public interface FileSystem {
+
+    /**
+     * @param path the full path of a directory
+     * @return the names of its entries in no particular order, null if it is not
+     *         a directory or can't be read
+     */
+    String[] list(String path);
+
+    /**
+     * @param path a full path
+     * @return the type, size and time of the path, null if it does not exist
+     */
+    FileStat stat(String path);
+
+    boolean canRead(String path);
+
+    boolean canWrite(String path);
+
+    /**
+     * @param path a full path
+     * @return true if the path is a symbolic link, which tree walks don't follow
+     */
+    boolean isSymlink(String path);
+
+    /**
+     * @param path the full path of a file
+     * @return a stream of its content, to be closed by the caller
+     * @throws IOException if the file does not exist or can't be read
+     */
+    InputStream openRead(String path) throws IOException;
+
+    /**
+     * Creates or truncates a file. The content becomes visible at the latest when
+     * the stream is closed.
+     *
+     * @param path the full path of a file, its directory must exist
+     * @return a stream to write the content to, to be closed by the caller
+     * @throws IOException if the file can't be created
+     */
+    OutputStream openWrite(String path) throws IOException;
+
+    /**
+     * @param path the full path of a new directory, its parent must exist
+     * @return true if the directory was created
+     */
+    boolean mkdir(String path);
+
+    /**
+     * @param from the full path of an existing file or directory
+     * @param to   the full path it is moved to, which must not exist
+     * @return true if the entry was moved
+     */
+    boolean rename(String from, String to);
+
+    /**
+     * @param path the full path of a file or an empty directory
+     * @return true if it was deleted
+     */
+    boolean delete(String path);
+
+    /**
+     * Creates a hard link, a second name for the content of a file.
+     *
+     * @param existing the full path of an existing file
+     * @param link     the full path of the new name, which must not exist
+     * @return true if the link was created, false if it can't be, for example
+     *         because the paths are on different file systems
+     */
+    boolean link(String existing, String link);
+}
@@ -0,0 +1,493 @@
+package com.filemanager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Runs file operations in the background, in three priority lanes: interactive
+ * work such as listing the folder the user opened, background work such as
+ * thumbnails and prefetching, and bulk work such as copying or zipping. A free
+ * worker always takes the highest priority job it may run, and one worker is
+ * kept for interactive jobs only, so a long copy never delays browsing. Workers
+ * running bulk jobs also drop to the lowest thread priority.
+ * <br>
+ * <br>
+ * Every job names the paths it works on. Background and bulk jobs are limited per
+ * volume and lane, by default to one running job, so the internal storage and an
+ * SD card are worked on side by side while two copies to the same card run one
+ * after the other instead of fighting over it. Interactive jobs are not limited.
+ * <br>
+ * <br>
+ * Jobs report their progress, can be cancelled while queued or running, and
+ * {@link #getJobs()} lists what is running and queued. Like FileManager, this
+ * class has no reference to any GUI activity.
+ */
+public class JobScheduler {
+    public static final int LANE_INTERACTIVE = 0;
+    public static final int LANE_BACKGROUND = 1;
+    public static final int LANE_BULK = 2;
+    private static final int LANES = 3;
+
+    public static final int STATE_QUEUED = 0;
+    public static final int STATE_RUNNING = 1;
+    public static final int STATE_DONE = 2;
+    public static final int STATE_FAILED = 3;
+    public static final int STATE_CANCELLED = 4;
+
+    //progress is reported at most this often, in milliseconds, except the last
+    private static final long PROGRESS_INTERVAL = 100;
+
+    private static JobScheduler sDefault;
+
+    private final int mThreads;
+    private final int mVolumeLimit;
+    private final ArrayList<String> mVolumes = new ArrayList<String>();
+    private final ArrayList<LinkedList<Job>> mQueues = new ArrayList<LinkedList<Job>>(LANES);
+    private final ArrayList<Job> mRunning = new ArrayList<Job>();
+    //running jobs by volume, one map per lane
+    private final ArrayList<HashMap<String, Integer>> mVolumeCounts =
+            new ArrayList<HashMap<String, Integer>>(LANES);
+    private int mRunningBackground = 0;
+    private volatile Listener mListener;
+    private boolean mShutdown = false;
+
+    /**
+     * Receives the changes of every job, on the thread that made them.
+     */
+    public interface Listener {
+        /**
+         * @param job a job that was queued, started, finished, failed or cancelled
+         */
+        void onStateChanged(Job job);
+
+        /**
+         * @param job   a running job
+         * @param done  the units of work done so far, such as bytes copied
+         * @param total the units of work in total, 0 if unknown
+         */
+        void onProgress(Job job, long done, long total);
+    }
+
+    /**
+     * A unit of work for the scheduler. Subclasses do the work in {@link #run()},
+     * check {@link #isCancelled()} between steps and report with
+     * {@link #setProgress(long, long)}.
+     */
+    public abstract static class Job {
+        private final String mName;
+        private final int mLane;
+        private final String[] mPaths;
+        private final CancelToken mToken = new CancelToken();
+        private String[] mVolumes;
+        private JobScheduler mScheduler;
+        private volatile int mState = STATE_QUEUED;
+        private volatile long mDone = 0;
+        private volatile long mTotal = 0;
+        private volatile Throwable mError;
+        private long mReportedAt = 0;
+
+        /**
+         * @param name  what the job does, for the user, such as "Copy DCIM"
+         * @param lane  one of the LANE_ constants
+         * @param paths the full paths the job reads or writes, which decide its volumes
+         */
+        protected Job(String name, int lane, String... paths) {
+            mName = name;
+            mLane = lane;
+            mPaths = paths;
+        }
+
+        /**
+         * Does the work, on a worker thread. A job that returns after it was
+         * cancelled ends as cancelled, one that throws ends as failed.
+         */
+        protected abstract void run() throws Exception;
+
+        /**
+         * @return true once the job was cancelled, it should stop at the next step
+         */
+        public boolean isCancelled() {
+            return mToken.isCancelled();
+        }
+
+        /**
+         * @return the token that is cancelled with the job, for operations that take one
+         */
+        protected CancelToken getToken() {
+            return mToken;
+        }
+
+        /**
+         * @param done  the units of work done so far
+         * @param total the units of work in total, 0 if unknown
+         */
+        protected void setProgress(long done, long total) {
+            mDone = done;
+            mTotal = total;
+
+            JobScheduler scheduler = mScheduler;
+            if (scheduler != null)
+                scheduler.progress(this, done, total);
+        }
+
+        /**
+         * Cancels the job. A queued job is removed from the queue, a running job
+         * stops at its next step, and a job that was not submitted yet ends as
+         * cancelled right away.
+         */
+        public void cancel() {
+            mToken.cancel();
+
+            JobScheduler scheduler = mScheduler;
+            if (scheduler != null)
+                scheduler.dequeue(this);
+            else
+                finish(STATE_CANCELLED);
+        }
+
+        /**
+         * Waits until the job is done, failed or cancelled.
+         */
+        public synchronized void await() throws InterruptedException {
+            while (mState < STATE_DONE)
+                wait();
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getLane() {
+            return mLane;
+        }
+
+        /**
+         * @return one of the STATE_ constants
+         */
+        public int getState() {
+            return mState;
+        }
+
+        public long getDone() {
+            return mDone;
+        }
+
+        /**
+         * @return the units of work in total, 0 if unknown
+         */
+        public long getTotal() {
+            return mTotal;
+        }
+
+        /**
+         * @return what the job threw if it failed, null otherwise
+         */
+        public Throwable getError() {
+            return mError;
+        }
+
+        /**
+         * @return the volumes the job works on, null until it is submitted
+         */
+        public String[] getVolumes() {
+            return mVolumes;
+        }
+
+        private synchronized void finish(int state) {
+            mState = state;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @param threads     the number of workers, at least 2 since one is kept for interactive jobs
+     * @param volumeLimit the number of background or bulk jobs that may run at once on one volume
+     */
+    public JobScheduler(int threads, int volumeLimit) {
+        mThreads = Math.max(2, threads);
+        mVolumeLimit = Math.max(1, volumeLimit);
+
+        for (int lane = 0; lane < LANES; lane++) {
+            mQueues.add(new LinkedList<Job>());
+            mVolumeCounts.add(new HashMap<String, Integer>());
+        }
+
+        for (int i = 0; i < mThreads; i++) {
+            Thread thread = new Thread(new Worker(), "job-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * The scheduler of the whole process, so jobs outlive the activity that
+     * started them and one queue can be shown for all of them.
+     *
+     * @return the shared scheduler
+     */
+    public static synchronized JobScheduler getDefault() {
+        if (sDefault == null)
+            sDefault = new JobScheduler(Math.max(3, Runtime.getRuntime().availableProcessors()), 1);
+
+        return sDefault;
+    }
+
+    /**
+     * @param listener receives the changes of every job, may be null
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Declares the root of a volume, such as the path of the SD card. Paths
+     * below it belong to it; paths below no declared root belong to their first
+     * directory, or their first two for /mnt and /storage.
+     *
+     * @param root the full path of the root of the volume
+     */
+    public synchronized void addVolume(String root) {
+        String path = root.length() > 1 && root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+
+        if (!mVolumes.contains(path))
+            mVolumes.add(path);
+    }
+
+    /**
+     * @param path a full path
+     * @return the root of the volume the path is on
+     */
+    public synchronized String volumeOf(String path) {
+        String volume = null;
+
+        for (String root : mVolumes) {
+            if ((path.equals(root) || path.startsWith(root.equals("/") ? root : root + "/")) &&
+                    (volume == null || root.length() > volume.length()))
+                volume = root;
+        }
+        if (volume != null)
+            return volume;
+
+        int end = path.indexOf('/', 1);
+        if (end > 0 && (path.startsWith("/mnt/") || path.startsWith("/storage/"))) {
+            int second = path.indexOf('/', end + 1);
+            end = second > 0 ? second : path.length();
+        }
+        return end > 0 ? path.substring(0, end) : path;
+    }
+
+    /**
+     * Queues a job behind the jobs of the same lane.
+     *
+     * @param job a job that was not submitted before
+     * @return the job
+     */
+    public Job submit(Job job) {
+        ArrayList<String> volumes = new ArrayList<String>(job.mPaths.length);
+
+        for (String path : job.mPaths) {
+            String volume = volumeOf(path);
+            if (!volumes.contains(volume))
+                volumes.add(volume);
+        }
+
+        synchronized (this) {
+            if (mShutdown)
+                throw new IllegalStateException("scheduler is shut down");
+
+            job.mVolumes = volumes.toArray(new String[volumes.size()]);
+            job.mScheduler = this;
+            mQueues.get(job.mLane).add(job);
+            notifyAll();
+        }
+        changed(job);
+
+        return job;
+    }
+
+    /**
+     * @return the running jobs, then the queued jobs in the order they will be
+     *         considered, interactive first
+     */
+    public synchronized List<Job> getJobs() {
+        ArrayList<Job> jobs = new ArrayList<Job>(mRunning);
+
+        for (LinkedList<Job> queue : mQueues)
+            jobs.addAll(queue);
+
+        return jobs;
+    }
+
+    /**
+     * @param lane one of the LANE_ constants
+     * @return the number of jobs of the lane that wait for a worker
+     */
+    public synchronized int getQueuedCount(int lane) {
+        return mQueues.get(lane).size();
+    }
+
+    /**
+     * Cancels every queued and running job of a lane.
+     *
+     * @param lane one of the LANE_ constants
+     */
+    public void cancelAll(int lane) {
+        for (Job job : getJobs()) {
+            if (job.mLane == lane)
+                job.cancel();
+        }
+    }
+
+    /**
+     * Cancels every job and stops the workers once their jobs returned.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            mShutdown = true;
+            notifyAll();
+        }
+        for (int lane = 0; lane < LANES; lane++)
+            cancelAll(lane);
+    }
+
+    /*
+     * removes a cancelled job from its queue, a running job is left to stop by itself
+     */
+    private void dequeue(Job job) {
+        synchronized (this) {
+            if (!mQueues.get(job.mLane).remove(job))
+                return;
+        }
+        job.finish(STATE_CANCELLED);
+        changed(job);
+    }
+
+    private void progress(Job job, long done, long total) {
+        Listener listener = mListener;
+        long now = System.currentTimeMillis();
+
+        synchronized (job) {
+            if (done < total && now - job.mReportedAt < PROGRESS_INTERVAL)
+                return;
+            job.mReportedAt = now;
+        }
+        if (listener != null)
+            listener.onProgress(job, done, total);
+    }
+
+    private void changed(Job job) {
+        Listener listener = mListener;
+
+        if (listener != null)
+            listener.onStateChanged(job);
+    }
+
+    /*
+     * the first job, by lane, that may run now. Must hold the lock.
+     */
+    private Job take_next() {
+        for (int lane = 0; lane < LANES; lane++) {
+            //one worker is kept for interactive jobs
+            if (lane != LANE_INTERACTIVE && mRunningBackground >= mThreads - 1)
+                return null;
+
+            Iterator<Job> it = mQueues.get(lane).iterator();
+            while (it.hasNext()) {
+                Job job = it.next();
+
+                if (lane == LANE_INTERACTIVE || below_limit(job)) {
+                    it.remove();
+                    return job;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean below_limit(Job job) {
+        HashMap<String, Integer> counts = mVolumeCounts.get(job.mLane);
+
+        for (String volume : job.mVolumes) {
+            Integer count = counts.get(volume);
+            if (count != null && count.intValue() >= mVolumeLimit)
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * counts a job in or out of the running jobs. Must hold the lock.
+     */
+    private void count(Job job, int delta) {
+        if (delta > 0)
+            mRunning.add(job);
+        else
+            mRunning.remove(job);
+
+        if (job.mLane == LANE_INTERACTIVE)
+            return;
+
+        mRunningBackground += delta;
+        HashMap<String, Integer> counts = mVolumeCounts.get(job.mLane);
+
+        for (String volume : job.mVolumes) {
+            Integer count = counts.get(volume);
+            int value = (count == null ? 0 : count.intValue()) + delta;
+
+            if (value == 0)
+                counts.remove(volume);
+            else
+                counts.put(volume, Integer.valueOf(value));
+        }
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            while (true) {
+                Job job = null;
+
+                synchronized (JobScheduler.this) {
+                    while (!mShutdown && (job = take_next()) == null) {
+                        try {
+                            JobScheduler.this.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (job == null)
+                        return;
+
+                    count(job, 1);
+                    job.mState = STATE_RUNNING;
+                }
+
+                Thread.currentThread().setPriority(job.mLane == LANE_BULK ? Thread.MIN_PRIORITY :
+                        job.mLane == LANE_BACKGROUND ? Thread.NORM_PRIORITY - 1 : Thread.NORM_PRIORITY);
+                changed(job);
+
+                int state;
+                try {
+                    if (!job.isCancelled())
+                        job.run();
+                    state = job.isCancelled() ? STATE_CANCELLED : STATE_DONE;
+
+                } catch (Throwable e) {
+                    //an Error fails the job too, the worker and its slots must survive it
+                    job.mError = e;
+                    state = job.isCancelled() ? STATE_CANCELLED : STATE_FAILED;
+                }
+
+                synchronized (JobScheduler.this) {
+                    count(job, -1);
+                    //a freed volume or worker may let a queued job run
+                    JobScheduler.this.notifyAll();
+                }
+                job.finish(state);
+                changed(job);
+            }
+        }
+    }
+}
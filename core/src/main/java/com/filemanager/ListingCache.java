@@ -0,0 +1,120 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileListing;
+import com.filemanager.entity.FileStat;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the listings of recently listed directories so going back, or going into
+ * a prefetched folder, does not hit the disk again. Entries are evicted least
+ * recently used first once the total number of cached entries is over budget.
+ * <br>
+ * <br>
+ * A cached listing is only returned if the directory has not been modified since
+ * it was listed. Since file systems store modification times with a coarse
+ * resolution, a listing taken within {@link #MTIME_RESOLUTION} of the last change
+ * is never trusted. Files that change in place, such as a growing download, do
+ * not change the directory, so a cached listing is only good to show until the
+ * directory is listed again. Cached listings are shared and must not be modified.
+ */
+public class ListingCache {
+    public static final long MTIME_RESOLUTION = 2000;
+
+    private final int mMaxEntries;
+    private final FileSystem mFileSystem;
+    private final LinkedHashMap<String, Item> mItems;
+    private int mEntries = 0;
+
+    private static class Item {
+        final FileListing listing;
+        final long modified;
+        final long listedAt;
+
+        Item(FileListing listing, long modified, long listedAt) {
+            this.listing = listing;
+            this.modified = modified;
+            this.listedAt = listedAt;
+        }
+    }
+
+    /**
+     * @param maxEntries the total number of directory entries to keep, summed over all listings
+     * @param fileSystem the file system the listings come from
+     */
+    public ListingCache(int maxEntries, FileSystem fileSystem) {
+        mMaxEntries = maxEntries;
+        mFileSystem = fileSystem;
+        mItems = new LinkedHashMap<String, Item>(16, 0.75f, true);
+    }
+
+    /**
+     * @param path the full path of the directory
+     * @return the cached listing if the directory is unchanged since it was listed, null otherwise
+     */
+    public FileListing get(String path) {
+        Item item;
+
+        synchronized (this) {
+            item = mItems.get(path);
+        }
+        if (item == null)
+            return null;
+
+        //stat outside of the lock, it is the only I/O of a cache hit
+        FileStat stat = mFileSystem.stat(path);
+
+        if (stat == null || stat.getModified() != item.modified ||
+                item.listedAt - item.modified < MTIME_RESOLUTION) {
+            remove(path);
+            return null;
+        }
+        return item.listing;
+    }
+
+    /**
+     * @param path the full path of the directory
+     * @return true if a listing of the directory is cached, it is not validated
+     */
+    public synchronized boolean contains(String path) {
+        return mItems.containsKey(path);
+    }
+
+    /**
+     * Caches a complete listing. Listings larger than the whole budget are not cached.
+     *
+     * @param path     the full path of the directory
+     * @param listing  the complete listing, it must not be modified afterwards
+     * @param modified the modification time of the directory read before it was listed
+     * @param listedAt the time the listing started
+     */
+    public synchronized void put(String path, FileListing listing, long modified, long listedAt) {
+        if (listing.size() > mMaxEntries)
+            return;
+
+        Item old = mItems.put(path, new Item(listing, modified, listedAt));
+        if (old != null)
+            mEntries -= old.listing.size();
+        mEntries += listing.size();
+
+        Iterator<Map.Entry<String, Item>> it = mItems.entrySet().iterator();
+        while (mEntries > mMaxEntries && it.hasNext()) {
+            mEntries -= it.next().getValue().listing.size();
+            it.remove();
+        }
+    }
+
+    public synchronized void remove(String path) {
+        Item old = mItems.remove(path);
+
+        if (old != null)
+            mEntries -= old.listing.size();
+    }
+
+    public synchronized void clear() {
+        mItems.clear();
+        mEntries = 0;
+    }
+}
@@ -0,0 +1,179 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileListing;
+import com.filemanager.entity.FileStat;
+
+/**
+ * Lists directories in the interactive lane of the {@link JobScheduler} so the
+ * caller never waits on directory I/O. Only one listing is wanted at a time:
+ * every new request cancels the one before it, and a cancelled request stops at
+ * its next page and never reaches its callback again.
+ * <br>
+ * <br>
+ * A cached listing is delivered right away as a single page, then the directory
+ * is listed again in the background lane and the complete fresh listing is
+ * delivered as another page, since the files in it may have changed in place.
+ * <br>
+ * <br>
+ * Once a directory is completely listed, the directories the user is likely
+ * to open next are prefetched into the listing cache in the background lane.
+ * Prefetching is cancelled as soon as a new listing is requested.
+ * <br>
+ * <br>
+ * Callbacks run on the worker thread. The EventHandler class posts them to
+ * the UI thread. Like FileManager, this class has no reference to any GUI activity.
+ */
+public class ListingService {
+    private static final int FIRST_PAGE = 64;
+
+    private final FileManager mFileMang;
+    private final JobScheduler mScheduler;
+    private ListingTask mCurrent;
+    private JobScheduler.Job mPrefetch;
+
+    /**
+     * Receives the result of a listing request.
+     */
+    public interface Callback {
+        /**
+         * @param path      the directory that was requested
+         * @param listing   every entry loaded so far, sorted. See
+         *                  {@link FileManager.ListingListener#onPage(FileListing, int)}
+         * @param remaining the number of entries that still have to be loaded
+         */
+        void onPage(String path, FileListing listing, int remaining);
+
+        /**
+         * Called instead of onPage when the directory does not exist or can't be read.
+         *
+         * @param path the directory that was requested
+         */
+        void onError(String path);
+    }
+
+    public ListingService(FileManager manager) {
+        mFileMang = manager;
+        mScheduler = manager.getScheduler();
+    }
+
+    /**
+     * Starts listing a directory and cancels the request that was started before it.
+     *
+     * @param path     the full path of the directory
+     * @param callback receives the pages of the listing, or the error
+     * @return the job of the listing, which can be awaited. It does not include
+     *         the listing again of a cached directory
+     */
+    public synchronized JobScheduler.Job list(String path, Callback callback) {
+        cancel();
+
+        mCurrent = new ListingTask(path, callback, false);
+        mScheduler.submit(mCurrent);
+
+        return mCurrent;
+    }
+
+    /**
+     * Cancels the running request, if any. Its callback will not be called again.
+     */
+    public synchronized void cancel() {
+        if (mPrefetch != null) {
+            mPrefetch.cancel();
+            mPrefetch = null;
+        }
+
+        if (mCurrent != null) {
+            mCurrent.cancel();
+            mCurrent = null;
+        }
+    }
+
+    /**
+     * Cancels the running request. The scheduler is shared and keeps running.
+     */
+    public void shutdown() {
+        cancel();
+    }
+
+    /*
+     * queues the prefetch of the directories around a complete listing, unless
+     * a newer request was started in the meantime.
+     */
+    private synchronized void prefetch(ListingTask task, final FileListing listing) {
+        if (task != mCurrent || task.isCancelled())
+            return;
+
+        final String path = task.mPath;
+
+        mPrefetch = mScheduler.submit(new JobScheduler.Job("Prefetch " + path,
+                JobScheduler.LANE_BACKGROUND, path) {
+            @Override
+            protected void run() {
+                mFileMang.prefetchDirectories(path, listing, getToken());
+            }
+        });
+    }
+
+    /*
+     * queues the listing again of a directory that was served from the cache,
+     * unless a newer request was started in the meantime. It takes the place of
+     * the task, so it is cancelled like it and prefetches once it is done.
+     */
+    private synchronized void revalidate(ListingTask task) {
+        if (task != mCurrent || task.isCancelled())
+            return;
+
+        mCurrent = new ListingTask(task.mPath, task.mCallback, true);
+        mScheduler.submit(mCurrent);
+    }
+
+    private class ListingTask extends JobScheduler.Job implements FileManager.ListingListener {
+        private final String mPath;
+        private final Callback mCallback;
+        private final boolean mRevalidate;
+
+        ListingTask(String path, Callback callback, boolean revalidate) {
+            super((revalidate ? "Relist " : "List ") + path,
+                    revalidate ? JobScheduler.LANE_BACKGROUND : JobScheduler.LANE_INTERACTIVE, path);
+            mPath = path;
+            mCallback = callback;
+            mRevalidate = revalidate;
+        }
+
+        @Override
+        protected void run() {
+            FileSystem fs = mFileMang.getFileSystem();
+            FileStat dir = fs.stat(mPath);
+
+            if (dir == null || !dir.isDirectory() || !fs.canRead(mPath)) {
+                if (!isCancelled())
+                    mCallback.onError(mPath);
+                return;
+            }
+
+            FileListing cached = mRevalidate ? null : mFileMang.getCachedListing(mPath);
+
+            if (cached != null) {
+                onPage(cached, 0);
+                revalidate(this);
+                return;
+            }
+
+            //a revalidation only replaces what is shown once it is complete
+            FileListing listing = mFileMang.listDirectory(mPath,
+                    mRevalidate ? Integer.MAX_VALUE : FIRST_PAGE, this);
+
+            if (!isCancelled())
+                prefetch(this, listing);
+        }
+
+        public boolean onPage(FileListing listing, int remaining) {
+            if (isCancelled())
+                return false;
+
+            mCallback.onPage(mPath, listing, remaining);
+
+            return !isCancelled();
+        }
+    }
+}
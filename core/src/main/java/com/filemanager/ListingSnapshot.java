@@ -0,0 +1,145 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileListing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A listing saved to a file, so it can be shown right away on the next start
+ * while the directory is listed again in the background. The file holds the
+ * path, the time it was saved and the listing in the form of
+ * {@link FileListing#writeTo(java.io.DataOutput)}, followed by a CRC-32 of all
+ * of it. A snapshot that is damaged, or from another version, is not loaded.
+ * <br>
+ * <br>
+ * A snapshot is written to a temporary file that is then renamed over the old
+ * one, so a crash while saving leaves the previous snapshot in place.
+ */
+public final class ListingSnapshot {
+    private static final int MAGIC = 0x464c5331;
+    private static final int VERSION = 1;
+
+    private final String mPath;
+    private final long mSavedAt;
+    private final FileListing mListing;
+
+    private ListingSnapshot(String path, long savedAt, FileListing listing) {
+        mPath = path;
+        mSavedAt = savedAt;
+        mListing = listing;
+    }
+
+    /**
+     * @return the full path of the directory the listing is of
+     */
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * @return the time the snapshot was saved, in milliseconds since the epoch
+     */
+    public long getSavedAt() {
+        return mSavedAt;
+    }
+
+    /**
+     * @return the listing, frozen
+     */
+    public FileListing getListing() {
+        return mListing;
+    }
+
+    /**
+     * Saves a listing. It is read while it is written and must not be changed meanwhile.
+     *
+     * @param file    the snapshot file, replaced if it exists
+     * @param path    the full path of the directory the listing is of
+     * @param listing the listing to save
+     */
+    public static void save(File file, String path, FileListing listing) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)), new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(path);
+            out.writeLong(System.currentTimeMillis());
+            listing.writeTo(out);
+            out.writeLong(checked.getChecksum().getValue());
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("can't replace " + file);
+        }
+    }
+
+    /**
+     * @param file the snapshot file
+     * @return the snapshot, null if there is none or it can't be used
+     */
+    public static ListingSnapshot load(File file) {
+        if (!file.isFile())
+            return null;
+
+        DataInputStream in = null;
+
+        try {
+            CheckedInputStream checked = new CheckedInputStream(
+                    new BufferedInputStream(new FileInputStream(file)), new CRC32());
+            in = new DataInputStream(checked);
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+
+            String path = in.readUTF();
+            long savedAt = in.readLong();
+            FileListing listing = FileListing.readFrom(in, file.length());
+            long crc = checked.getChecksum().getValue();
+
+            return in.readLong() == crc ? new ListingSnapshot(path, savedAt, listing.freeze()) : null;
+
+        } catch (IOException e) {
+            Logger.w("ListingSnapshot", "discarding " + file + ": " + e.getMessage());
+            return null;
+
+        } catch (RuntimeException e) {
+            return discard(file, e);
+
+        } catch (OutOfMemoryError e) {
+            return discard(file, e);
+
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //nothing to do, the snapshot was already read
+                }
+            }
+        }
+    }
+
+    /* Deletes a snapshot that made the reader fail, so it can't fail on every start */
+    private static ListingSnapshot discard(File file, Throwable e) {
+        Logger.e("ListingSnapshot", "deleting " + file + ": " + e);
+        file.delete();
+        return null;
+    }
+}
@@ -0,0 +1,47 @@
+package com.filemanager;
+
+/**
+ * The log of the core classes. The core does not depend on Android, so it logs
+ * through this class, which writes to standard error until the app installs a
+ * logger that forwards to the platform log with {@link #setLogger(Logger)}.
+ */
+public abstract class Logger {
+    public static final int DEBUG = 3;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private static volatile Logger sLogger = new Logger() {
+        @Override
+        public void log(int level, String tag, String message) {
+            System.err.println(tag + ": " + message);
+        }
+    };
+
+    /**
+     * Writes one message.
+     *
+     * @param level   DEBUG, WARN or ERROR, the same values as android.util.Log uses
+     * @param tag     the source of the message
+     * @param message the message, may be null
+     */
+    public abstract void log(int level, String tag, String message);
+
+    /**
+     * @param logger receives every message from now on
+     */
+    public static void setLogger(Logger logger) {
+        sLogger = logger;
+    }
+
+    public static void d(String tag, String message) {
+        sLogger.log(DEBUG, tag, message);
+    }
+
+    public static void w(String tag, String message) {
+        sLogger.log(WARN, tag, message);
+    }
+
+    public static void e(String tag, String message) {
+        sLogger.log(ERROR, tag, message);
+    }
+}
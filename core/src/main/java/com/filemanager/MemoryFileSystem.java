@@ -0,0 +1,531 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileStat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * A file system held in memory, for tests and benchmarks that should measure
+ * the algorithms and not the disk. Entries are stored in parallel arrays indexed
+ * by node number, the children of a directory as an array of node numbers sorted
+ * by name, so looking up a path costs a binary search per directory and a node
+ * takes about 40 bytes. Names are shared between nodes that have the same name.
+ * <br>
+ * <br>
+ * {@link #generate(String, int, int, int, long)} fills a directory with a tree of
+ * millions of entries in about a second. Generated files have no stored content,
+ * reading one returns a repeatable pattern of its size; files written through
+ * {@link #openWrite(String)} keep what was written. Every method is synchronized.
+ */
+public class MemoryFileSystem implements FileSystem {
+    private static final int ROOT = 0;
+    private static final int DELETED = -2;
+    private static final long YEAR = 365L * 24 * 60 * 60 * 1000;
+    private static final String[] EXTENSIONS = {
+            ".jpg", ".png", ".mp3", ".mp4", ".pdf", ".doc", ".zip", ".txt", ".xml", ".apk", ""
+    };
+
+    private String[] mNames;
+    private int[] mParents;
+    private long[] mSizes;
+    private long[] mModified;
+    //null for files, sorted by name for directories
+    private int[][] mChildren;
+    private int[] mChildCounts;
+    private int mCount = 0;
+    private final HashMap<String, String> mNamePool = new HashMap<String, String>();
+    private final HashMap<Integer, byte[]> mContents = new HashMap<Integer, byte[]>();
+    //links to generated files, by the node whose pattern they read
+    private final HashMap<Integer, Integer> mPatterns = new HashMap<Integer, Integer>();
+
+    /**
+     * Creates a file system that only has its root directory.
+     */
+    public MemoryFileSystem() {
+        int capacity = 1024;
+
+        mNames = new String[capacity];
+        mParents = new int[capacity];
+        mSizes = new long[capacity];
+        mModified = new long[capacity];
+        mChildren = new int[capacity][];
+        mChildCounts = new int[capacity];
+
+        new_node(-1, "", true, 0, System.currentTimeMillis());
+    }
+
+    public synchronized String[] list(String path) {
+        int dir = lookup(path);
+        if (dir < 0 || mChildren[dir] == null)
+            return null;
+
+        String[] names = new String[mChildCounts[dir]];
+        int[] children = mChildren[dir];
+
+        for (int i = 0; i < names.length; i++)
+            names[i] = mNames[children[i]];
+
+        return names;
+    }
+
+    public synchronized FileStat stat(String path) {
+        int node = lookup(path);
+        if (node < 0)
+            return null;
+
+        return new FileStat(mChildren[node] != null, mSizes[node], mModified[node]);
+    }
+
+    public synchronized boolean canRead(String path) {
+        return lookup(path) >= 0;
+    }
+
+    public synchronized boolean canWrite(String path) {
+        return lookup(path) >= 0;
+    }
+
+    public boolean isSymlink(String path) {
+        return false;
+    }
+
+    public synchronized InputStream openRead(String path) throws IOException {
+        int node = lookup(path);
+        if (node < 0 || mChildren[node] != null)
+            throw new FileNotFoundException(path);
+
+        byte[] content = mContents.get(Integer.valueOf(node));
+        if (content != null)
+            return new ByteArrayInputStream(content);
+
+        Integer pattern = mPatterns.get(Integer.valueOf(node));
+
+        return new PatternInputStream(mSizes[node], pattern != null ? pattern.intValue() : node);
+    }
+
+    public synchronized OutputStream openWrite(final String path) throws IOException {
+        int node = lookup(path);
+
+        if (node < 0) {
+            int parent = lookup(parent_of(path));
+            if (parent < 0 || mChildren[parent] == null)
+                throw new FileNotFoundException(path);
+
+            node = add_child(parent, name_of(path), false, 0, System.currentTimeMillis());
+            mModified[parent] = mModified[node];
+
+        } else if (mChildren[node] != null) {
+            throw new FileNotFoundException(path + " is a directory");
+        }
+
+        final int file = node;
+        mContents.put(Integer.valueOf(file), new byte[0]);
+        mSizes[file] = 0;
+
+        return new ByteArrayOutputStream() {
+            private boolean mClosed = false;
+
+            @Override
+            public void close() {
+                synchronized (MemoryFileSystem.this) {
+                    //the file may have been deleted or replaced meanwhile
+                    if (mClosed || mParents[file] == DELETED)
+                        return;
+
+                    mClosed = true;
+                    mContents.put(Integer.valueOf(file), toByteArray());
+                    mSizes[file] = size();
+                    mModified[file] = System.currentTimeMillis();
+                }
+            }
+        };
+    }
+
+    public synchronized boolean mkdir(String path) {
+        int parent = lookup(parent_of(path));
+        String name = name_of(path);
+
+        if (parent < 0 || mChildren[parent] == null || name.length() == 0)
+            return false;
+
+        if (add_child(parent, name, true, 0, System.currentTimeMillis()) < 0)
+            return false;
+
+        mModified[parent] = System.currentTimeMillis();
+        return true;
+    }
+
+    public synchronized boolean rename(String from, String to) {
+        int node = lookup(from);
+        int parent = lookup(parent_of(to));
+        String name = name_of(to);
+
+        if (node <= ROOT || parent < 0 || mChildren[parent] == null || name.length() == 0)
+            return false;
+        if (find_child(parent, name) >= 0)
+            return false;
+
+        //a directory can't be moved into itself
+        for (int up = parent; up != -1; up = mParents[up]) {
+            if (up == node)
+                return false;
+        }
+
+        detach(node);
+        mNames[node] = intern(name);
+        attach(parent, node);
+        mModified[parent] = System.currentTimeMillis();
+
+        return true;
+    }
+
+    public synchronized boolean delete(String path) {
+        int node = lookup(path);
+
+        if (node <= ROOT || (mChildren[node] != null && mChildCounts[node] > 0))
+            return false;
+
+        detach(node);
+        mParents[node] = DELETED;
+        mChildren[node] = null;
+        mContents.remove(Integer.valueOf(node));
+        mPatterns.remove(Integer.valueOf(node));
+
+        return true;
+    }
+
+    /*
+     * the link is a new file of the same size and content, it stops sharing the
+     * content once either of them is written again
+     */
+    public synchronized boolean link(String existing, String link) {
+        int node = lookup(existing);
+        int parent = lookup(parent_of(link));
+        String name = name_of(link);
+
+        if (node <= ROOT || mChildren[node] != null || parent < 0 || mChildren[parent] == null ||
+                name.length() == 0 || find_child(parent, name) >= 0)
+            return false;
+
+        int added = add_child(parent, name, false, mSizes[node], mModified[node]);
+        mModified[parent] = System.currentTimeMillis();
+        byte[] content = mContents.get(Integer.valueOf(node));
+        Integer pattern = mPatterns.get(Integer.valueOf(node));
+
+        if (content != null)
+            mContents.put(Integer.valueOf(added), content);
+        else
+            mPatterns.put(Integer.valueOf(added), pattern != null ? pattern : Integer.valueOf(node));
+
+        return true;
+    }
+
+    /**
+     * Creates a directory and any missing parent.
+     *
+     * @param path the full path of the directory
+     * @return false if a file is in the way
+     */
+    public synchronized boolean mkdirs(String path) {
+        int node = ROOT;
+
+        for (String name : path.split("/")) {
+            if (name.length() == 0)
+                continue;
+
+            int index = find_child(node, name);
+            if (index >= 0) {
+                node = mChildren[node][index];
+                if (mChildren[node] == null)
+                    return false;
+            } else {
+                node = add_child(node, name, true, 0, System.currentTimeMillis());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates a tree below a directory. Every directory gets files of mixed
+     * types, with sizes and times drawn from the seed, and the given number of
+     * sub directories down to the given depth. The same arguments always
+     * generate the same tree.
+     * <br>
+     * depth 3, fanout 10 and 1000 files make 1111 directories and 1.1 million files.
+     *
+     * @param path   the full path of the directory, created if it is missing
+     * @param depth  the number of directory levels below path
+     * @param fanout the number of sub directories of every directory
+     * @param files  the number of files in every directory
+     * @param seed   the seed of the sizes, types and times
+     * @return the number of entries created
+     */
+    public synchronized int generate(String path, int depth, int fanout, int files, long seed) {
+        if (!mkdirs(path))
+            return 0;
+
+        int before = mCount;
+        Random random = new Random(seed);
+        String[] dirNames = numbered_names("d", fanout, "");
+        String[][] fileNames = new String[EXTENSIONS.length][];
+
+        for (int i = 0; i < EXTENSIONS.length; i++)
+            fileNames[i] = numbered_names("f", files, EXTENSIONS[i]);
+
+        generate_dir(lookup(path), depth, dirNames, fileNames, random, System.currentTimeMillis());
+
+        return mCount - before;
+    }
+
+    /**
+     * @return the number of entries ever created, including the root and deleted ones
+     */
+    public synchronized int getNodeCount() {
+        return mCount;
+    }
+
+    private void generate_dir(int dir, int depth, String[] dirNames, String[][] fileNames,
+                              Random random, long now) {
+        //"d..." sorts before "f...", and the numbers are zero padded, so nodes are appended in order
+        if (depth > 0) {
+            for (String name : dirNames) {
+                int child = add_child(dir, name, true, 0, now - (long) (random.nextDouble() * YEAR));
+
+                if (child >= 0)
+                    generate_dir(child, depth - 1, dirNames, fileNames, random, now);
+            }
+        }
+
+        int count = fileNames[0].length;
+        for (int i = 0; i < count; i++) {
+            String name = fileNames[random.nextInt(fileNames.length)][i];
+            //most files are small, a few are very large
+            long size = (long) (random.nextDouble() * random.nextDouble() * random.nextDouble() * 100000000L);
+
+            add_child(dir, name, false, size, now - (long) (random.nextDouble() * 3 * YEAR));
+        }
+    }
+
+    private String[] numbered_names(String prefix, int count, String suffix) {
+        String[] names = new String[count];
+        int width = String.valueOf(Math.max(0, count - 1)).length();
+
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder(prefix);
+            String number = String.valueOf(i);
+
+            for (int pad = number.length(); pad < width; pad++)
+                name.append('0');
+
+            names[i] = intern(name.append(number).append(suffix).toString());
+        }
+        return names;
+    }
+
+    /*
+     * the node of a full path, -1 if it does not exist
+     */
+    private int lookup(String path) {
+        int node = ROOT;
+        int start = 0;
+        int length = path.length();
+
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0)
+                end = length;
+
+            if (end > start) {
+                if (mChildren[node] == null)
+                    return -1;
+
+                int index = find_child(node, path.substring(start, end));
+                if (index < 0)
+                    return -1;
+
+                node = mChildren[node][index];
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /*
+     * binary search in the sorted children of a directory, returns the index
+     * of the child or -(insertion point) - 1
+     */
+    private int find_child(int dir, String name) {
+        int[] children = mChildren[dir];
+        int low = 0;
+        int high = mChildCounts[dir] - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = mNames[children[mid]].compareTo(name);
+
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    private int add_child(int parent, String name, boolean directory, long size, long modified) {
+        if (find_child(parent, name) >= 0)
+            return -1;
+
+        int node = new_node(parent, name, directory, size, modified);
+        attach(parent, node);
+
+        return node;
+    }
+
+    private int new_node(int parent, String name, boolean directory, long size, long modified) {
+        if (mCount == mNames.length)
+            grow();
+
+        int node = mCount++;
+        mNames[node] = intern(name);
+        mParents[node] = parent;
+        mSizes[node] = size;
+        mModified[node] = modified;
+        mChildren[node] = directory ? new int[4] : null;
+        mChildCounts[node] = 0;
+
+        return node;
+    }
+
+    private void attach(int parent, int node) {
+        int count = mChildCounts[parent];
+        int[] children = mChildren[parent];
+        //appending in order is the common case when a tree is generated
+        int at = count > 0 && mNames[children[count - 1]].compareTo(mNames[node]) < 0 ?
+                count : -find_child(parent, mNames[node]) - 1;
+
+        if (count == children.length) {
+            int[] larger = new int[count * 2];
+            System.arraycopy(children, 0, larger, 0, count);
+            children = larger;
+            mChildren[parent] = children;
+        }
+
+        System.arraycopy(children, at, children, at + 1, count - at);
+        children[at] = node;
+        mChildCounts[parent] = count + 1;
+        mParents[node] = parent;
+    }
+
+    private void detach(int node) {
+        int parent = mParents[node];
+        int at = find_child(parent, mNames[node]);
+        int count = mChildCounts[parent];
+
+        System.arraycopy(mChildren[parent], at + 1, mChildren[parent], at, count - at - 1);
+        mChildCounts[parent] = count - 1;
+        mModified[parent] = System.currentTimeMillis();
+    }
+
+    private void grow() {
+        int capacity = mNames.length * 2;
+
+        String[] names = new String[capacity];
+        int[] parents = new int[capacity];
+        long[] sizes = new long[capacity];
+        long[] modified = new long[capacity];
+        int[][] children = new int[capacity][];
+        int[] childCounts = new int[capacity];
+
+        System.arraycopy(mNames, 0, names, 0, mCount);
+        System.arraycopy(mParents, 0, parents, 0, mCount);
+        System.arraycopy(mSizes, 0, sizes, 0, mCount);
+        System.arraycopy(mModified, 0, modified, 0, mCount);
+        System.arraycopy(mChildren, 0, children, 0, mCount);
+        System.arraycopy(mChildCounts, 0, childCounts, 0, mCount);
+
+        mNames = names;
+        mParents = parents;
+        mSizes = sizes;
+        mModified = modified;
+        mChildren = children;
+        mChildCounts = childCounts;
+    }
+
+    private String intern(String name) {
+        String shared = mNamePool.get(name);
+
+        if (shared == null) {
+            mNamePool.put(name, name);
+            shared = name;
+        }
+        return shared;
+    }
+
+    private static String parent_of(String path) {
+        String trimmed = path.endsWith("/") && path.length() > 1 ? path.substring(0, path.length() - 1) : path;
+        int slash = trimmed.lastIndexOf('/');
+
+        return slash <= 0 ? "/" : trimmed.substring(0, slash);
+    }
+
+    private static String name_of(String path) {
+        String trimmed = path.endsWith("/") && path.length() > 1 ? path.substring(0, path.length() - 1) : path;
+
+        return trimmed.substring(trimmed.lastIndexOf('/') + 1);
+    }
+
+    /*
+     * the content of a generated file: size bytes of a pattern that depends on the node
+     */
+    private static class PatternInputStream extends InputStream {
+        private final long mSize;
+        private final int mSeed;
+        private long mPosition = 0;
+
+        PatternInputStream(long size, int seed) {
+            mSize = size;
+            mSeed = seed * 31;
+        }
+
+        @Override
+        public int read() {
+            if (mPosition >= mSize)
+                return -1;
+
+            return (int) (mSeed + mPosition++) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] data, int off, int len) {
+            if (mPosition >= mSize)
+                return -1;
+
+            int count = (int) Math.min(len, mSize - mPosition);
+            for (int i = 0; i < count; i++)
+                data[off + i] = (byte) (mSeed + mPosition++);
+
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, mSize - mPosition));
+            mPosition += skipped;
+
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, mSize - mPosition);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.filemanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the file operations, so that reports from
+ * the field can say where the time goes. Instruments are looked up by name once,
+ * when their owner is created, and kept in fields; recording a value is then a
+ * single atomic add, without locks or allocation.
+ * <br>
+ * <br>
+ * {@link #snapshot()} copies every instrument into a {@link Snapshot}, whose
+ * toString() is a plain text export with one instrument per line.
+ */
+public class Metrics {
+    private static final Metrics DEFAULT = new Metrics();
+
+    private final LinkedHashMap<String, Counter> mCounters = new LinkedHashMap<String, Counter>();
+    private final LinkedHashMap<String, Histogram> mHistograms = new LinkedHashMap<String, Histogram>();
+
+    /**
+     * @return the registry shared by the FileManager and the thumbnail threads
+     */
+    public static Metrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param name the name of the counter, like "copy.bytes"
+     * @return the counter of that name, created if it does not exist yet
+     */
+    public synchronized Counter counter(String name) {
+        Counter counter = mCounters.get(name);
+
+        if (counter == null) {
+            counter = new Counter();
+            mCounters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * @param name the name of the histogram, like "listing.time"
+     * @return the histogram of that name, created if it does not exist yet
+     */
+    public synchronized Histogram histogram(String name) {
+        Histogram histogram = mHistograms.get(name);
+
+        if (histogram == null) {
+            histogram = new Histogram();
+            mHistograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Copies the current value of every instrument. Values recorded while the copy
+     * is made may or may not be in it, each instrument is consistent on its own.
+     *
+     * @return the values, by name in the order the instruments were created
+     */
+    public synchronized Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot(System.currentTimeMillis());
+
+        for (Map.Entry<String, Counter> counter : mCounters.entrySet())
+            snapshot.mCounters.put(counter.getKey(), Long.valueOf(counter.getValue().get()));
+
+        for (Map.Entry<String, Histogram> histogram : mHistograms.entrySet())
+            snapshot.mHistograms.put(histogram.getKey(), histogram.getValue().copy());
+
+        return snapshot;
+    }
+
+    /**
+     * Sets every instrument back to zero, for example after a report was sent.
+     */
+    public synchronized void reset() {
+        for (Counter counter : mCounters.values())
+            counter.mValue.set(0);
+
+        for (Histogram histogram : mHistograms.values())
+            histogram.clear();
+    }
+
+    /**
+     * A number that only goes up, like the bytes copied so far.
+     */
+    public static class Counter {
+        private final AtomicLong mValue = new AtomicLong();
+
+        private Counter() {
+        }
+
+        public void add(long amount) {
+            mValue.addAndGet(amount);
+        }
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+    }
+
+    /**
+     * The distribution of a duration. Durations are kept in microseconds in
+     * power of two buckets, bucket i counts durations below 2^i microseconds.
+     */
+    public static class Histogram {
+        public static final int BUCKETS = 32;
+
+        private final AtomicLongArray mBuckets;
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        private Histogram() {
+            mBuckets = new AtomicLongArray(BUCKETS);
+        }
+
+        private Histogram(long[] buckets, long count, long sum, long max) {
+            mBuckets = new AtomicLongArray(buckets);
+            mCount.set(count);
+            mSum.set(sum);
+            mMax.set(max);
+        }
+
+        /**
+         * @return the time to pass to {@link #stop(long)}
+         */
+        public long start() {
+            return System.nanoTime();
+        }
+
+        /**
+         * Records the time passed since start.
+         *
+         * @param start the value returned by {@link #start()}
+         */
+        public void stop(long start) {
+            record((System.nanoTime() - start) / 1000);
+        }
+
+        /**
+         * @param micros a duration in microseconds
+         */
+        public void record(long micros) {
+            if (micros < 0)
+                micros = 0;
+
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            mBuckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+            mCount.incrementAndGet();
+            mSum.addAndGet(micros);
+
+            long max = mMax.get();
+            while (micros > max && !mMax.compareAndSet(max, micros))
+                max = mMax.get();
+        }
+
+        /**
+         * @return the number of durations recorded
+         */
+        public long getCount() {
+            return mCount.get();
+        }
+
+        /**
+         * @return the sum of all durations in microseconds
+         */
+        public long getSum() {
+            return mSum.get();
+        }
+
+        /**
+         * @return the longest duration in microseconds
+         */
+        public long getMax() {
+            return mMax.get();
+        }
+
+        /**
+         * @param bucket a bucket, 0 to BUCKETS - 1
+         * @return the number of durations below 2^bucket microseconds and not in a lower bucket
+         */
+        public long getBucket(int bucket) {
+            return mBuckets.get(bucket);
+        }
+
+        /**
+         * @param fraction a fraction of the durations, like 0.99
+         * @return the upper bound in microseconds of the bucket that holds that percentile
+         */
+        public long getPercentile(double fraction) {
+            long count = mCount.get();
+            long wanted = (long) Math.ceil(count * fraction);
+            long seen = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= wanted && seen > 0)
+                    return Math.min(1L << i, mMax.get());
+            }
+            return mMax.get();
+        }
+
+        private Histogram copy() {
+            long[] buckets = new long[BUCKETS];
+
+            for (int i = 0; i < BUCKETS; i++)
+                buckets[i] = mBuckets.get(i);
+
+            return new Histogram(buckets, mCount.get(), mSum.get(), mMax.get());
+        }
+
+        private void clear() {
+            for (int i = 0; i < BUCKETS; i++)
+                mBuckets.set(i, 0);
+
+            mCount.set(0);
+            mSum.set(0);
+            mMax.set(0);
+        }
+    }
+
+    /**
+     * The values of every instrument at one point in time.
+     */
+    public static class Snapshot {
+        private final long mTime;
+        private final LinkedHashMap<String, Long> mCounters = new LinkedHashMap<String, Long>();
+        private final LinkedHashMap<String, Histogram> mHistograms = new LinkedHashMap<String, Histogram>();
+
+        private Snapshot(long time) {
+            mTime = time;
+        }
+
+        /**
+         * @return the time the snapshot was taken
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+        public List<String> getCounterNames() {
+            return Collections.unmodifiableList(new ArrayList<String>(mCounters.keySet()));
+        }
+
+        public List<String> getHistogramNames() {
+            return Collections.unmodifiableList(new ArrayList<String>(mHistograms.keySet()));
+        }
+
+        /**
+         * @param name the name of a counter
+         * @return its value, 0 if there is no such counter
+         */
+        public long getCounter(String name) {
+            Long value = mCounters.get(name);
+
+            return value == null ? 0 : value.longValue();
+        }
+
+        /**
+         * @param name the name of a histogram
+         * @return a copy of the histogram, null if there is no such histogram
+         */
+        public Histogram getHistogram(String name) {
+            return mHistograms.get(name);
+        }
+
+        /**
+         * @param counter   the name of a counter, like "copy.bytes"
+         * @param histogram the name of the histogram timing the same work, like "copy.time"
+         * @return the amount of the counter per second of recorded time, 0 if nothing was recorded
+         */
+        public double getRate(String counter, String histogram) {
+            Histogram time = mHistograms.get(histogram);
+
+            if (time == null || time.getSum() == 0)
+                return 0;
+
+            return getCounter(counter) * 1000000.0 / time.getSum();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+
+            out.append("time ").append(mTime).append('\n');
+
+            for (Map.Entry<String, Long> counter : mCounters.entrySet())
+                out.append(counter.getKey()).append(' ').append(counter.getValue()).append('\n');
+
+            for (Map.Entry<String, Histogram> entry : mHistograms.entrySet()) {
+                Histogram histogram = entry.getValue();
+
+                out.append(entry.getKey())
+                        .append(" count=").append(histogram.getCount())
+                        .append(" sum_us=").append(histogram.getSum())
+                        .append(" p50_us=").append(histogram.getPercentile(0.5))
+                        .append(" p99_us=").append(histogram.getPercentile(0.99))
+                        .append(" max_us=").append(histogram.getMax())
+                        .append('\n');
+            }
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileStat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A search that is refined while the user types. The first query walks the
+ * tree and keeps every entry whose name contains it, the candidates. A query
+ * that contains the previous one, as "vaca" after "vac", can only match some of
+ * those candidates, so it is answered from memory without touching the file
+ * system. Only a query that broadens the search walks the tree again.
+ * <br>
+ * <br>
+ * The results are those of {@link FileManager#searchInDirectory(String, String)}:
+ * files and directories whose name contains the query, case insensitive, but
+ * nothing below a directory that matches. The walk looks below matching
+ * directories anyway, since they may not match a longer query. Changes to the
+ * tree are seen on the next walk, or after {@link #reset()}.
+ * <br>
+ * <br>
+ * Like FileManager, this class has no reference to any GUI activity.
+ */
+public class SearchSession {
+    private final FileSystem mFileSystem;
+    private final String mDir;
+    private String mQuery;
+    //full paths of the candidates, in the order of the walk
+    private ArrayList<String> mPaths = new ArrayList<String>();
+    private BitSet mDirs = new BitSet();
+    private int mWalks;
+
+    SearchSession(FileSystem fs, String dir) {
+        mFileSystem = fs;
+        mDir = dir;
+    }
+
+    public String getDirectory() {
+        return mDir;
+    }
+
+    /**
+     * @return the number of times the tree was walked
+     */
+    public synchronized int getWalkCount() {
+        return mWalks;
+    }
+
+    /**
+     * Forgets the candidates, the next query walks the tree again.
+     */
+    public synchronized void reset() {
+        mQuery = null;
+        mPaths = new ArrayList<String>();
+        mDirs = new BitSet();
+    }
+
+    /**
+     * @param text the text the names are searched for
+     * @return the full paths of the matching files and directories
+     */
+    public synchronized List<String> query(String text) {
+        String query = text.toLowerCase();
+
+        if (mQuery != null && query.contains(mQuery))
+            refine(query);
+        else
+            walk(query);
+
+        mQuery = query;
+        return results();
+    }
+
+    /*
+     * keeps the candidates whose name also contains the longer query
+     */
+    private void refine(String query) {
+        if (query.equals(mQuery))
+            return;
+
+        ArrayList<String> paths = new ArrayList<String>();
+        BitSet dirs = new BitSet();
+        int len = mPaths.size();
+
+        for (int i = 0; i < len; i++) {
+            String path = mPaths.get(i);
+
+            if (name_of(path).toLowerCase().contains(query)) {
+                if (mDirs.get(i))
+                    dirs.set(paths.size());
+                paths.add(path);
+            }
+        }
+
+        mPaths = paths;
+        mDirs = dirs;
+    }
+
+    private void walk(String query) {
+        mPaths = new ArrayList<String>();
+        mDirs = new BitSet();
+        mWalks++;
+
+        walk_dir(mDir, query);
+    }
+
+    private void walk_dir(String dir, String query) {
+        String[] list = mFileSystem.list(dir);
+
+        if (list == null || !mFileSystem.canRead(dir))
+            return;
+
+        for (int i = 0; i < list.length; i++) {
+            String path = dir.endsWith("/") ? dir + list[i] : dir + "/" + list[i];
+            FileStat stat = mFileSystem.stat(path);
+
+            if (stat == null)
+                continue;
+
+            boolean isDir = stat.isDirectory();
+
+            if ((isDir || stat.isFile()) && list[i].toLowerCase().contains(query)) {
+                if (isDir)
+                    mDirs.set(mPaths.size());
+                mPaths.add(path);
+            }
+
+            //like searchInDirectory, the directories in the root are not searched
+            if (isDir && mFileSystem.canRead(path) && !dir.equals("/"))
+                walk_dir(path, query);
+        }
+    }
+
+    /*
+     * the candidates that are not below a matching directory. A directory comes
+     * right before everything below it, so one directory at a time is enough.
+     */
+    private ArrayList<String> results() {
+        ArrayList<String> results = new ArrayList<String>();
+        String below = null;
+        int len = mPaths.size();
+
+        for (int i = 0; i < len; i++) {
+            String path = mPaths.get(i);
+
+            if (below != null && path.startsWith(below))
+                continue;
+
+            results.add(path);
+            below = mDirs.get(i) ? path + "/" : null;
+        }
+        return results;
+    }
+
+    private static String name_of(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+}
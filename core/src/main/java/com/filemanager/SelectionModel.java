@@ -0,0 +1,181 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileListing;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Holds the files and folders the user has selected in multi-select mode.
+ * <br>
+ * <br>
+ * Selections in the directory on screen are a bit set over the indices of its
+ * listing, so checking a row while it is bound and selecting or inverting every
+ * row are cheap no matter how large the directory is. Selections in other
+ * directories are kept by name, grouped by directory, which is what stays stable
+ * when the user navigates away or the listing is sorted again. Call
+ * {@link #unbind()} before the listing on screen is changed and
+ * {@link #bind(FileListing, String)} once the new content is in place.
+ */
+public class SelectionModel {
+    private final BitSet mBits = new BitSet();
+    private final HashMap<String, HashSet<String>> mOtherDirs = new HashMap<String, HashSet<String>>();
+    private FileListing mListing;
+    private String mDir;
+    private int mOtherCount = 0;
+
+    /**
+     * Remembers the selections of the bound listing by name and detaches from it.
+     * This must be called while the listing still has the content the selections
+     * were made on.
+     */
+    public void unbind() {
+        if (mListing != null && !mBits.isEmpty()) {
+            HashSet<String> names = other_dir(mDir);
+
+            for (int i = mBits.nextSetBit(0); i >= 0 && i < mListing.size(); i = mBits.nextSetBit(i + 1)) {
+                if (names.add(mListing.getName(i)))
+                    mOtherCount++;
+            }
+        }
+
+        mBits.clear();
+        mListing = null;
+        mDir = null;
+    }
+
+    /**
+     * Attaches the model to a listing and restores the selections made in its directory.
+     *
+     * @param listing the listing now on screen
+     * @param dir     the full path of the directory it lists
+     */
+    public void bind(FileListing listing, String dir) {
+        unbind();
+
+        mListing = listing;
+        mDir = dir;
+
+        HashSet<String> names = mOtherDirs.remove(dir);
+        if (names == null)
+            return;
+
+        for (int i = 0; i < listing.size() && !names.isEmpty(); i++) {
+            if (names.remove(listing.getName(i))) {
+                mBits.set(i);
+                mOtherCount--;
+            }
+        }
+
+        //entries that are not in the listing (yet), keep them for the next bind
+        if (!names.isEmpty())
+            mOtherDirs.put(dir, names);
+    }
+
+    /**
+     * @param index the index in the bound listing
+     * @return true if the entry is selected
+     */
+    public boolean isSelected(int index) {
+        return mBits.get(index);
+    }
+
+    /**
+     * @param index the index in the bound listing
+     * @return true if the entry is now selected, false if it was deselected
+     */
+    public boolean toggle(int index) {
+        mBits.flip(index);
+
+        return mBits.get(index);
+    }
+
+    public void select(int index, boolean selected) {
+        mBits.set(index, selected);
+    }
+
+    /**
+     * Selects every entry of the bound listing.
+     */
+    public void selectAll() {
+        mBits.set(0, listing_size());
+    }
+
+    /**
+     * Selects the entries of the bound listing that are not selected and deselects the others.
+     */
+    public void invert() {
+        mBits.flip(0, listing_size());
+    }
+
+    /**
+     * Selects the entries between two indices of the bound listing, both included,
+     * in whatever order they are given.
+     */
+    public void selectRange(int from, int to) {
+        int size = listing_size();
+        int start = Math.max(0, Math.min(from, to));
+        int end = Math.min(size, Math.max(from, to) + 1);
+
+        if (start < end)
+            mBits.set(start, end);
+    }
+
+    /**
+     * Deselects everything, in every directory.
+     */
+    public void clear() {
+        mBits.clear();
+        mOtherDirs.clear();
+        mOtherCount = 0;
+    }
+
+    /**
+     * @return the number of selected entries, in every directory
+     */
+    public int size() {
+        return mBits.cardinality() + mOtherCount;
+    }
+
+    /**
+     * @return the full paths of every selected entry, in every directory
+     */
+    public ArrayList<String> getSelectedPaths() {
+        ArrayList<String> paths = new ArrayList<String>(size());
+
+        if (mListing != null) {
+            String prefix = mDir.endsWith("/") ? mDir : mDir + "/";
+
+            for (int i = mBits.nextSetBit(0); i >= 0 && i < mListing.size(); i = mBits.nextSetBit(i + 1))
+                paths.add(prefix + mListing.getName(i));
+        }
+
+        Iterator<Map.Entry<String, HashSet<String>>> it = mOtherDirs.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, HashSet<String>> dir = it.next();
+            String prefix = dir.getKey().endsWith("/") ? dir.getKey() : dir.getKey() + "/";
+
+            for (String name : dir.getValue())
+                paths.add(prefix + name);
+        }
+        return paths;
+    }
+
+    private HashSet<String> other_dir(String dir) {
+        HashSet<String> names = mOtherDirs.get(dir);
+
+        if (names == null) {
+            names = new HashSet<String>();
+            mOtherDirs.put(dir, names);
+        }
+        return names;
+    }
+
+    private int listing_size() {
+        return mListing == null ? 0 : mListing.size();
+    }
+}
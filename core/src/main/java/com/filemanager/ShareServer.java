@@ -0,0 +1,770 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileListing;
+import com.filemanager.entity.FileStat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Shares a directory tree with other devices on the network over HTTP. A GET
+ * of a directory returns its listing as JSON, a GET of a file returns the file,
+ * or the part a Range header asks for, so videos can be seeked in a browser.
+ * HEAD is answered too.
+ * <br>
+ * <br>
+ * One thread serves every connection with a selector. File content is sent with
+ * FileChannel.transferTo, which lets the kernel copy from the page cache to the
+ * socket, so streaming a large video to several clients takes almost no CPU.
+ * Every writable connection gets at most 512 KB per turn. Directories are listed
+ * in the background lane of the {@link JobScheduler} with
+ * {@link FileManager#listDirectory(String, int, FileManager.ListingListener)},
+ * whose listings are frozen and always current, so the selector never waits on
+ * the disk and clients can't hold up the interactive lane the user browses with.
+ * <br>
+ * <br>
+ * Connections over the limit get 503, idle ones are closed after 30 seconds.
+ * The bytes and requests served are counted by client address. Files are read
+ * from the local disk. A path that resolves outside the shared directory, through
+ * a symbolic link, is not found, and neither are hidden files and folders unless
+ * the FileManager shows them. Like FileManager, this class has no reference to
+ * any GUI activity.
+ */
+public class ShareServer {
+    private static final int HEADER_LIMIT = 8192;
+    private static final int CHUNK = 512 * 1024;
+    private static final long IDLE_TIMEOUT = 30000;
+    private static final int TICK = 1000;
+
+    private static final Metrics METRICS = Metrics.getDefault();
+    private static final Metrics.Counter SHARE_BYTES = METRICS.counter("share.bytes");
+    private static final Metrics.Counter SHARE_REQUESTS = METRICS.counter("share.requests");
+    private static final Metrics.Counter SHARE_REJECTED = METRICS.counter("share.rejected");
+
+    private static final HashMap<String, String> MIME_TYPES = new HashMap<String, String>();
+
+    static {
+        String[] types = {
+                "html", "text/html", "htm", "text/html", "txt", "text/plain", "log", "text/plain",
+                "xml", "text/xml", "json", "application/json", "pdf", "application/pdf",
+                "jpg", "image/jpeg", "jpeg", "image/jpeg", "png", "image/png", "gif", "image/gif",
+                "mp3", "audio/mpeg", "m4a", "audio/mp4", "wma", "audio/x-ms-wma",
+                "mp4", "video/mp4", "m4v", "video/mp4", "3gp", "video/3gpp", "wmv", "video/x-ms-wmv",
+                "zip", "application/zip", "apk", "application/vnd.android.package-archive"
+        };
+        for (int i = 0; i < types.length; i += 2)
+            MIME_TYPES.put(types[i], types[i + 1]);
+    }
+
+    private final FileManager mFileMang;
+    private final String mRoot;
+    //the canonical root with a trailing slash, set by start
+    private String mCanonicalRoot;
+    private final int mMaxConnections;
+    //by client address, guarded by itself
+    private final HashMap<String, ClientStats> mStats = new HashMap<String, ClientStats>();
+    //connections whose listing job is done, to be written by the server thread
+    private final ConcurrentLinkedQueue<Connection> mReady = new ConcurrentLinkedQueue<Connection>();
+    private final ArrayList<Connection> mConnections = new ArrayList<Connection>();
+
+    private Selector mSelector;
+    private ServerSocketChannel mServer;
+    private Thread mThread;
+    private volatile boolean mRunning;
+    private long mLastTick;
+
+    /**
+     * What one client, by address, got from the server.
+     */
+    public static class ClientStats {
+        private final String mAddress;
+        private volatile long mBytes;
+        private volatile int mRequests;
+        private volatile int mConnections;
+        private volatile long mLastSeen;
+        private volatile long mRate;
+        private long mTickBytes;
+
+        ClientStats(String address) {
+            mAddress = address;
+        }
+
+        public String getAddress() {
+            return mAddress;
+        }
+
+        /**
+         * @return the bytes sent to the client, headers included
+         */
+        public long getBytesSent() {
+            return mBytes;
+        }
+
+        public int getRequests() {
+            return mRequests;
+        }
+
+        /**
+         * @return the number of connections the client has open now
+         */
+        public int getConnections() {
+            return mConnections;
+        }
+
+        /**
+         * @return the time of the last request or sent byte, in milliseconds since the epoch
+         */
+        public long getLastSeen() {
+            return mLastSeen;
+        }
+
+        /**
+         * @return the bytes per second sent to the client lately, averaged over a few seconds
+         */
+        public long getRate() {
+            return mRate;
+        }
+    }
+
+    /*
+     * one client connection, used by the server thread, and by a listing job while
+     * it is busy
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final ClientStats stats;
+        final ByteBuffer in = ByteBuffer.allocate(HEADER_LIMIT);
+        SelectionKey key;
+        ByteBuffer out;
+        RandomAccessFile file;
+        long position;
+        long remaining;
+        boolean keepAlive;
+        long lastActive;
+
+        Connection(SocketChannel channel, ClientStats stats) {
+            this.channel = channel;
+            this.stats = stats;
+        }
+    }
+
+    /**
+     * @param manager        lists the directories, with its hidden file setting
+     * @param root           the full path of the directory to share
+     * @param maxConnections the number of connections served at the same time
+     */
+    public ShareServer(FileManager manager, String root, int maxConnections) {
+        mFileMang = manager;
+        mRoot = root.length() > 1 && root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+        mMaxConnections = Math.max(1, maxConnections);
+    }
+
+    /**
+     * Starts serving on its own thread.
+     *
+     * @param port the TCP port, 0 for any free port, see {@link #getPort()}
+     * @throws IOException if the port can't be opened
+     */
+    public synchronized void start(int port) throws IOException {
+        if (mRunning)
+            return;
+
+        String canonical = new File(mRoot).getCanonicalPath();
+        mCanonicalRoot = canonical.endsWith("/") ? canonical : canonical + "/";
+
+        mSelector = Selector.open();
+        mServer = ServerSocketChannel.open();
+        mServer.socket().setReuseAddress(true);
+        mServer.socket().bind(new InetSocketAddress(port));
+        mServer.configureBlocking(false);
+        mServer.register(mSelector, SelectionKey.OP_ACCEPT);
+
+        mRunning = true;
+        mThread = new Thread(new Runnable() {
+            public void run() {
+                serve();
+            }
+        }, "share-server");
+        mThread.start();
+    }
+
+    /**
+     * Closes every connection and the port, and waits for the server thread to end.
+     */
+    public void stop() {
+        Thread thread;
+
+        synchronized (this) {
+            if (!mRunning)
+                return;
+
+            mRunning = false;
+            thread = mThread;
+            mSelector.wakeup();
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * @return the port the server listens on, -1 if it is not running
+     */
+    public synchronized int getPort() {
+        return mRunning ? mServer.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * @param host the address of this device, such as from
+     *             {@link FileManager#integerToIPAddress(int)}
+     * @return the address other devices open in a browser
+     */
+    public String getUrl(String host) {
+        return "http://" + host + ":" + getPort() + "/";
+    }
+
+    /**
+     * @return the statistics of every client that connected since the start
+     */
+    public List<ClientStats> getClientStats() {
+        synchronized (mStats) {
+            return new ArrayList<ClientStats>(mStats.values());
+        }
+    }
+
+    private void serve() {
+        try {
+            while (mRunning) {
+                mSelector.select(TICK);
+
+                Connection ready;
+                while ((ready = mReady.poll()) != null) {
+                    if (ready.key.isValid())
+                        ready.key.interestOps(SelectionKey.OP_WRITE);
+                }
+
+                Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable())
+                            read(connection);
+                        else if (key.isWritable())
+                            write(connection);
+
+                    } catch (IOException e) {
+                        close(connection);
+                    }
+                }
+                tick();
+            }
+
+        } catch (IOException e) {
+            Logger.e("ShareServer", e.getMessage());
+
+        } finally {
+            for (Connection connection : new ArrayList<Connection>(mConnections))
+                close(connection);
+            try {
+                mServer.close();
+                mSelector.close();
+            } catch (IOException e) {
+                //closing anyway
+            }
+            mRunning = false;
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = mServer.accept();
+        if (channel == null)
+            return;
+
+        channel.configureBlocking(false);
+
+        if (mConnections.size() >= mMaxConnections) {
+            SHARE_REJECTED.increment();
+            //a few bytes fit in the empty socket buffer
+            channel.write(ByteBuffer.wrap(header(503, "Service Unavailable", "text/plain", 0, null, false)));
+            channel.close();
+            return;
+        }
+
+        String address = channel.socket().getInetAddress().getHostAddress();
+        ClientStats stats;
+
+        synchronized (mStats) {
+            stats = mStats.get(address);
+            if (stats == null) {
+                stats = new ClientStats(address);
+                mStats.put(address, stats);
+            }
+        }
+
+        Connection connection = new Connection(channel, stats);
+        connection.key = channel.register(mSelector, SelectionKey.OP_READ, connection);
+        connection.lastActive = System.currentTimeMillis();
+        stats.mConnections++;
+        stats.mLastSeen = connection.lastActive;
+        mConnections.add(connection);
+    }
+
+    private void read(Connection c) throws IOException {
+        if (c.channel.read(c.in) < 0) {
+            close(c);
+            return;
+        }
+        c.lastActive = System.currentTimeMillis();
+
+        int end = header_end(c.in);
+        if (end < 0) {
+            if (!c.in.hasRemaining())
+                respond(c, 431, "Request Header Fields Too Large", false);
+            return;
+        }
+
+        String request = new String(c.in.array(), 0, end, "ISO-8859-1");
+        //no pipelining, what follows the header is dropped
+        c.in.clear();
+        c.key.interestOps(0);
+
+        SHARE_REQUESTS.increment();
+        c.stats.mRequests++;
+        c.stats.mLastSeen = c.lastActive;
+
+        handle(c, request);
+    }
+
+    private void handle(final Connection c, String request) throws IOException {
+        String[] lines = request.split("\r\n");
+        String[] first = lines[0].split(" ");
+
+        if (first.length != 3) {
+            respond(c, 400, "Bad Request", false);
+            return;
+        }
+
+        String method = first[0];
+        String range = null;
+        boolean close = first[2].equals("HTTP/1.0");
+
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon < 0)
+                continue;
+
+            String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.US);
+            String value = lines[i].substring(colon + 1).trim();
+
+            if (name.equals("range"))
+                range = value;
+            else if (name.equals("connection"))
+                close = value.equalsIgnoreCase("close");
+        }
+
+        c.keepAlive = !close;
+        final boolean head = method.equals("HEAD");
+
+        if (!head && !method.equals("GET")) {
+            respond(c, 405, "Method Not Allowed", c.keepAlive);
+            return;
+        }
+
+        String target = first[1];
+        int query = target.indexOf('?');
+        final String path = decode_path(query >= 0 ? target.substring(0, query) : target);
+
+        if (path == null) {
+            respond(c, 400, "Bad Request", c.keepAlive);
+            return;
+        }
+
+        final String full = path.equals("/") ? mRoot : mRoot.equals("/") ? path : mRoot + path;
+        FileSystem fs = mFileMang.getFileSystem();
+        FileStat stat = may_serve(path, full) ? fs.stat(full) : null;
+
+        if (stat == null) {
+            respond(c, 404, "Not Found", c.keepAlive);
+
+        } else if (!fs.canRead(full)) {
+            respond(c, 403, "Forbidden", c.keepAlive);
+
+        } else if (stat.isDirectory()) {
+            mFileMang.getScheduler().submit(new JobScheduler.Job("Share " + full,
+                    JobScheduler.LANE_BACKGROUND, full) {
+                @Override
+                protected void run() {
+                    byte[] json = null;
+
+                    try {
+                        json = listing_json(path, full);
+                    } finally {
+                        //the connection is answered whatever happened
+                        byte[] header = json == null ?
+                                header(500, "Internal Server Error", "text/plain", 0, null, c.keepAlive) :
+                                header(200, "OK", "application/json; charset=utf-8", json.length, null, c.keepAlive);
+
+                        ByteBuffer out = ByteBuffer.allocate(header.length + (json == null || head ? 0 : json.length));
+                        out.put(header);
+                        if (json != null && !head)
+                            out.put(json);
+                        out.flip();
+
+                        c.out = out;
+                        mReady.add(c);
+                        mSelector.wakeup();
+                    }
+                }
+            });
+
+        } else {
+            send_file(c, full, stat.getSize(), range, head);
+        }
+    }
+
+    /*
+     * a path is served if it has no hidden segment, unless hidden files are shown,
+     * and it resolves inside the root, so a link can't lead out of it
+     */
+    private boolean may_serve(String path, String full) {
+        if (!mFileMang.getShowHiddenFiles() && path.indexOf("/.") >= 0)
+            return false;
+
+        try {
+            String canonical = new File(full).getCanonicalPath();
+
+            return (canonical + "/").startsWith(mCanonicalRoot);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void send_file(Connection c, String path, long length, String range, boolean head)
+            throws IOException {
+        long first = 0;
+        long last = length - 1;
+        String contentRange = null;
+
+        if (range != null && range.startsWith("bytes=") && range.indexOf(',') < 0) {
+            String spec = range.substring(6).trim();
+            int dash = spec.indexOf('-');
+
+            try {
+                if (dash == 0) {
+                    //the last n bytes
+                    first = Math.max(0, length - Long.parseLong(spec.substring(1)));
+                } else if (dash > 0) {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    if (dash < spec.length() - 1)
+                        last = Math.min(last, Long.parseLong(spec.substring(dash + 1)));
+                }
+            } catch (NumberFormatException e) {
+                dash = -1;
+            }
+
+            if (dash < 0 || first > last || first >= length) {
+                c.out = ByteBuffer.wrap(header(416, "Range Not Satisfiable", "text/plain", 0,
+                        "bytes */" + length, c.keepAlive));
+                c.key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            contentRange = "bytes " + first + "-" + last + "/" + length;
+        }
+
+        RandomAccessFile file;
+        try {
+            file = new RandomAccessFile(path, "r");
+        } catch (IOException e) {
+            respond(c, 403, "Forbidden", c.keepAlive);
+            return;
+        }
+
+        long count = length == 0 ? 0 : last - first + 1;
+        String name = path.substring(path.lastIndexOf('/') + 1);
+
+        c.out = ByteBuffer.wrap(header(contentRange != null ? 206 : 200,
+                contentRange != null ? "Partial Content" : "OK", mime_type(name), count, contentRange, c.keepAlive));
+        c.file = file;
+        c.position = first;
+        c.remaining = head ? 0 : count;
+        c.key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private void write(Connection c) throws IOException {
+        long sent = 0;
+
+        if (c.out != null && c.out.hasRemaining()) {
+            sent += c.channel.write(c.out);
+            if (c.out.hasRemaining()) {
+                sent(c, sent);
+                return;
+            }
+        }
+
+        if (c.remaining > 0) {
+            FileChannel source = c.file.getChannel();
+            long moved = source.transferTo(c.position, Math.min(c.remaining, CHUNK), c.channel);
+
+            c.position += moved;
+            c.remaining -= moved;
+            sent += moved;
+
+            //the file got shorter while it was sent, the response can't be completed
+            if (moved == 0 && c.position >= source.size()) {
+                sent(c, sent);
+                close(c);
+                return;
+            }
+        }
+        sent(c, sent);
+
+        if (c.remaining > 0)
+            return;
+
+        if (c.file != null) {
+            c.file.close();
+            c.file = null;
+        }
+        c.out = null;
+
+        if (c.keepAlive)
+            c.key.interestOps(SelectionKey.OP_READ);
+        else
+            close(c);
+    }
+
+    private void sent(Connection c, long bytes) {
+        if (bytes <= 0)
+            return;
+
+        c.lastActive = System.currentTimeMillis();
+        c.stats.mBytes += bytes;
+        c.stats.mTickBytes += bytes;
+        c.stats.mLastSeen = c.lastActive;
+        SHARE_BYTES.add(bytes);
+    }
+
+    private void respond(Connection c, int status, String reason, boolean keepAlive) {
+        c.keepAlive = keepAlive;
+        c.out = ByteBuffer.wrap(header(status, reason, "text/plain", 0, null, keepAlive));
+        c.key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private void close(Connection c) {
+        if (!mConnections.remove(c))
+            return;
+
+        c.stats.mConnections--;
+        c.key.cancel();
+        try {
+            c.channel.close();
+            if (c.file != null)
+                c.file.close();
+        } catch (IOException e) {
+            //closed anyway
+        }
+    }
+
+    /*
+     * closes idle connections and updates the rates, about once a second
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - mLastTick;
+
+        if (elapsed < TICK)
+            return;
+
+        for (Connection c : new ArrayList<Connection>(mConnections)) {
+            //a connection waiting for its listing job is not idle
+            boolean waiting = c.key.isValid() && c.key.interestOps() == 0;
+
+            if (!waiting && now - c.lastActive > IDLE_TIMEOUT)
+                close(c);
+        }
+
+        synchronized (mStats) {
+            for (ClientStats stats : mStats.values()) {
+                long rate = mLastTick == 0 ? 0 : stats.mTickBytes * 1000 / elapsed;
+
+                stats.mRate = (stats.mRate + rate) / 2;
+                stats.mTickBytes = 0;
+            }
+        }
+        mLastTick = now;
+    }
+
+    /*
+     * the listing of a directory as {"path":..,"entries":[{"name":..,"directory":..,"size":..,"modified":..}]}
+     */
+    private byte[] listing_json(String path, String full) {
+        FileListing listing = mFileMang.listDirectory(full, Integer.MAX_VALUE, new FileManager.ListingListener() {
+            public boolean onPage(FileListing page, int remaining) {
+                return true;
+            }
+        });
+        StringBuilder json = new StringBuilder(64 + listing.size() * 80);
+
+        json.append("{\"path\":");
+        quote(json, path);
+        json.append(",\"entries\":[");
+
+        int written = 0;
+        for (int i = 0; i < listing.size(); i++) {
+            boolean dir = listing.isDirectory(i);
+            if (!dir && !listing.isFile(i))
+                continue;
+
+            if (written++ > 0)
+                json.append(',');
+            json.append("{\"name\":");
+            quote(json, listing.getName(i));
+            json.append(",\"directory\":").append(dir);
+            json.append(",\"size\":").append(listing.getSize(i));
+            json.append(",\"modified\":").append(listing.getLastModified(i));
+            json.append('}');
+        }
+        json.append("]}");
+
+        try {
+            return json.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return json.toString().getBytes();
+        }
+    }
+
+    private static void quote(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (c == '"' || c == '\\')
+                json.append('\\').append(c);
+            else if (c < 0x20)
+                json.append(String.format("\\u%04x", (int) c));
+            else
+                json.append(c);
+        }
+        json.append('"');
+    }
+
+    private static byte[] header(int status, String reason, String type, long length,
+                                 String contentRange, boolean keepAlive) {
+        StringBuilder header = new StringBuilder(192);
+
+        header.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+        header.append("Content-Type: ").append(type).append("\r\n");
+        header.append("Content-Length: ").append(length).append("\r\n");
+        header.append("Accept-Ranges: bytes\r\n");
+        if (contentRange != null)
+            header.append("Content-Range: ").append(contentRange).append("\r\n");
+        header.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+
+        try {
+            return header.toString().getBytes("ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            return header.toString().getBytes();
+        }
+    }
+
+    private static String mime_type(String name) {
+        int dot = name.lastIndexOf('.');
+        String type = dot < 0 ? null : MIME_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.US));
+
+        return type != null ? type : "application/octet-stream";
+    }
+
+    /*
+     * the offset of the first byte after the blank line that ends the header, -1 if it is not complete
+     */
+    private static int header_end(ByteBuffer in) {
+        byte[] data = in.array();
+
+        for (int i = 3; i < in.position(); i++) {
+            if (data[i] == '\n' && data[i - 1] == '\r' && data[i - 2] == '\n' && data[i - 3] == '\r')
+                return i + 1;
+        }
+        return -1;
+    }
+
+    /*
+     * decodes the %XX escapes of a path as UTF-8, null if it is malformed or
+     * tries to leave the shared tree
+     */
+    private static String decode_path(String raw) {
+        if (!raw.startsWith("/"))
+            return null;
+
+        byte[] bytes = new byte[raw.length()];
+        int len = 0;
+
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+
+            if (c == '%') {
+                if (i + 2 >= raw.length())
+                    return null;
+                try {
+                    bytes[len++] = (byte) Integer.parseInt(raw.substring(i + 1, i + 3), 16);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                i += 2;
+            } else if (c < 0x80) {
+                bytes[len++] = (byte) c;
+            } else {
+                return null;
+            }
+        }
+
+        String path;
+        try {
+            path = new String(bytes, 0, len, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+
+        for (String segment : path.split("/")) {
+            if (segment.equals("..") || segment.equals(".") || segment.indexOf('\0') >= 0)
+                return null;
+        }
+
+        //no trailing slash, except for the root itself
+        while (path.length() > 1 && path.endsWith("/"))
+            path = path.substring(0, path.length() - 1);
+        return path.replace("//", "/");
+    }
+}
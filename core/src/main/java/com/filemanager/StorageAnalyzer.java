@@ -0,0 +1,234 @@
+package com.filemanager;
+
+import com.filemanager.entity.StorageNode;
+import com.filemanager.entity.StorageReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds out what is using the space of a directory tree in one walk. Every
+ * directory is listed once, by a pool of threads, and the size, time and type
+ * of every file is kept in a {@link StorageNode} tree. The breakdowns by kind,
+ * age, size and folder of the {@link StorageReport} are then summed up in memory.
+ * <br>
+ * <br>
+ * A refresh takes the previous report and does not list again the directories
+ * whose modification time did not change, only their sub directories are
+ * checked. Like the listing cache, a directory listed within 2 seconds of its
+ * last change is always listed again. Note that a file written in place does
+ * not change the time of its directory, so its new size is only seen once the
+ * directory itself changes.
+ * <br>
+ * <br>
+ * Like FileManager, this class has no reference to any GUI activity. The scan
+ * blocks the calling thread until it is done.
+ */
+public class StorageAnalyzer {
+    private static final long MTIME_RESOLUTION = 2000;
+    private static final long[] NO_LONGS = new long[0];
+    private static final byte[] NO_BYTES = new byte[0];
+    private static final StorageNode[] NO_NODES = new StorageNode[0];
+
+    private final int mThreads;
+    private final FileClassifier mClassifier = new FileClassifier();
+    private final AtomicInteger mListed = new AtomicInteger();
+    private final AtomicInteger mReused = new AtomicInteger();
+
+    /**
+     * @param threads the number of directories listed at the same time
+     */
+    public StorageAnalyzer(int threads) {
+        mThreads = Math.max(1, threads);
+    }
+
+    /**
+     * Scans a directory tree. Symbolic links to directories are not followed,
+     * links to files are counted like the files they point to, as getDirSize does.
+     *
+     * @param path     the full path of the directory to analyse
+     * @param previous the last report of the same directory, to refresh it, or null
+     * @param token    stops the scan once cancelled
+     * @return the report, null if the path is not a readable directory or the scan was cancelled
+     */
+    public StorageReport scan(String path, StorageReport previous, CancelToken token) {
+        File root = new File(path);
+        if (!root.isDirectory() || !root.canRead())
+            return null;
+
+        mListed.set(0);
+        mReused.set(0);
+
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+        Scan scan = new Scan(pool, token);
+        StorageNode[] result = new StorageNode[1];
+        StorageNode last = previous != null && previous.getRoot().getName().equals(path) ?
+                previous.getRoot() : null;
+
+        try {
+            scan.submit(root, path, last, result, 0);
+            scan.await();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (token.isCancelled() || result[0] == null)
+            return null;
+
+        return new StorageReport(result[0], System.currentTimeMillis());
+    }
+
+    /**
+     * @return the number of directories the last scan had to list
+     */
+    public int getDirectoriesListed() {
+        return mListed.get();
+    }
+
+    /**
+     * @return the number of directories the last scan took from the previous report
+     */
+    public int getDirectoriesReused() {
+        return mReused.get();
+    }
+
+    /*
+     * keeps track of the directories still to be scanned, so the caller can wait for the last one
+     */
+    private class Scan {
+        private final ExecutorService mPool;
+        private final CancelToken mToken;
+        private final AtomicInteger mPending = new AtomicInteger();
+
+        Scan(ExecutorService pool, CancelToken token) {
+            mPool = pool;
+            mToken = token;
+        }
+
+        void submit(final File dir, final String name, final StorageNode previous,
+                    final StorageNode[] slots, final int index) {
+            mPending.incrementAndGet();
+            mPool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (!mToken.isCancelled())
+                            slots[index] = scan_dir(dir, name, previous, Scan.this);
+                    } finally {
+                        if (mPending.decrementAndGet() == 0) {
+                            synchronized (Scan.this) {
+                                Scan.this.notifyAll();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        synchronized void await() {
+            try {
+                while (mPending.get() > 0)
+                    wait();
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                mToken.cancel();
+            }
+        }
+    }
+
+    /*
+     * builds the node of one directory and hands its sub directories to the pool
+     */
+    private StorageNode scan_dir(File dir, String name, StorageNode previous, Scan scan) {
+        long modified = dir.lastModified();
+
+        if (previous != null && modified != 0 && previous.getModified() == modified &&
+                previous.getScannedAt() - modified >= MTIME_RESOLUTION) {
+            List<StorageNode> known = previous.getChildren();
+            StorageNode[] children = new StorageNode[known.size()];
+            StorageNode node = new StorageNode(name, modified, previous.getScannedAt(),
+                    previous.getFileSizes(), previous.getFileTimes(), previous.getFileTypes(), children);
+
+            mReused.incrementAndGet();
+            for (int i = 0; i < children.length; i++) {
+                StorageNode child = known.get(i);
+                scan.submit(new File(dir, child.getName()), child.getName(), child, children, i);
+            }
+            return node;
+        }
+
+        long scannedAt = System.currentTimeMillis();
+        String[] names = dir.list();
+
+        mListed.incrementAndGet();
+        if (names == null)
+            return new StorageNode(name, 0, scannedAt, NO_LONGS, NO_LONGS, NO_BYTES, NO_NODES);
+
+        long[] sizes = new long[names.length];
+        long[] times = new long[names.length];
+        byte[] types = new byte[names.length];
+        ArrayList<String> dirs = new ArrayList<String>();
+        int files = 0;
+
+        for (String entry : names) {
+            File file = new File(dir, entry);
+
+            if (file.isFile()) {
+                sizes[files] = file.length();
+                times[files] = file.lastModified();
+                types[files] = (byte) mClassifier.classify(null, entry, false);
+                files++;
+
+            } else if (file.isDirectory()) {
+                try {
+                    if (!FileManager.isSymlink(file))
+                        dirs.add(entry);
+                } catch (IOException e) {
+                    //unresolvable link, not part of the tree
+                }
+            }
+        }
+
+        StorageNode[] children = new StorageNode[dirs.size()];
+        StorageNode node = new StorageNode(name, modified, scannedAt, trim(sizes, files),
+                trim(times, files), trim(types, files), children);
+        HashMap<String, StorageNode> known = new HashMap<String, StorageNode>();
+
+        if (previous != null) {
+            for (StorageNode child : previous.getChildren())
+                known.put(child.getName(), child);
+        }
+
+        for (int i = 0; i < children.length; i++) {
+            String child = dirs.get(i);
+            scan.submit(new File(dir, child), child, known.get(child), children, i);
+        }
+        return node;
+    }
+
+    private static long[] trim(long[] values, int length) {
+        if (values.length == length)
+            return values;
+
+        long[] trimmed = new long[length];
+        System.arraycopy(values, 0, trimmed, 0, length);
+
+        return trimmed;
+    }
+
+    private static byte[] trim(byte[] values, int length) {
+        if (values.length == length)
+            return values;
+
+        byte[] trimmed = new byte[length];
+        System.arraycopy(values, 0, trimmed, 0, length);
+
+        return trimmed;
+    }
+}
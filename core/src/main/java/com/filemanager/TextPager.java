@@ -0,0 +1,352 @@
+package com.filemanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads pages of lines from text files of any size, such as logs of several
+ * gigabytes, with a memory use that does not grow with the file. The file is
+ * mapped one window at a time with FileChannel.map, and only the window that
+ * holds the lines asked for is mapped.
+ * <br>
+ * <br>
+ * To find a line by its number, {@link #index(CancelToken)} reads the file once
+ * and keeps the offset of every {@link #getStride()}th line. Once a line is
+ * indexed, reading it costs at most a stride of lines. When the index gets
+ * too long, every other offset is dropped and the stride doubles, so the index
+ * stays under 512 KB. The last lines and the lines appended to a growing file
+ * are found from the end and need no index.
+ * <br>
+ * <br>
+ * Lines end with \n, a \r before it is dropped, and are decoded as UTF-8. A
+ * line longer than 64 KB is cut. Like FileManager, this class has no reference
+ * to any GUI activity. The reading methods may be called while the index is
+ * built on another thread.
+ */
+public class TextPager {
+    private static final int WINDOW = 1024 * 1024;
+    private static final int INDEX_WINDOW = 8 * 1024 * 1024;
+    private static final int MAX_LINE = 64 * 1024;
+    private static final int MAX_CHECKPOINTS = 64 * 1024;
+    private static final int FIRST_STRIDE = 256;
+
+    private final File mFile;
+    private final RandomAccessFile mAccess;
+    private final FileChannel mChannel;
+
+    //the window the reading methods use
+    private MappedByteBuffer mWindow;
+    private long mWindowStart;
+    private final byte[] mLine = new byte[MAX_LINE];
+
+    //offsets of the lines 0, stride, 2 * stride... guarded by this
+    private long[] mCheckpoints = new long[64];
+    private int mCheckpointCount = 1;
+    private int mStride = FIRST_STRIDE;
+    //lines ended by a \n so far, the offset after the last of them, and the
+    //length of the file when the index last reached its end
+    private long mIndexedLines;
+    private long mIndexedTo;
+    private long mIndexedEnd;
+
+    private long mFollowed = -1;
+
+    public TextPager(File file) throws IOException {
+        mFile = file;
+        mAccess = new RandomAccessFile(file, "r");
+        mChannel = mAccess.getChannel();
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public long length() throws IOException {
+        return mChannel.size();
+    }
+
+    /**
+     * @return the number of lines between two offsets of the index
+     */
+    public synchronized int getStride() {
+        return mStride;
+    }
+
+    /**
+     * @return the number of lines indexed so far, all of them once the index is complete
+     */
+    public synchronized long getLineCount() {
+        //a last line without \n counts once the index reached the end
+        return mIndexedLines + (mIndexedEnd > mIndexedTo ? 1 : 0);
+    }
+
+    /**
+     * @return true if the index covers the file as it is now
+     */
+    public synchronized boolean isIndexed() throws IOException {
+        return mIndexedEnd == length();
+    }
+
+    /**
+     * Runs {@link #index(CancelToken)} in the background lane of a scheduler.
+     *
+     * @param scheduler the scheduler to run on
+     * @return the queued job
+     */
+    public JobScheduler.Job startIndexing(JobScheduler scheduler) {
+        return scheduler.submit(new JobScheduler.Job("Index " + mFile.getName(),
+                JobScheduler.LANE_BACKGROUND, mFile.getPath()) {
+            @Override
+            protected void run() throws IOException {
+                index(getToken());
+            }
+        });
+    }
+
+    /**
+     * Indexes the lines up to the current end of the file, continuing where the
+     * last call stopped. A file that became shorter is indexed again from the start.
+     *
+     * @param token stops the indexing once cancelled, what was indexed is kept
+     * @return true if the index reached the end
+     */
+    public boolean index(CancelToken token) throws IOException {
+        long length = length();
+        long position;
+        long lines;
+
+        synchronized (this) {
+            if (length < mIndexedTo)
+                reset_index();
+
+            position = mIndexedTo;
+            lines = mIndexedLines;
+        }
+
+        while (position < length) {
+            if (token != null && token.isCancelled())
+                return false;
+
+            long size = Math.min(INDEX_WINDOW, length - position);
+            MappedByteBuffer window = mChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            long end = position;
+
+            for (int i = 0; i < size; i++) {
+                if (window.get(i) == '\n') {
+                    lines++;
+                    end = position + i + 1;
+
+                    if (lines % FIRST_STRIDE == 0)
+                        checkpoint(lines, end);
+                }
+            }
+
+            synchronized (this) {
+                mIndexedLines = lines;
+                mIndexedTo = end;
+            }
+            position += size;
+        }
+
+        synchronized (this) {
+            mIndexedEnd = length;
+        }
+        return true;
+    }
+
+    /**
+     * Reads lines by number. Lines past the index are found by reading on from
+     * the last indexed line, which is slow until the index gets there.
+     *
+     * @param first the number of the first line, from 0
+     * @param count the number of lines to read
+     * @return the lines, fewer at the end of the file
+     */
+    public synchronized List<String> getLines(long first, int count) throws IOException {
+        int checkpoint = (int) Math.min(first / mStride, mCheckpointCount - 1);
+        long line = (long) checkpoint * mStride;
+        long position = mCheckpoints[checkpoint];
+        long length = length();
+
+        while (line < first && position < length) {
+            position = next_line(position, length);
+            line++;
+        }
+        return read_lines(position, length, count);
+    }
+
+    /**
+     * Reads the lines at the end of the file, without the index.
+     *
+     * @param count the number of lines to read
+     * @return the last lines, fewer if the file has fewer
+     */
+    public synchronized List<String> getLastLines(int count) throws IOException {
+        long length = length();
+        long start = length;
+        long limit = Math.max(0, length - (long) count * MAX_LINE);
+        int found = 0;
+
+        //a \n at the very end ends the last line, it does not start a new one
+        if (start > 0 && byte_at(start - 1) == '\n')
+            start--;
+
+        while (start > limit && found < count) {
+            if (byte_at(start - 1) == '\n')
+                found++;
+            if (found < count)
+                start--;
+        }
+        return read_lines(start, length, count);
+    }
+
+    /**
+     * Returns the lines appended to the file since the last call, as tail -f
+     * does. The first call only remembers where the last line of the file
+     * starts, so a line that is not finished yet is returned whole once its \n
+     * is written. If the file became shorter, as when a log is rotated, it is
+     * followed again from the start.
+     *
+     * @param max the most lines to return, the others are returned by the next call
+     * @return the new lines, empty if there are none
+     */
+    public synchronized List<String> follow(int max) throws IOException {
+        long length = length();
+
+        if (mFollowed < 0) {
+            mFollowed = last_line_start(length);
+            return new ArrayList<String>();
+        }
+        if (length < mFollowed)
+            mFollowed = 0;
+
+        //only complete lines
+        long end = length;
+        while (end > mFollowed && byte_at(end - 1) != '\n')
+            end--;
+
+        ArrayList<String> lines = new ArrayList<String>();
+        while (mFollowed < end && lines.size() < max) {
+            long next = next_line(mFollowed, end);
+            lines.add(decode(mFollowed, next));
+            mFollowed = next;
+        }
+        return lines;
+    }
+
+    public synchronized void close() throws IOException {
+        mWindow = null;
+        mAccess.close();
+    }
+
+    /*
+     * the offset after the last \n, looking back at most MAX_LINE bytes, the
+     * end of the file if a longer line is being written
+     */
+    private long last_line_start(long length) throws IOException {
+        long limit = Math.max(0, length - MAX_LINE);
+        long start = length;
+
+        while (start > limit && byte_at(start - 1) != '\n')
+            start--;
+        return start > 0 && byte_at(start - 1) != '\n' ? length : start;
+    }
+
+    private List<String> read_lines(long position, long length, int count) throws IOException {
+        ArrayList<String> lines = new ArrayList<String>(Math.min(count, 1024));
+
+        while (lines.size() < count && position < length) {
+            long next = next_line(position, length);
+            lines.add(decode(position, next));
+            position = next;
+        }
+        return lines;
+    }
+
+    /*
+     * the offset after the \n that ends the line at position, or the end
+     */
+    private long next_line(long position, long length) throws IOException {
+        while (position < length) {
+            if (byte_at(position++) == '\n')
+                break;
+        }
+        return position;
+    }
+
+    /*
+     * the line from start to end, without its \r\n and cut at MAX_LINE
+     */
+    private String decode(long start, long end) throws IOException {
+        if (end > start && byte_at(end - 1) == '\n')
+            end--;
+        if (end > start && byte_at(end - 1) == '\r')
+            end--;
+
+        int len = (int) Math.min(end - start, MAX_LINE);
+        for (int i = 0; i < len; i++)
+            mLine[i] = byte_at(start + i);
+
+        try {
+            return new String(mLine, 0, len, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return new String(mLine, 0, len);
+        }
+    }
+
+    private byte byte_at(long position) throws IOException {
+        if (mWindow == null || position < mWindowStart || position >= mWindowStart + mWindow.capacity()) {
+            //the window starts a little before the position, as pages are read backwards too
+            long start = Math.max(0, position - WINDOW / 4);
+            long size = Math.min(WINDOW, length() - start);
+
+            if (size <= 0 || position >= start + size)
+                throw new IOException("offset " + position + " is past the end of " + mFile);
+
+            mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            mWindowStart = start;
+        }
+        return mWindow.get((int) (position - mWindowStart));
+    }
+
+    /*
+     * records the start of a line that is a multiple of FIRST_STRIDE
+     */
+    private synchronized void checkpoint(long line, long offset) {
+        if (line % mStride != 0)
+            return;
+
+        if (mCheckpointCount == MAX_CHECKPOINTS) {
+            //every other line is dropped, the stride doubles
+            for (int i = 0; i < mCheckpointCount / 2; i++)
+                mCheckpoints[i] = mCheckpoints[i * 2];
+            mCheckpointCount = (mCheckpointCount + 1) / 2;
+            mStride *= 2;
+
+            if (line % mStride != 0)
+                return;
+        }
+
+        if (mCheckpointCount == mCheckpoints.length) {
+            long[] grown = new long[Math.min(MAX_CHECKPOINTS, mCheckpoints.length * 2)];
+            System.arraycopy(mCheckpoints, 0, grown, 0, mCheckpointCount);
+            mCheckpoints = grown;
+        }
+        mCheckpoints[mCheckpointCount++] = offset;
+    }
+
+    private void reset_index() {
+        mCheckpoints = new long[64];
+        mCheckpointCount = 1;
+        mStride = FIRST_STRIDE;
+        mIndexedLines = 0;
+        mIndexedTo = 0;
+        mIndexedEnd = 0;
+    }
+}
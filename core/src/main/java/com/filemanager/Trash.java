@@ -0,0 +1,465 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileStat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deletes files and folders in two steps. The delete itself only renames each
+ * path into the trash directory of its volume, which takes the same short time
+ * for one file or a folder of 100 000. A job in the bulk lane of the
+ * {@link JobScheduler} then purges the trash with a pool of low priority
+ * threads, each removing a directory at a time. The job is only queued once
+ * the grace period has passed, see {@link #setGracePeriod(long)}, or when the
+ * next delete is made or the deletion is committed. Until the purge starts, the
+ * delete can be undone by renaming everything back.
+ * <br>
+ * <br>
+ * The trash of a volume is the directory {@link #DIRECTORY} in its root, see
+ * {@link JobScheduler#volumeOf(String)}. A path that can't be renamed into it,
+ * because it is on another file system or the trash can't be created, is
+ * purged where it is. Whatever could not be removed is reported by the path it
+ * had before the delete; it stays in the trash until {@link #purge(String)}.
+ * <br>
+ * <br>
+ * Like FileManager, this class has no reference to any GUI activity.
+ */
+public class Trash {
+    public static final String DIRECTORY = ".trash";
+    public static final long GRACE_PERIOD = 10000;
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final FileSystem mFileSystem;
+    private final JobScheduler mScheduler;
+    private final int mThreads;
+    //entries of deletions that can still be undone, not purged by purge(String)
+    private final HashSet<String> mPending = new HashSet<String>();
+    private long mGracePeriod = GRACE_PERIOD;
+    //the last deletion whose purge is not queued yet, guarded by this
+    private Deletion mWaiting;
+    private Timer mTimer;
+
+    /**
+     * One call to {@link Trash#delete(List)}: what was moved where, and what failed.
+     */
+    public class Deletion {
+        //trash entries by the path they had, in-place entries map to themselves
+        private final LinkedHashMap<String, String> mEntries = new LinkedHashMap<String, String>();
+        private final ArrayList<String> mFailed = new ArrayList<String>();
+        private JobScheduler.Job mPurge;
+        private TimerTask mGrace;
+        private boolean mQueued;
+        private boolean mPurging;
+        private boolean mUndone;
+
+        /**
+         * @return the full paths that were deleted, or are being purged
+         */
+        public synchronized List<String> getDeleted() {
+            return new ArrayList<String>(mEntries.keySet());
+        }
+
+        /**
+         * @return the full paths, at the time of the delete, of what could not be
+         *         removed. The list is complete once the purge job is done.
+         */
+        public synchronized List<String> getFailed() {
+            return new ArrayList<String>(mFailed);
+        }
+
+        /**
+         * @return the job that purges the trash, null if nothing was deleted. It
+         *         is only queued once the deletion is committed, and ends as
+         *         cancelled if the deletion is undone first.
+         */
+        public JobScheduler.Job getPurge() {
+            return mPurge;
+        }
+
+        /**
+         * Queues the purge right away, without waiting for the grace period.
+         * The deletion can't be undone once the purge has started.
+         */
+        public void commit() {
+            queue(this);
+        }
+
+        /**
+         * Puts everything back where it was, if the purge has not started yet.
+         *
+         * @return the full paths that could not be put back, null if it is too late
+         */
+        public List<String> undo() {
+            synchronized (this) {
+                if (mPurging)
+                    return null;
+                mUndone = true;
+
+                if (mGrace != null)
+                    mGrace.cancel();
+            }
+
+            if (mPurge != null)
+                mPurge.cancel();
+
+            ArrayList<String> failed = new ArrayList<String>();
+            for (Map.Entry<String, String> entry : mEntries.entrySet()) {
+                String original = entry.getKey();
+                String moved = entry.getValue();
+
+                if (!moved.equals(original) && !mFileSystem.rename(moved, original))
+                    failed.add(original);
+            }
+            release(this);
+
+            return failed;
+        }
+
+        private synchronized boolean start() {
+            if (mUndone)
+                return false;
+
+            mPurging = true;
+            return true;
+        }
+
+        private synchronized void fail(String path) {
+            mFailed.add(path);
+        }
+    }
+
+    /**
+     * @param fs        the file system of the paths to delete
+     * @param scheduler runs the purge jobs
+     * @param threads   the number of directories purged at the same time
+     */
+    public Trash(FileSystem fs, JobScheduler scheduler, int threads) {
+        mFileSystem = fs;
+        mScheduler = scheduler;
+        mThreads = Math.max(1, threads);
+    }
+
+    /**
+     * @param gracePeriod the time in milliseconds a deletion can be undone
+     *                    before its purge is queued, 0 to queue it right away
+     */
+    public synchronized void setGracePeriod(long gracePeriod) {
+        mGracePeriod = Math.max(0, gracePeriod);
+    }
+
+    /**
+     * @param path a full path
+     * @return the full path of the trash directory of the volume of the path
+     */
+    public String trashOf(String path) {
+        String volume = mScheduler.volumeOf(path);
+
+        return volume.endsWith("/") ? volume + DIRECTORY : volume + "/" + DIRECTORY;
+    }
+
+    /**
+     * Moves files and folders into the trash. The job that purges them is
+     * queued after the grace period, and the purge of the last deletion, if it
+     * is still waiting, is queued right away.
+     *
+     * @param paths the full paths of the files and folders to delete
+     * @return the deletion, to undo it or to get what failed. Its job fails if
+     *         anything could not be removed.
+     */
+    public Deletion delete(List<String> paths) {
+        final Deletion deletion = new Deletion();
+        ArrayList<String> touched = new ArrayList<String>();
+
+        for (String path : paths) {
+            FileStat stat = mFileSystem.stat(path);
+
+            if (stat == null || path.equals(mScheduler.volumeOf(path))) {
+                deletion.fail(path);
+                continue;
+            }
+
+            String trash = trashOf(path);
+            String moved = path;
+
+            if (!path.equals(trash) && !path.startsWith(trash + "/") &&
+                    (mFileSystem.stat(trash) != null || mFileSystem.mkdir(trash))) {
+                String entry = trash + "/" + System.currentTimeMillis() + "-" + COUNTER.incrementAndGet();
+
+                if (mFileSystem.rename(path, entry))
+                    moved = entry;
+            }
+
+            deletion.mEntries.put(path, moved);
+            touched.add(moved);
+        }
+
+        if (touched.isEmpty())
+            return deletion;
+
+        synchronized (this) {
+            mPending.addAll(deletion.mEntries.values());
+        }
+
+        deletion.mPurge = new JobScheduler.Job("Delete " + paths.size(),
+                JobScheduler.LANE_BULK, touched.toArray(new String[touched.size()])) {
+            @Override
+            protected void run() throws IOException {
+                if (!deletion.start())
+                    return;
+
+                try {
+                    purge_all(deletion.mEntries, deletion, this);
+                } finally {
+                    release(deletion);
+                }
+
+                int failed = deletion.getFailed().size();
+                if (failed > 0)
+                    throw new IOException(failed + " could not be deleted");
+            }
+        };
+
+        Deletion previous;
+        long grace;
+
+        synchronized (this) {
+            previous = mWaiting;
+            mWaiting = deletion;
+            grace = mGracePeriod;
+
+            if (grace > 0) {
+                if (mTimer == null)
+                    mTimer = new Timer("trash", true);
+
+                deletion.mGrace = new TimerTask() {
+                    @Override
+                    public void run() {
+                        queue(deletion);
+                    }
+                };
+                mTimer.schedule(deletion.mGrace, grace);
+            }
+        }
+
+        if (previous != null)
+            queue(previous);
+        if (grace == 0)
+            queue(deletion);
+        return deletion;
+    }
+
+    /**
+     * Queues a job that empties the trash of a volume, such as what was left by
+     * a failed purge or a crash. Deletions that can still be undone are kept.
+     *
+     * @param path a path on the volume
+     * @return the queued job, it fails if anything could not be removed
+     */
+    public JobScheduler.Job purge(String path) {
+        final String trash = trashOf(path);
+
+        return mScheduler.submit(new JobScheduler.Job("Empty " + trash, JobScheduler.LANE_BULK, trash) {
+            @Override
+            protected void run() throws IOException {
+                String[] list = mFileSystem.list(trash);
+                LinkedHashMap<String, String> entries = new LinkedHashMap<String, String>();
+
+                synchronized (Trash.this) {
+                    for (int i = 0; list != null && i < list.length; i++) {
+                        String entry = trash + "/" + list[i];
+                        if (!mPending.contains(entry))
+                            entries.put(entry, entry);
+                    }
+                }
+
+                Deletion deletion = new Deletion();
+                purge_all(entries, deletion, this);
+
+                if (!deletion.mFailed.isEmpty())
+                    throw new IOException(deletion.mFailed.size() + " could not be deleted");
+            }
+        });
+    }
+
+    /*
+     * submits the purge of a deletion, once, unless it was undone
+     */
+    private void queue(Deletion deletion) {
+        synchronized (this) {
+            if (mWaiting == deletion)
+                mWaiting = null;
+        }
+
+        synchronized (deletion) {
+            if (deletion.mQueued || deletion.mUndone || deletion.mPurge == null)
+                return;
+
+            deletion.mQueued = true;
+            if (deletion.mGrace != null)
+                deletion.mGrace.cancel();
+        }
+        mScheduler.submit(deletion.mPurge);
+    }
+
+    private synchronized void release(Deletion deletion) {
+        mPending.removeAll(deletion.mEntries.values());
+    }
+
+    /*
+     * removes the entries with a pool of threads, one directory per task
+     */
+    private void purge_all(Map<String, String> entries, Deletion deletion, JobScheduler.Job job) {
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "purge");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        Purge purge = new Purge(pool, deletion, job);
+
+        try {
+            for (Map.Entry<String, String> entry : entries.entrySet())
+                purge.remove(entry.getValue(), entry.getKey(), null);
+            purge.await();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /*
+     * a directory being purged. It is removed once its own files and all its
+     * sub directories are gone, by whichever thread finishes last.
+     */
+    private static class Node {
+        final String path;
+        final String original;
+        final Node parent;
+        //this directory's own listing, plus one per sub directory not yet removed
+        final AtomicInteger pending = new AtomicInteger(1);
+        volatile boolean failed;
+
+        Node(String path, String original, Node parent) {
+            this.path = path;
+            this.original = original;
+            this.parent = parent;
+        }
+    }
+
+    private class Purge {
+        private final ExecutorService mPool;
+        private final Deletion mDeletion;
+        private final JobScheduler.Job mJob;
+        private final AtomicInteger mRunning = new AtomicInteger();
+        private final AtomicInteger mRemoved = new AtomicInteger();
+
+        Purge(ExecutorService pool, Deletion deletion, JobScheduler.Job job) {
+            mPool = pool;
+            mDeletion = deletion;
+            mJob = job;
+        }
+
+        /*
+         * removes a file right away, hands a directory to the pool
+         */
+        void remove(String path, String original, Node parent) {
+            FileStat stat = mFileSystem.stat(path);
+
+            if (stat == null)
+                return;
+
+            if (!stat.isDirectory() || mFileSystem.isSymlink(path)) {
+                if (mFileSystem.delete(path))
+                    removed();
+                else
+                    failed(original, parent);
+                return;
+            }
+
+            if (parent != null)
+                parent.pending.incrementAndGet();
+
+            final Node node = new Node(path, original, parent);
+            mRunning.incrementAndGet();
+            mPool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        purge_dir(node);
+                    } finally {
+                        if (mRunning.decrementAndGet() == 0) {
+                            synchronized (Purge.this) {
+                                Purge.this.notifyAll();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        private void purge_dir(Node node) {
+            String[] list = mJob.isCancelled() ? null : mFileSystem.list(node.path);
+
+            if (list == null) {
+                failed(node.original, node.parent);
+                node.failed = true;
+            }
+
+            for (int i = 0; list != null && i < list.length && !mJob.isCancelled(); i++)
+                remove(node.path + "/" + list[i], node.original + "/" + list[i], node);
+
+            done(node);
+        }
+
+        /*
+         * removes the directories that have nothing left in them, up the tree
+         */
+        private void done(Node node) {
+            while (node != null && node.pending.decrementAndGet() == 0) {
+                if (!node.failed && !mJob.isCancelled()) {
+                    if (mFileSystem.delete(node.path))
+                        removed();
+                    else
+                        failed(node.original, node.parent);
+                }
+                node = node.parent;
+            }
+        }
+
+        private void failed(String original, Node parent) {
+            mDeletion.fail(original);
+
+            //the directories above can't be removed, but only the cause is reported
+            for (Node node = parent; node != null; node = node.parent)
+                node.failed = true;
+        }
+
+        private void removed() {
+            int count = mRemoved.incrementAndGet();
+            if ((count & 0xff) == 0)
+                mJob.setProgress(count, 0);
+        }
+
+        synchronized void await() {
+            try {
+                while (mRunning.get() > 0)
+                    wait();
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                mJob.cancel();
+            }
+        }
+    }
+}
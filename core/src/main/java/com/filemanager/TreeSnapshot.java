@@ -0,0 +1,596 @@
+package com.filemanager;
+
+import com.filemanager.entity.FileStat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * What a directory tree looked like at one time, to find out later what changed
+ * in it. For every directory it keeps the names, sizes and times of its entries,
+ * and a digest that rolls up the entries of the directory and the digests of
+ * its sub directories, so two equal digests mean two equal trees.
+ * <br>
+ * <br>
+ * {@link #rescan(FileSystem, ChangeListener, CancelToken)} takes a new snapshot
+ * and reports what was added, removed and modified since this one. A directory
+ * whose modification time did not change is not listed again, only stat'ed,
+ * and its entries are taken from this snapshot. The diff then skips every sub
+ * tree whose digest did not change, so a rescan of a tree of a million files
+ * costs a stat per directory plus a listing of the directories that changed.
+ * <br>
+ * <br>
+ * As for {@link StorageAnalyzer}, a file written in place does not change the
+ * time of its directory, so its new size and time are only seen once the
+ * directory itself changes. A rescan with {@link #setListAll(boolean)} lists
+ * every directory and sees such files too, for the price of a stat per file.
+ * A directory listed within {@link ListingCache#MTIME_RESOLUTION} of its last
+ * change is always listed again. Symbolic links to directories are recorded
+ * but not followed.
+ * <br>
+ * <br>
+ * A snapshot can be saved to a file, followed by a CRC-32 of all of it, and is
+ * not loaded if it is damaged. Like FileManager, this class has no reference
+ * to any GUI activity. Scans run on the calling thread.
+ */
+public final class TreeSnapshot {
+    public static final int CHANGE_ADDED = 0;
+    public static final int CHANGE_REMOVED = 1;
+    public static final int CHANGE_MODIFIED = 2;
+
+    private static final int MAGIC = 0x46545331;
+    private static final int VERSION = 1;
+    //name length, directory flag, size and time
+    private static final int ENTRY_BYTES = 2 + 1 + 8 + 8;
+
+    private static final String[] NO_NAMES = new String[0];
+    private static final long[] NO_LONGS = new long[0];
+    private static final Dir[] NO_DIRS = new Dir[0];
+
+    private static final Metrics METRICS = Metrics.getDefault();
+    private static final Metrics.Counter DIRS_LISTED = METRICS.counter("snapshot.listed");
+    private static final Metrics.Counter DIRS_REUSED = METRICS.counter("snapshot.reused");
+
+    private final String mPath;
+    private final long mTakenAt;
+    private final Dir mRoot;
+    private boolean mListAll = false;
+
+    /**
+     * Receives the differences between two snapshots.
+     */
+    public interface ChangeListener {
+        /**
+         * Called once per entry, on the thread that runs the scan. Everything
+         * below an added or removed directory is reported too, before the
+         * directory when it was removed and after it when it was added.
+         *
+         * @param change    one of the CHANGE_ constants of {@link TreeSnapshot}
+         * @param path      the full path of the entry
+         * @param directory true if the entry is, or was, a directory
+         */
+        void onChange(int change, String path, boolean directory);
+    }
+
+    /*
+     * one directory: its entries sorted by name, with a child for every sub
+     * directory that was descended into
+     */
+    private static final class Dir {
+        final long modified;
+        final long listedAt;
+        final String[] names;
+        final long[] sizes;
+        final long[] times;
+        //null for files and links
+        final Dir[] children;
+        final long ownDigest;
+        final long digest;
+
+        Dir(long modified, long listedAt, String[] names, long[] sizes, long[] times,
+            Dir[] children, long ownDigest) {
+            this.modified = modified;
+            this.listedAt = listedAt;
+            this.names = names;
+            this.sizes = sizes;
+            this.times = times;
+            this.children = children;
+            this.ownDigest = ownDigest;
+
+            long rolled = ownDigest;
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] != null)
+                    rolled = mix(rolled * 31 + children[i].digest);
+            }
+            this.digest = rolled;
+        }
+
+        /*
+         * the same entries with other sub directories
+         */
+        Dir with(Dir[] children) {
+            return new Dir(modified, listedAt, names, sizes, times, children, ownDigest);
+        }
+    }
+
+    private TreeSnapshot(String path, long takenAt, Dir root) {
+        mPath = path;
+        mTakenAt = takenAt;
+        mRoot = root;
+    }
+
+    /**
+     * Takes the first snapshot of a tree, listing every directory.
+     *
+     * @param fs    the file system of the tree
+     * @param path  the full path of the directory
+     * @param token stops the scan once cancelled
+     * @return the snapshot, null if the path is not a directory or the scan was cancelled
+     */
+    public static TreeSnapshot take(FileSystem fs, String path, CancelToken token) {
+        FileStat stat = fs.stat(path);
+        if (stat == null || !stat.isDirectory())
+            return null;
+
+        Dir root = new Scan(fs, true, token).scan(path, null);
+
+        return root == null ? null : new TreeSnapshot(path, System.currentTimeMillis(), root);
+    }
+
+    /**
+     * @param listAll true to list every directory on the next rescan, to see
+     *                files written in place, false to trust the times of the directories
+     */
+    public void setListAll(boolean listAll) {
+        mListAll = listAll;
+    }
+
+    /**
+     * Takes a new snapshot of the same tree and reports what changed since this
+     * one. Unchanged directories are not listed again, see the class comment.
+     *
+     * @param fs       the file system of the tree
+     * @param listener receives the changes, or null
+     * @param token    stops the scan once cancelled
+     * @return the new snapshot, null if the tree is gone or the scan was cancelled
+     */
+    public TreeSnapshot rescan(FileSystem fs, ChangeListener listener, CancelToken token) {
+        FileStat stat = fs.stat(mPath);
+        if (stat == null || !stat.isDirectory())
+            return null;
+
+        Dir root = new Scan(fs, mListAll, token).scan(mPath, mRoot);
+        if (root == null)
+            return null;
+
+        TreeSnapshot next = new TreeSnapshot(mPath, System.currentTimeMillis(), root);
+        next.mListAll = mListAll;
+
+        if (listener != null)
+            diff(mPath, mRoot, root, listener);
+        return next;
+    }
+
+    /**
+     * Reports the differences between two snapshots of the same tree, such as
+     * yesterday's saved one and today's, without any I/O.
+     *
+     * @param older    the earlier snapshot
+     * @param newer    the later snapshot
+     * @param listener receives the changes
+     * @return false if the snapshots are of different directories
+     */
+    public static boolean compare(TreeSnapshot older, TreeSnapshot newer, ChangeListener listener) {
+        if (!older.mPath.equals(newer.mPath))
+            return false;
+
+        diff(older.mPath, older.mRoot, newer.mRoot, listener);
+        return true;
+    }
+
+    /**
+     * @return the full path of the directory the snapshot is of
+     */
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * @return the time the snapshot was taken, in milliseconds since the epoch
+     */
+    public long getTakenAt() {
+        return mTakenAt;
+    }
+
+    /**
+     * @return the digest of the whole tree, equal for two snapshots of an unchanged tree
+     */
+    public long getDigest() {
+        return mRoot.digest;
+    }
+
+    /**
+     * @return the number of directories in the snapshot
+     */
+    public int getDirectoryCount() {
+        return count(mRoot, true);
+    }
+
+    /**
+     * @return the number of files and other entries that are not directories
+     */
+    public int getFileCount() {
+        return count(mRoot, false);
+    }
+
+    /**
+     * Saves the snapshot to a temporary file renamed over the old one, so a
+     * crash while saving leaves the previous snapshot in place.
+     *
+     * @param file the snapshot file, replaced if it exists
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)), new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mPath);
+            out.writeLong(mTakenAt);
+            write_dir(out, mRoot);
+            out.writeLong(checked.getChecksum().getValue());
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("can't replace " + file);
+        }
+    }
+
+    /**
+     * @param file the snapshot file
+     * @return the snapshot, null if there is none or it can't be used
+     */
+    public static TreeSnapshot load(File file) {
+        if (!file.isFile())
+            return null;
+
+        DataInputStream in = null;
+
+        try {
+            CheckedInputStream checked = new CheckedInputStream(
+                    new BufferedInputStream(new FileInputStream(file)), new CRC32());
+            in = new DataInputStream(checked);
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+
+            String path = in.readUTF();
+            long takenAt = in.readLong();
+            Dir root = read_dir(in, file.length());
+            long crc = checked.getChecksum().getValue();
+
+            return in.readLong() == crc ? new TreeSnapshot(path, takenAt, root) : null;
+
+        } catch (IOException e) {
+            Logger.w("TreeSnapshot", "discarding " + file + ": " + e.getMessage());
+            return null;
+
+        } catch (RuntimeException e) {
+            return discard(file, e);
+
+        } catch (OutOfMemoryError e) {
+            return discard(file, e);
+
+        } catch (StackOverflowError e) {
+            return discard(file, e);
+
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //nothing to do, the snapshot was already read
+                }
+            }
+        }
+    }
+
+    /*
+     * lists the directories of a tree, taking the entries of unchanged ones from the last snapshot
+     */
+    private static final class Scan {
+        private final FileSystem mFileSystem;
+        private final boolean mListAll;
+        private final CancelToken mToken;
+
+        Scan(FileSystem fs, boolean listAll, CancelToken token) {
+            mFileSystem = fs;
+            mListAll = listAll;
+            mToken = token;
+        }
+
+        /*
+         * the directory at path, null once cancelled
+         */
+        Dir scan(String path, Dir previous) {
+            if (mToken != null && mToken.isCancelled())
+                return null;
+
+            FileStat stat = mFileSystem.stat(path);
+            long modified = stat == null ? 0 : stat.getModified();
+
+            if (!mListAll && previous != null && modified != 0 && previous.modified == modified &&
+                    previous.listedAt - modified >= ListingCache.MTIME_RESOLUTION) {
+                DIRS_REUSED.increment();
+                return rescan_children(path, previous);
+            }
+
+            DIRS_LISTED.increment();
+            return list(path, modified, previous);
+        }
+
+        /*
+         * the same entries, with the sub directories scanned again
+         */
+        private Dir rescan_children(String path, Dir previous) {
+            Dir[] children = new Dir[previous.children.length];
+            boolean changed = false;
+
+            for (int i = 0; i < children.length; i++) {
+                if (previous.children[i] == null)
+                    continue;
+
+                children[i] = scan(path + "/" + previous.names[i], previous.children[i]);
+                if (children[i] == null)
+                    return null;
+                changed |= children[i] != previous.children[i];
+            }
+            return changed ? previous.with(children) : previous;
+        }
+
+        private Dir list(String path, long modified, Dir previous) {
+            long listedAt = System.currentTimeMillis();
+            String[] list = mFileSystem.list(path);
+
+            if (list == null)
+                return new Dir(0, listedAt, NO_NAMES, NO_LONGS, NO_LONGS, NO_DIRS, 0);
+
+            Arrays.sort(list);
+
+            String[] names = new String[list.length];
+            long[] sizes = new long[list.length];
+            long[] times = new long[list.length];
+            boolean[] dirs = new boolean[list.length];
+            int count = 0;
+            long digest = 0;
+
+            for (String name : list) {
+                String child = path.equals("/") ? "/" + name : path + "/" + name;
+                FileStat stat = mFileSystem.stat(child);
+
+                //gone since it was listed
+                if (stat == null)
+                    continue;
+
+                names[count] = name;
+                dirs[count] = stat.isDirectory() && !mFileSystem.isSymlink(child);
+                sizes[count] = dirs[count] ? 0 : stat.getSize();
+                times[count] = stat.getModified();
+                digest = mix(digest * 31 + entry_digest(name, sizes[count], times[count], dirs[count]));
+                count++;
+            }
+
+            Dir[] children = new Dir[count];
+            int known = 0;
+
+            for (int i = 0; i < count; i++) {
+                if (!dirs[i])
+                    continue;
+
+                //both lists are sorted, the last snapshot is walked along
+                Dir last = null;
+                while (previous != null && known < previous.names.length &&
+                        previous.names[known].compareTo(names[i]) < 0)
+                    known++;
+                if (previous != null && known < previous.names.length && previous.names[known].equals(names[i]))
+                    last = previous.children[known];
+
+                String child = path.equals("/") ? "/" + names[i] : path + "/" + names[i];
+                children[i] = scan(child, last);
+                if (children[i] == null)
+                    return null;
+            }
+
+            return new Dir(modified, listedAt, trim(names, count), trim(sizes, count),
+                    trim(times, count), children, digest);
+        }
+    }
+
+    /*
+     * walks both trees side by side, skipping the sub trees whose digests are equal
+     */
+    private static void diff(String path, Dir older, Dir newer, ChangeListener listener) {
+        if (older == newer || older.digest == newer.digest)
+            return;
+
+        int i = 0;
+        int j = 0;
+
+        while (i < older.names.length || j < newer.names.length) {
+            int order = i == older.names.length ? 1 : j == newer.names.length ? -1 :
+                    older.names[i].compareTo(newer.names[j]);
+
+            if (order < 0) {
+                removed(child_path(path, older.names[i]), older.children[i], listener);
+                i++;
+
+            } else if (order > 0) {
+                added(child_path(path, newer.names[j]), newer.children[j], listener);
+                j++;
+
+            } else {
+                String child = child_path(path, newer.names[j]);
+                Dir was = older.children[i];
+                Dir is = newer.children[j];
+
+                if ((was == null) != (is == null)) {
+                    //a file became a directory or the other way around
+                    removed(child, was, listener);
+                    added(child, is, listener);
+
+                } else if (is != null) {
+                    diff(child, was, is, listener);
+
+                } else if (older.sizes[i] != newer.sizes[j] || older.times[i] != newer.times[j]) {
+                    listener.onChange(CHANGE_MODIFIED, child, false);
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    private static void added(String path, Dir dir, ChangeListener listener) {
+        listener.onChange(CHANGE_ADDED, path, dir != null);
+
+        for (int i = 0; dir != null && i < dir.names.length; i++)
+            added(child_path(path, dir.names[i]), dir.children[i], listener);
+    }
+
+    private static void removed(String path, Dir dir, ChangeListener listener) {
+        for (int i = 0; dir != null && i < dir.names.length; i++)
+            removed(child_path(path, dir.names[i]), dir.children[i], listener);
+
+        listener.onChange(CHANGE_REMOVED, path, dir != null);
+    }
+
+    private static String child_path(String path, String name) {
+        return path.equals("/") ? "/" + name : path + "/" + name;
+    }
+
+    private static int count(Dir dir, boolean directories) {
+        int count = directories ? 1 : 0;
+
+        for (int i = 0; i < dir.names.length; i++) {
+            if (dir.children[i] != null)
+                count += count(dir.children[i], directories);
+            else if (!directories)
+                count++;
+        }
+        return count;
+    }
+
+    private static void write_dir(DataOutputStream out, Dir dir) throws IOException {
+        out.writeLong(dir.modified);
+        out.writeLong(dir.listedAt);
+        out.writeInt(dir.names.length);
+
+        for (int i = 0; i < dir.names.length; i++) {
+            out.writeUTF(dir.names[i]);
+            out.writeBoolean(dir.children[i] != null);
+            out.writeLong(dir.sizes[i]);
+            out.writeLong(dir.times[i]);
+        }
+
+        for (int i = 0; i < dir.names.length; i++) {
+            if (dir.children[i] != null)
+                write_dir(out, dir.children[i]);
+        }
+    }
+
+    /* Deletes a snapshot that made the reader fail, so it can't fail on every start */
+    private static TreeSnapshot discard(File file, Throwable e) {
+        Logger.e("TreeSnapshot", "deleting " + file + ": " + e);
+        file.delete();
+        return null;
+    }
+
+    /*
+     * the digests are not saved, they are computed again. limit is the length
+     * of the file, an entry takes at least ENTRY_BYTES of it
+     */
+    private static Dir read_dir(DataInputStream in, long limit) throws IOException {
+        long modified = in.readLong();
+        long listedAt = in.readLong();
+        int count = in.readInt();
+
+        if (count < 0 || count > limit / ENTRY_BYTES)
+            throw new IOException("bad entry count " + count);
+
+        String[] names = new String[count];
+        long[] sizes = new long[count];
+        long[] times = new long[count];
+        boolean[] dirs = new boolean[count];
+        long digest = 0;
+
+        for (int i = 0; i < count; i++) {
+            names[i] = in.readUTF();
+            dirs[i] = in.readBoolean();
+            sizes[i] = in.readLong();
+            times[i] = in.readLong();
+            digest = mix(digest * 31 + entry_digest(names[i], sizes[i], times[i], dirs[i]));
+        }
+
+        Dir[] children = new Dir[count];
+        for (int i = 0; i < count; i++) {
+            if (dirs[i])
+                children[i] = read_dir(in, limit);
+        }
+        return new Dir(modified, listedAt, names, sizes, times, children, digest);
+    }
+
+    private static long entry_digest(String name, long size, long time, boolean directory) {
+        //FNV-1a over the characters of the name
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash ^ mix(size * 31 + time) ^ (directory ? 0x9e3779b97f4a7c15L : 0));
+    }
+
+    /*
+     * the finalizer of SplitMix64, spreads every bit of the input over the output
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    private static String[] trim(String[] values, int length) {
+        if (values.length == length)
+            return values;
+
+        String[] trimmed = new String[length];
+        System.arraycopy(values, 0, trimmed, 0, length);
+
+        return trimmed;
+    }
+
+    private static long[] trim(long[] values, int length) {
+        if (values.length == length)
+            return values;
+
+        long[] trimmed = new long[length];
+        System.arraycopy(values, 0, trimmed, 0, length);
+
+        return trimmed;
+    }
+}
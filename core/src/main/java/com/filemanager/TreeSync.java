@@ -0,0 +1,338 @@
+package com.filemanager;
+
+import com.filemanager.entity.SyncPlan;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * One way synchronisation of a directory tree into another one. The trees are
+ * compared by relative path, size and modification time, so a sync of a mostly
+ * unchanged tree costs about as much as listing both trees. Only new and changed
+ * files are copied, copies get the modification time of their source so they
+ * compare equal on the next run.
+ * <br>
+ * <br>
+ * Since FAT file systems store modification times in 2 second steps, times that
+ * differ by less than that are considered equal. When content verification is on,
+ * files of equal size whose times differ are compared byte by byte first; if the
+ * content is the same only the time of the target is fixed.
+ * <br>
+ * <br>
+ * Like FileManager, this class has no reference to any GUI activity and runs on
+ * the calling thread.
+ */
+public class TreeSync {
+    private static final long MTIME_TOLERANCE = 2000;
+    private static final int BUFFER = 64 * 1024;
+    private static final String TEMP_SUFFIX = ".sync-tmp";
+
+    private boolean mDeleteExtras = false;
+    private boolean mVerifyContent = false;
+
+    /**
+     * Receives the progress of {@link TreeSync#execute(SyncPlan, Listener, CancelToken)}.
+     */
+    public interface Listener {
+        /**
+         * @param action    the change that was just applied, or failed
+         * @param done      the number of changes applied so far
+         * @param bytesDone the number of bytes copied so far
+         */
+        void onProgress(SyncPlan.Action action, int done, long bytesDone);
+    }
+
+    /**
+     * @param delete true to delete files and folders of the target that are not in the source
+     */
+    public void setDeleteExtras(boolean delete) {
+        mDeleteExtras = delete;
+    }
+
+    /**
+     * @param verify true to compare the content of files that have the same size but
+     *               a different modification time, instead of copying them right away
+     */
+    public void setVerifyContent(boolean verify) {
+        mVerifyContent = verify;
+    }
+
+    /**
+     * Compares two trees without changing anything.
+     *
+     * @param source the full path of the directory to copy from
+     * @param target the full path of the directory to copy to, it may not exist yet
+     * @param token  stops the comparison once cancelled, the plan is then incomplete
+     * @return the changes that make the target match the source
+     */
+    public SyncPlan plan(String source, String target, CancelToken token) {
+        SyncPlan plan = new SyncPlan(source, target);
+        File targetDir = new File(target);
+
+        if (!targetDir.isDirectory())
+            plan.add(SyncPlan.ACTION_MKDIR, "", 0);
+
+        diff_dir(new File(source), targetDir, "", plan, token);
+
+        return plan;
+    }
+
+    /**
+     * Applies a plan. Files are copied to a temporary file next to their target
+     * and renamed into place, so an interrupted sync never leaves a half written file.
+     *
+     * @param plan     a plan from {@link #plan(String, String, CancelToken)}
+     * @param listener receives the progress, may be null
+     * @param token    stops the sync between files once cancelled
+     * @return the relative paths of the changes that failed
+     */
+    public List<String> execute(SyncPlan plan, Listener listener, CancelToken token) {
+        ArrayList<String> failed = new ArrayList<String>();
+        String source = plan.getSource();
+        String target = plan.getTarget();
+        long bytesDone = 0;
+        int done = 0;
+
+        for (SyncPlan.Action action : plan.getActions()) {
+            if (token.isCancelled())
+                break;
+
+            File from = new File(source, action.getPath());
+            File to = new File(target, action.getPath());
+            boolean ok;
+
+            switch (action.getType()) {
+                case SyncPlan.ACTION_MKDIR:
+                    ok = to.isDirectory() || to.mkdirs();
+                    break;
+
+                case SyncPlan.ACTION_COPY:
+                case SyncPlan.ACTION_UPDATE:
+                    ok = copy_file(from, to);
+                    if (ok)
+                        bytesDone += action.getSize();
+                    break;
+
+                case SyncPlan.ACTION_TOUCH:
+                    ok = to.setLastModified(from.lastModified());
+                    break;
+
+                default:
+                    ok = delete_tree(to);
+                    break;
+            }
+
+            if (!ok)
+                failed.add(action.getPath());
+
+            done++;
+            if (listener != null)
+                listener.onProgress(action, done, bytesDone);
+        }
+        return failed;
+    }
+
+    /*
+     * compares one directory of both trees and recurses into the sub directories.
+     * The target may not exist, then everything below source is new.
+     */
+    private void diff_dir(File source, File target, String relative, SyncPlan plan, CancelToken token) {
+        String[] names = source.list();
+        if (names == null || token.isCancelled())
+            return;
+
+        HashMap<String, File> existing = new HashMap<String, File>();
+        String[] targetNames = target.list();
+
+        if (targetNames != null) {
+            for (String name : targetNames)
+                existing.put(name, new File(target, name));
+        }
+
+        Arrays.sort(names);
+
+        for (String name : names) {
+            if (token.isCancelled())
+                return;
+
+            File from = new File(source, name);
+            File to = existing.remove(name);
+            String path = relative.length() == 0 ? name : relative + "/" + name;
+
+            if (from.isDirectory()) {
+                try {
+                    //links are not followed, and a target inside the source is not copied into itself
+                    if (FileManager.isSymlink(from) ||
+                            from.getAbsolutePath().equals(new File(plan.getTarget()).getAbsolutePath()))
+                        continue;
+                } catch (IOException e) {
+                    continue;
+                }
+
+                if (to != null && !to.isDirectory()) {
+                    plan.add(SyncPlan.ACTION_DELETE, path, 0);
+                    to = null;
+                }
+                if (to == null)
+                    plan.add(SyncPlan.ACTION_MKDIR, path, 0);
+
+                diff_dir(from, to != null ? to : new File(target, name), path, plan, token);
+
+            } else if (from.isFile()) {
+                long size = from.length();
+
+                if (to != null && to.isDirectory()) {
+                    plan.add(SyncPlan.ACTION_DELETE, path, 0);
+                    to = null;
+                }
+
+                if (to == null) {
+                    plan.add(SyncPlan.ACTION_COPY, path, size);
+
+                } else if (to.length() != size) {
+                    plan.add(SyncPlan.ACTION_UPDATE, path, size);
+
+                } else if (Math.abs(to.lastModified() - from.lastModified()) >= MTIME_TOLERANCE) {
+                    if (mVerifyContent && same_content(from, to))
+                        plan.add(SyncPlan.ACTION_TOUCH, path, 0);
+                    else
+                        plan.add(SyncPlan.ACTION_UPDATE, path, size);
+
+                } else {
+                    plan.addUnchanged();
+                }
+            }
+        }
+
+        if (mDeleteExtras) {
+            String[] extras = existing.keySet().toArray(new String[existing.size()]);
+            Arrays.sort(extras);
+
+            for (String name : extras)
+                plan.add(SyncPlan.ACTION_DELETE, relative.length() == 0 ? name : relative + "/" + name, 0);
+        }
+    }
+
+    private static boolean copy_file(File from, File to) {
+        File temp = new File(to.getPath() + TEMP_SUFFIX);
+        FileInputStream in = null;
+        FileOutputStream out = null;
+
+        try {
+            in = new FileInputStream(from);
+            out = new FileOutputStream(temp);
+
+            FileChannel src = in.getChannel();
+            FileChannel dst = out.getChannel();
+            long size = src.size();
+            long pos = 0;
+
+            while (pos < size) {
+                long moved = src.transferTo(pos, size - pos, dst);
+
+                //the source got shorter while it was copied
+                if (moved <= 0)
+                    throw new IOException(from + " changed while it was copied");
+                pos += moved;
+            }
+
+            out.close();
+            out = null;
+
+        } catch (IOException e) {
+            temp.delete();
+            return false;
+
+        } finally {
+            close(in);
+            close(out);
+        }
+
+        temp.setLastModified(from.lastModified());
+
+        //some file systems don't rename over an existing file
+        if (!temp.renameTo(to) && !(to.delete() && temp.renameTo(to))) {
+            temp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean same_content(File a, File b) {
+        InputStream first = null;
+        InputStream second = null;
+
+        try {
+            first = new FileInputStream(a);
+            second = new FileInputStream(b);
+            byte[] one = new byte[BUFFER];
+            byte[] two = new byte[BUFFER];
+
+            while (true) {
+                int read = read_fully(first, one);
+                if (read != read_fully(second, two))
+                    return false;
+                if (read == 0)
+                    return true;
+
+                for (int i = 0; i < read; i++) {
+                    if (one[i] != two[i])
+                        return false;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+
+        } finally {
+            close(first);
+            close(second);
+        }
+    }
+
+    private static int read_fully(InputStream in, byte[] data) throws IOException {
+        int len = 0;
+        int read;
+
+        while (len < data.length && (read = in.read(data, len, data.length - len)) != -1)
+            len += read;
+
+        return len;
+    }
+
+    private static boolean delete_tree(File file) {
+        try {
+            //never follow a link out of the target tree
+            if (file.isDirectory() && !FileManager.isSymlink(file)) {
+                File[] list = file.listFiles();
+
+                if (list != null) {
+                    for (File child : list)
+                        delete_tree(child);
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return file.delete() || !file.exists();
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            //nothing left to do with it
+        }
+    }
+}
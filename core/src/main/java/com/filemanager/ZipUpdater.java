@@ -0,0 +1,566 @@
+package com.filemanager;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Changes an existing zip archive without recompressing it. Only the central
+ * directory at the end of a zip says which entries it has, so adding files
+ * writes them over the old central directory and writes a new one after them:
+ * adding a file to a 2 GB archive costs the size of that file and of the
+ * directory. Removing or replacing entries builds a new archive in which the
+ * entries that stay are copied as they are, still compressed, and renames it
+ * over the old one.
+ * <br>
+ * <br>
+ * Files whose type is already compressed, such as images, music, videos and
+ * archives, are stored, other files are deflated. Names are stored as UTF-8.
+ * Archives that need the ZIP64 extensions, over 4 GB or 65535 entries, and
+ * split archives are not supported.
+ * <br>
+ * <br>
+ * An update that only adds files changes the archive in place. If it fails,
+ * the old central directory is written back, only a crash in the middle of it
+ * leaves the archive without a directory. Like FileManager, this class has no
+ * reference to any GUI activity.
+ */
+public class ZipUpdater {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_DIRECTORY = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int MAX_COMMENT = 0xffff;
+    private static final long MAX_OFFSET = 0xffffffffL;
+    private static final int FLAG_UTF8 = 0x800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int BUFFER = 64 * 1024;
+
+    private final File mZip;
+    //by name, in the order of the central directory
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>();
+    private final LinkedHashMap<String, File> mAdded = new LinkedHashMap<String, File>();
+    private final HashSet<String> mRemoved = new HashSet<String>();
+    private long mDirectoryOffset;
+    private byte[] mComment;
+
+    private static class Entry {
+        final String name;
+        //the central directory record as read, or as built for a new entry
+        final byte[] header;
+        final long offset;
+
+        Entry(String name, byte[] header, long offset) {
+            this.name = name;
+            this.header = header;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Reads the central directory of an archive.
+     *
+     * @param zip an existing zip file
+     * @throws IOException if it can't be read, is not a zip or needs ZIP64
+     */
+    public ZipUpdater(File zip) throws IOException {
+        mZip = zip;
+
+        RandomAccessFile file = new RandomAccessFile(zip, "r");
+        try {
+            read_directory(file);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return the names of the entries, in the order of the archive, without the
+     *         changes that were not committed
+     */
+    public List<String> getNames() {
+        return new ArrayList<String>(mEntries.keySet());
+    }
+
+    public boolean contains(String name) {
+        return mEntries.containsKey(name);
+    }
+
+    /**
+     * Adds a file to the archive on the next commit, replacing an entry of the
+     * same name.
+     *
+     * @param name the name in the archive, with / between directories
+     * @param file the file to add
+     */
+    public void add(String name, File file) {
+        if (mEntries.containsKey(name))
+            mRemoved.add(name);
+
+        mAdded.put(name, file);
+    }
+
+    /**
+     * Removes an entry on the next commit.
+     *
+     * @param name the name in the archive
+     * @return false if there is no such entry
+     */
+    public boolean remove(String name) {
+        mAdded.remove(name);
+
+        if (!mEntries.containsKey(name))
+            return false;
+
+        mRemoved.add(name);
+        return true;
+    }
+
+    /**
+     * Writes the changes to the archive.
+     *
+     * @return the number of bytes written
+     * @throws IOException if the archive can't be written, it is then unchanged
+     */
+    public long commit() throws IOException {
+        if (mAdded.isEmpty() && mRemoved.isEmpty())
+            return 0;
+
+        long written = mRemoved.isEmpty() ? append() : rebuild();
+
+        mAdded.clear();
+        mRemoved.clear();
+        return written;
+    }
+
+    /*
+     * writes the new entries over the central directory, then the new directory.
+     * The old directory is kept in memory and written back if anything fails.
+     */
+    private long append() throws IOException {
+        for (File source : mAdded.values()) {
+            if (!source.isFile() || !source.canRead())
+                throw new IOException("can't read " + source);
+        }
+
+        RandomAccessFile file = new RandomAccessFile(mZip, "rw");
+        LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(mEntries);
+        long start = mDirectoryOffset;
+        long oldLength = file.length();
+        byte[] tail = new byte[(int) (oldLength - start)];
+        boolean written = false;
+
+        try {
+            file.seek(start);
+            file.readFully(tail);
+
+            long end = write_added(file, start);
+            long length = write_directory(file, end);
+
+            file.setLength(length);
+            written = true;
+            return length - start;
+
+        } finally {
+            if (!written) {
+                mEntries.clear();
+                mEntries.putAll(entries);
+                mDirectoryOffset = start;
+
+                try {
+                    file.seek(start);
+                    file.write(tail);
+                    file.setLength(oldLength);
+                } catch (IOException e) {
+                    Logger.e("ZipUpdater", "can't restore the directory of " + mZip + ": " + e.getMessage());
+                }
+            }
+            file.close();
+        }
+    }
+
+    /*
+     * copies the entries that stay into a new archive as they are, then adds the new ones
+     */
+    private long rebuild() throws IOException {
+        File temp = new File(mZip.getPath() + ".tmp");
+        RandomAccessFile in = new RandomAccessFile(mZip, "r");
+        RandomAccessFile out = new RandomAccessFile(temp, "rw");
+        LinkedHashMap<String, Entry> kept = new LinkedHashMap<String, Entry>();
+        LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(mEntries);
+        long directoryOffset = mDirectoryOffset;
+        boolean built = false;
+        long length;
+
+        try {
+            out.setLength(0);
+            FileChannel source = in.getChannel();
+            FileChannel target = out.getChannel();
+
+            //an entry runs up to the next entry, whatever it holds after its data
+            ArrayList<Entry> byOffset = new ArrayList<Entry>(mEntries.values());
+            Collections.sort(byOffset, new Comparator<Entry>() {
+                public int compare(Entry a, Entry b) {
+                    return a.offset < b.offset ? -1 : a.offset == b.offset ? 0 : 1;
+                }
+            });
+
+            HashSet<String> keep = new HashSet<String>();
+            for (int i = 0; i < byOffset.size(); i++) {
+                Entry entry = byOffset.get(i);
+                if (mRemoved.contains(entry.name))
+                    continue;
+
+                long end = i + 1 < byOffset.size() ? byOffset.get(i + 1).offset : mDirectoryOffset;
+                long position = target.position();
+
+                transfer(source, entry.offset, end - entry.offset, target);
+                keep.add(entry.name);
+
+                byte[] header = entry.header.clone();
+                put_int(header, 42, position);
+                kept.put(entry.name, new Entry(entry.name, header, position));
+            }
+
+            //the central directory keeps its order
+            mEntries.clear();
+            for (Entry entry : byOffset) {
+                if (keep.contains(entry.name))
+                    mEntries.put(entry.name, kept.get(entry.name));
+            }
+
+            long end = write_added(out, target.position());
+            length = write_directory(out, end);
+            out.setLength(length);
+            built = true;
+
+        } finally {
+            in.close();
+            out.close();
+
+            if (!built)
+                temp.delete();
+        }
+
+        if (!replace(temp)) {
+            //the archive is still the old one
+            mEntries.clear();
+            mEntries.putAll(entries);
+            mDirectoryOffset = directoryOffset;
+            throw new IOException("can't replace " + mZip);
+        }
+        return length;
+    }
+
+    /*
+     * renames the new archive over the old one. Where a rename can't replace a
+     * file, the old archive is moved aside first and only removed once the new
+     * one is in place. Returns false if the old archive is still in place.
+     */
+    private boolean replace(File temp) throws IOException {
+        if (temp.renameTo(mZip))
+            return true;
+
+        File aside = new File(mZip.getPath() + ".old");
+        aside.delete();
+
+        if (!mZip.renameTo(aside)) {
+            temp.delete();
+            return false;
+        }
+
+        if (temp.renameTo(mZip)) {
+            aside.delete();
+            return true;
+        }
+
+        //put the old archive back, the new one is kept if that fails too
+        if (aside.renameTo(mZip)) {
+            temp.delete();
+            return false;
+        }
+        throw new IOException("can't replace " + mZip + ", the new archive is " + temp +
+                " and the old one " + aside);
+    }
+
+    /*
+     * writes the local header and data of every added file from position on,
+     * returns where the last one ends
+     */
+    private long write_added(RandomAccessFile file, long position) throws IOException {
+        byte[] data = new byte[BUFFER];
+        byte[] compressed = new byte[BUFFER];
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        try {
+            for (String name : mAdded.keySet()) {
+                File source = mAdded.get(name);
+                byte[] rawName = name.getBytes("UTF-8");
+                int method = is_compressed(name) ? STORED : DEFLATED;
+                int[] dos = dos_time(source.lastModified());
+                long offset = position;
+
+                if (offset > MAX_OFFSET || source.length() > MAX_OFFSET)
+                    throw new IOException("the archive would need ZIP64");
+
+                byte[] local = new byte[LOCAL_HEADER_SIZE + rawName.length];
+                put_int(local, 0, LOCAL_HEADER);
+                put_short(local, 4, 20);
+                put_short(local, 6, FLAG_UTF8);
+                put_short(local, 8, method);
+                put_short(local, 10, dos[0]);
+                put_short(local, 12, dos[1]);
+                put_short(local, 26, rawName.length);
+                System.arraycopy(rawName, 0, local, LOCAL_HEADER_SIZE, rawName.length);
+
+                file.seek(offset);
+                file.write(local);
+
+                //the stream shares the position of the file
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(file.getFD()), BUFFER);
+                InputStream in = new FileInputStream(source);
+                CRC32 crc = new CRC32();
+                long size = 0;
+                long stored = 0;
+                int read;
+
+                try {
+                    deflater.reset();
+
+                    while ((read = in.read(data)) != -1) {
+                        crc.update(data, 0, read);
+                        size += read;
+
+                        if (method == STORED) {
+                            out.write(data, 0, read);
+                            stored += read;
+                        } else {
+                            deflater.setInput(data, 0, read);
+                            while (!deflater.needsInput())
+                                stored += deflate(deflater, compressed, out);
+                        }
+                    }
+
+                    if (method == DEFLATED) {
+                        deflater.finish();
+                        while (!deflater.finished())
+                            stored += deflate(deflater, compressed, out);
+                    }
+                    out.flush();
+
+                } finally {
+                    in.close();
+                }
+
+                position = offset + local.length + stored;
+                if (position > MAX_OFFSET || size > MAX_OFFSET)
+                    throw new IOException("the archive would need ZIP64");
+
+                //the sizes are known now
+                byte[] sizes = new byte[12];
+                put_int(sizes, 0, crc.getValue());
+                put_int(sizes, 4, stored);
+                put_int(sizes, 8, size);
+                file.seek(offset + 14);
+                file.write(sizes);
+
+                byte[] header = new byte[CENTRAL_HEADER_SIZE + rawName.length];
+                put_int(header, 0, CENTRAL_HEADER);
+                put_short(header, 4, 20);
+                put_short(header, 6, 20);
+                put_short(header, 8, FLAG_UTF8);
+                put_short(header, 10, method);
+                put_short(header, 12, dos[0]);
+                put_short(header, 14, dos[1]);
+                System.arraycopy(sizes, 0, header, 16, sizes.length);
+                put_short(header, 28, rawName.length);
+                put_int(header, 42, offset);
+                System.arraycopy(rawName, 0, header, CENTRAL_HEADER_SIZE, rawName.length);
+
+                mEntries.remove(name);
+                mEntries.put(name, new Entry(name, header, offset));
+            }
+        } finally {
+            deflater.end();
+        }
+        return position;
+    }
+
+    /*
+     * writes the central directory and its end record, returns the end of the archive
+     */
+    private long write_directory(RandomAccessFile file, long position) throws IOException {
+        if (mEntries.size() >= 0xffff)
+            throw new IOException("the archive would need ZIP64");
+
+        file.seek(position);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file.getFD()), BUFFER);
+        long size = 0;
+
+        for (Entry entry : mEntries.values()) {
+            out.write(entry.header);
+            size += entry.header.length;
+        }
+
+        byte[] end = new byte[END_SIZE];
+        put_int(end, 0, END_OF_DIRECTORY);
+        put_short(end, 8, mEntries.size());
+        put_short(end, 10, mEntries.size());
+        put_int(end, 12, size);
+        put_int(end, 16, position);
+        put_short(end, 20, mComment.length);
+
+        out.write(end);
+        out.write(mComment);
+        out.flush();
+
+        mDirectoryOffset = position;
+        return position + size + END_SIZE + mComment.length;
+    }
+
+    private void read_directory(RandomAccessFile file) throws IOException {
+        long length = file.length();
+        int tail = (int) Math.min(length, END_SIZE + MAX_COMMENT);
+        byte[] buffer = new byte[tail];
+
+        file.seek(length - tail);
+        file.readFully(buffer);
+
+        int end = -1;
+        for (int i = tail - END_SIZE; i >= 0 && end < 0; i--) {
+            if (get_int(buffer, i) == END_OF_DIRECTORY && i + END_SIZE + get_short(buffer, i + 20) == tail)
+                end = i;
+        }
+        if (end < 0)
+            throw new IOException(mZip + " is not a zip file");
+
+        int count = get_short(buffer, end + 10);
+        long size = get_int(buffer, end + 12);
+        mDirectoryOffset = get_int(buffer, end + 16);
+        mComment = new byte[get_short(buffer, end + 20)];
+        System.arraycopy(buffer, end + END_SIZE, mComment, 0, mComment.length);
+
+        if (get_short(buffer, end + 4) != 0 || get_short(buffer, end + 6) != 0)
+            throw new IOException("split archives are not supported");
+        if (count == 0xffff || size == MAX_OFFSET || mDirectoryOffset == MAX_OFFSET)
+            throw new IOException("ZIP64 archives are not supported");
+        if (mDirectoryOffset + size > length - tail + end)
+            throw new IOException(mZip + " is damaged");
+
+        byte[] directory = new byte[(int) size];
+        file.seek(mDirectoryOffset);
+        file.readFully(directory);
+
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > directory.length || get_int(directory, pos) != CENTRAL_HEADER)
+                throw new IOException(mZip + " is damaged");
+
+            int nameLength = get_short(directory, pos + 28);
+            int recordLength = CENTRAL_HEADER_SIZE + nameLength +
+                    get_short(directory, pos + 30) + get_short(directory, pos + 32);
+            long offset = get_int(directory, pos + 42);
+
+            if (pos + recordLength > directory.length)
+                throw new IOException(mZip + " is damaged");
+            if (get_int(directory, pos + 20) == MAX_OFFSET || get_int(directory, pos + 24) == MAX_OFFSET ||
+                    offset == MAX_OFFSET)
+                throw new IOException("ZIP64 archives are not supported");
+
+            boolean utf8 = (get_short(directory, pos + 8) & FLAG_UTF8) != 0;
+            String name = new String(directory, pos + CENTRAL_HEADER_SIZE, nameLength, utf8 ? "UTF-8" : "ISO-8859-1");
+            byte[] header = new byte[recordLength];
+
+            System.arraycopy(directory, pos, header, 0, recordLength);
+            mEntries.put(name, new Entry(name, header, offset));
+            pos += recordLength;
+        }
+    }
+
+    private static int deflate(Deflater deflater, byte[] buffer, OutputStream out) throws IOException {
+        int len = deflater.deflate(buffer);
+
+        out.write(buffer, 0, len);
+        return len;
+    }
+
+    private static void transfer(FileChannel source, long position, long count, FileChannel target)
+            throws IOException {
+        long done = 0;
+
+        while (done < count) {
+            long moved = source.transferTo(position + done, count - done, target);
+            if (moved <= 0)
+                throw new IOException("unexpected end of archive");
+
+            done += moved;
+        }
+    }
+
+    /*
+     * files of these types hardly shrink, deflating them only costs time
+     */
+    private static boolean is_compressed(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0)
+            return false;
+
+        int type = FileClassifier.typeOfExtension(name.substring(dot + 1));
+
+        return type == FileClassifier.TYPE_IMAGE || type == FileClassifier.TYPE_AUDIO ||
+                type == FileClassifier.TYPE_VIDEO || type == FileClassifier.TYPE_ARCHIVE ||
+                type == FileClassifier.TYPE_APK || type == FileClassifier.TYPE_JAR;
+    }
+
+    /*
+     * the time and date fields of a zip entry, in local time
+     */
+    @SuppressWarnings("deprecation")
+    private static int[] dos_time(long millis) {
+        java.util.Date date = new java.util.Date(millis);
+        int year = date.getYear() + 1900;
+
+        if (year < 1980)
+            return new int[]{0, (1 << 5) | 1};
+
+        return new int[]{
+                (date.getHours() << 11) | (date.getMinutes() << 5) | (date.getSeconds() >> 1),
+                ((year - 1980) << 9) | ((date.getMonth() + 1) << 5) | date.getDate()
+        };
+    }
+
+    private static int get_short(byte[] b, int off) {
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+    }
+
+    private static long get_int(byte[] b, int off) {
+        return (get_short(b, off) | (long) get_short(b, off + 2) << 16) & MAX_OFFSET;
+    }
+
+    private static void put_short(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+    }
+
+    private static void put_int(byte[] b, int off, long value) {
+        put_short(b, off, (int) value);
+        put_short(b, off + 2, (int) (value >> 16));
+    }
+}
@@ -4,12 +4,18 @@ public class FileEntity {
 
     private String fileName ;
     private boolean isHighlighted = false;
+    private int fileType;
 
     public FileEntity(String fileName, boolean isHighlighted) {
        setFileName(fileName);
         setHighlighted(isHighlighted);
     }
 
+    public FileEntity(String fileName, boolean isHighlighted, int fileType) {
+        this(fileName, isHighlighted);
+        setFileType(fileType);
+    }
+
     public String getFileName() {
         return fileName;
     }
@@ -25,4 +31,15 @@ public class FileEntity {
     public void setHighlighted(boolean isHighlighted) {
         this.isHighlighted = isHighlighted;
     }
-}
+
+    /**
+     * @return the type code computed by {@link com.filemanager.FileClassifier} when the entry was listed
+     */
+    public int getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(int fileType) {
+        this.fileType = fileType;
+    }
+}
\ No newline at end of file
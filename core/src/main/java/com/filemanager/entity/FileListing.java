@@ -0,0 +1,563 @@
+package com.filemanager.entity;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The content of one directory, stored as parallel primitive arrays instead of
+ * one object per entry. All names share a single char buffer and are addressed
+ * by offset, while sizes, modification times and flags live in their own arrays.
+ * A directory of 200k entries is therefore a handful of arrays, not 600k objects.
+ * <br>
+ * <br>
+ * Entries are addressed by their index in the listing. The adapter reads the
+ * fields it needs through the index based getters; {@link #get(int)} builds a
+ * {@link FileEntity} for the rare callers that want an object.
+ * <br>
+ * <br>
+ * A listing that is handed out is frozen first, see {@link #freeze()}. It is then
+ * a snapshot that never changes and can be read from any thread, so whoever
+ * receives it can keep the reference instead of copying the entries.
+ */
+public class FileListing {
+    public static final int SORT_NONE = 0;
+    public static final int SORT_ALPHA = 1;
+    public static final int SORT_TYPE = 2;
+    public static final int SORT_SIZE = 3;
+
+    public static final int FLAG_DIRECTORY = 1 << 8;
+    public static final int FLAG_FILE = 1 << 9;
+    public static final int FLAG_HIDDEN = 1 << 10;
+    public static final int FLAG_HIGHLIGHTED = 1 << 11;
+    private static final int TYPE_MASK = 0xff;
+
+    private static final int INITIAL_ENTRIES = 64;
+    private static final int INITIAL_CHARS = INITIAL_ENTRIES * 16;
+
+    /**
+     * A frozen listing without entries.
+     */
+    public static final FileListing EMPTY = new FileListing(1).freeze();
+
+    private char[] mNames;
+    private int[] mOffsets;
+    private long[] mSizes;
+    private long[] mModified;
+    private int[] mFlags;
+    private int mCount;
+    private volatile boolean mFrozen;
+
+    public FileListing() {
+        this(INITIAL_ENTRIES);
+    }
+
+    /**
+     * @param capacity the number of entries to allocate room for
+     */
+    public FileListing(int capacity) {
+        if (capacity < 1)
+            capacity = 1;
+
+        mNames = new char[Math.max(INITIAL_CHARS, capacity * 16)];
+        mOffsets = new int[capacity + 1];
+        mSizes = new long[capacity];
+        mModified = new long[capacity];
+        mFlags = new int[capacity];
+    }
+
+    /**
+     * @return the number of entries in the listing
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Makes the listing read only. Every method that would change it throws an
+     * IllegalStateException from now on.
+     *
+     * @return this listing
+     */
+    public FileListing freeze() {
+        mFrozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return mFrozen;
+    }
+
+    /**
+     * Removes all entries but keeps the allocated arrays for reuse.
+     */
+    public void clear() {
+        check_mutable();
+        mCount = 0;
+    }
+
+    /**
+     * Appends an entry to the end of the listing.
+     *
+     * @param name     the file name, without its parent path
+     * @param size     the length of the file in bytes
+     * @param modified the last modified time in milliseconds
+     * @param type     the type code from {@link com.filemanager.FileClassifier}
+     * @param flags    any of the FLAG_ constants of this class
+     */
+    public void add(String name, long size, long modified, int type, int flags) {
+        check_mutable();
+
+        int len = name.length();
+        int start = mOffsets[mCount];
+
+        ensureEntries(mCount + 1);
+        ensureChars(start + len);
+
+        name.getChars(0, len, mNames, start);
+        mOffsets[mCount + 1] = start + len;
+        mSizes[mCount] = size;
+        mModified[mCount] = modified;
+        mFlags[mCount] = (flags & ~TYPE_MASK) | (type & TYPE_MASK);
+        mCount++;
+    }
+
+    /**
+     * Replaces the content of this listing with the content of another one.
+     * This is a few array copies no matter how many entries there are.
+     *
+     * @param other the listing to copy
+     */
+    public void copyFrom(FileListing other) {
+        check_mutable();
+
+        int chars = other.mOffsets[other.mCount];
+
+        mCount = 0;
+        ensureEntries(other.mCount);
+        ensureChars(chars);
+
+        System.arraycopy(other.mNames, 0, mNames, 0, chars);
+        System.arraycopy(other.mOffsets, 0, mOffsets, 0, other.mCount + 1);
+        System.arraycopy(other.mSizes, 0, mSizes, 0, other.mCount);
+        System.arraycopy(other.mModified, 0, mModified, 0, other.mCount);
+        System.arraycopy(other.mFlags, 0, mFlags, 0, other.mCount);
+        mCount = other.mCount;
+    }
+
+    /**
+     * Appends one entry of another listing to the end of this listing.
+     *
+     * @param other the listing to copy from
+     * @param index the index of the entry in the other listing
+     */
+    public void add(FileListing other, int index) {
+        check_mutable();
+
+        int from = other.mOffsets[index];
+        int len = other.mOffsets[index + 1] - from;
+        int start = mOffsets[mCount];
+
+        ensureEntries(mCount + 1);
+        ensureChars(start + len);
+
+        System.arraycopy(other.mNames, from, mNames, start, len);
+        mOffsets[mCount + 1] = start + len;
+        mSizes[mCount] = other.mSizes[index];
+        mModified[mCount] = other.mModified[index];
+        mFlags[mCount] = other.mFlags[index];
+        mCount++;
+    }
+
+    /**
+     * Merges two listings that are both sorted by the same sort type into a new
+     * sorted listing. Neither input is modified. Entries of the first listing come
+     * first when two entries compare equal.
+     *
+     * @param first    a sorted listing
+     * @param second   a sorted listing
+     * @param sortType the SORT_ constant both listings are sorted by
+     * @return a new listing holding the entries of both
+     */
+    public static FileListing merge(FileListing first, FileListing second, int sortType) {
+        FileListing merged = new FileListing(first.mCount + second.mCount);
+        int i = 0, j = 0;
+
+        merged.ensureChars(first.mOffsets[first.mCount] + second.mOffsets[second.mCount]);
+
+        while (i < first.mCount && j < second.mCount) {
+            if (compare(first, i, second, j, sortType) <= 0)
+                merged.add(first, i++);
+            else
+                merged.add(second, j++);
+        }
+        while (i < first.mCount)
+            merged.add(first, i++);
+        while (j < second.mCount)
+            merged.add(second, j++);
+
+        return merged;
+    }
+
+    /**
+     * @param index the entry index
+     * @return the name of the entry, a new String is created on every call
+     */
+    public String getName(int index) {
+        int start = mOffsets[index];
+
+        return new String(mNames, start, mOffsets[index + 1] - start);
+    }
+
+    /**
+     * @param index the entry index
+     * @param name  the name to compare to
+     * @return true if the entry has this name, without creating a String
+     */
+    public boolean nameEquals(int index, String name) {
+        int start = mOffsets[index];
+        int len = mOffsets[index + 1] - start;
+
+        if (len != name.length())
+            return false;
+
+        for (int i = 0; i < len; i++) {
+            if (mNames[start + i] != name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param name the name to look for
+     * @return the index of the entry with this name, -1 if there is none
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < mCount; i++) {
+            if (nameEquals(i, name))
+                return i;
+        }
+        return -1;
+    }
+
+    public long getSize(int index) {
+        return mSizes[index];
+    }
+
+    public long getLastModified(int index) {
+        return mModified[index];
+    }
+
+    public int getType(int index) {
+        return mFlags[index] & TYPE_MASK;
+    }
+
+    public boolean isDirectory(int index) {
+        return (mFlags[index] & FLAG_DIRECTORY) != 0;
+    }
+
+    public boolean isFile(int index) {
+        return (mFlags[index] & FLAG_FILE) != 0;
+    }
+
+    public boolean isHidden(int index) {
+        return (mFlags[index] & FLAG_HIDDEN) != 0;
+    }
+
+    public boolean isHighlighted(int index) {
+        return (mFlags[index] & FLAG_HIGHLIGHTED) != 0;
+    }
+
+    public void setHighlighted(int index, boolean highlighted) {
+        check_mutable();
+
+        if (highlighted)
+            mFlags[index] |= FLAG_HIGHLIGHTED;
+        else
+            mFlags[index] &= ~FLAG_HIGHLIGHTED;
+    }
+
+    /**
+     * @param index the entry index
+     * @return a new FileEntity holding the name, type and highlight of the entry
+     */
+    public FileEntity get(int index) {
+        return new FileEntity(getName(index), isHighlighted(index), getType(index));
+    }
+
+    /**
+     * Writes the listing in a compact binary form: the names as one UTF-8 block,
+     * then for every entry the length of its name, its size, its time as the
+     * difference to the time before it, and its flags, all as variable length
+     * integers. A typical entry takes about ten bytes besides its name.
+     *
+     * @param out where to write, it is not closed
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        byte[] names = new String(mNames, 0, mOffsets[mCount]).getBytes("UTF-8");
+        long previous = 0;
+
+        write_varint(out, mCount);
+        write_varint(out, mOffsets[mCount]);
+        write_varint(out, names.length);
+        out.write(names);
+
+        for (int i = 0; i < mCount; i++) {
+            long delta = mModified[i] - previous;
+
+            write_varint(out, mOffsets[i + 1] - mOffsets[i]);
+            write_varint(out, mSizes[i]);
+            //zigzag, so small negative differences stay small
+            write_varint(out, (delta << 1) ^ (delta >> 63));
+            write_varint(out, mFlags[i] & 0xffffffffL);
+            previous = mModified[i];
+        }
+    }
+
+    /**
+     * Reads a listing written by {@link #writeTo(DataOutput)}. The sizes in the
+     * data are checked against {@code limit} before anything is allocated, so
+     * damaged data fails with an exception instead of running out of memory.
+     *
+     * @param in    where to read from, it is not closed
+     * @param limit the most bytes the listing can take, such as the length of
+     *              the file it is read from
+     * @return the listing
+     * @throws IOException if the data can't be read or is not a listing
+     */
+    public static FileListing readFrom(DataInput in, long limit) throws IOException {
+        long count = read_varint(in);
+        long chars = read_varint(in);
+        long bytes = read_varint(in);
+
+        //a name takes at least a byte per char, and an entry at least 4 bytes
+        if (bytes > limit || bytes > Integer.MAX_VALUE / 2 || chars > bytes
+                || count > (limit - bytes) / 4)
+            throw new IOException("not a listing");
+
+        byte[] data = new byte[(int) bytes];
+        in.readFully(data);
+
+        String names = new String(data, "UTF-8");
+        if (names.length() != chars)
+            throw new IOException("not a listing");
+
+        FileListing listing = new FileListing((int) count);
+        long previous = 0;
+        int pos = 0;
+
+        listing.ensureChars(names.length());
+        names.getChars(0, names.length(), listing.mNames, 0);
+
+        for (int i = 0; i < count; i++) {
+            long len = read_varint(in);
+            if (len > names.length() - pos)
+                throw new IOException("not a listing");
+
+            pos += (int) len;
+            listing.mOffsets[i + 1] = pos;
+            listing.mSizes[i] = read_varint(in);
+
+            long zigzag = read_varint(in);
+            listing.mModified[i] = previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            listing.mFlags[i] = (int) read_varint(in);
+        }
+        listing.mCount = (int) count;
+
+        return listing;
+    }
+
+    private static void write_varint(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long read_varint(DataInput in) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("not a listing");
+    }
+
+    /**
+     * Sorts the entries in place. The sort is stable and compares the packed
+     * names directly, so no String is created per comparison.
+     *
+     * @param sortType one of the SORT_ constants of this class
+     */
+    public void sort(int sortType) {
+        check_mutable();
+
+        if (sortType == SORT_NONE || mCount < 2)
+            return;
+
+        int[] order = new int[mCount];
+        int[] scratch = new int[mCount];
+
+        for (int i = 0; i < mCount; i++)
+            order[i] = i;
+
+        merge_sort(order, scratch, 0, mCount, sortType);
+        permute(order);
+    }
+
+    /*
+     * Compares entry a of listing x to entry b of listing y for the given sort type.
+     */
+    private static int compare(FileListing x, int a, FileListing y, int b, int sortType) {
+        switch (sortType) {
+            case SORT_SIZE:
+                if (x.mSizes[a] != y.mSizes[b])
+                    return x.mSizes[a] < y.mSizes[b] ? -1 : 1;
+                return compareNames(x, a, y, b);
+
+            case SORT_TYPE:
+                int ret = compareChars(x.mNames, x.extensionStart(a), x.mOffsets[a + 1],
+                        y.mNames, y.extensionStart(b), y.mOffsets[b + 1]);
+
+                return ret != 0 ? ret : compareNames(x, a, y, b);
+
+            default:
+                return compareNames(x, a, y, b);
+        }
+    }
+
+    private static int compareNames(FileListing x, int a, FileListing y, int b) {
+        return compareChars(x.mNames, x.mOffsets[a], x.mOffsets[a + 1],
+                y.mNames, y.mOffsets[b], y.mOffsets[b + 1]);
+    }
+
+    /*
+     * Case insensitive comparison of two ranges of name buffers.
+     */
+    private static int compareChars(char[] aNames, int aStart, int aEnd,
+                                    char[] bNames, int bStart, int bEnd) {
+        int aLen = aEnd - aStart;
+        int bLen = bEnd - bStart;
+        int len = Math.min(aLen, bLen);
+
+        for (int i = 0; i < len; i++) {
+            char c1 = aNames[aStart + i];
+            char c2 = bNames[bStart + i];
+
+            if (c1 != c2) {
+                c1 = Character.toLowerCase(c1);
+                c2 = Character.toLowerCase(c2);
+
+                if (c1 != c2)
+                    return c1 - c2;
+            }
+        }
+        return aLen - bLen;
+    }
+
+    private int extensionStart(int index) {
+        int start = mOffsets[index];
+
+        for (int i = mOffsets[index + 1] - 1; i >= start; i--) {
+            if (mNames[i] == '.')
+                return i + 1;
+        }
+        return start;
+    }
+
+    private void merge_sort(int[] order, int[] scratch, int from, int to, int sortType) {
+        if (to - from < 2)
+            return;
+
+        int mid = (from + to) >>> 1;
+
+        merge_sort(order, scratch, from, mid, sortType);
+        merge_sort(order, scratch, mid, to, sortType);
+
+        if (compare(this, order[mid - 1], this, order[mid], sortType) <= 0)
+            return;
+
+        System.arraycopy(order, from, scratch, from, to - from);
+
+        int left = from, right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && compare(this, scratch[left], this, scratch[right], sortType) <= 0))
+                order[i] = scratch[left++];
+            else
+                order[i] = scratch[right++];
+        }
+    }
+
+    /*
+     * Rearranges all arrays so that entry order[i] ends up at index i.
+     */
+    private void permute(int[] order) {
+        char[] names = new char[mNames.length];
+        int[] offsets = new int[mOffsets.length];
+        long[] sizes = new long[mSizes.length];
+        long[] modified = new long[mModified.length];
+        int[] flags = new int[mFlags.length];
+        int pos = 0;
+
+        for (int i = 0; i < mCount; i++) {
+            int src = order[i];
+            int start = mOffsets[src];
+            int len = mOffsets[src + 1] - start;
+
+            System.arraycopy(mNames, start, names, pos, len);
+            offsets[i] = pos;
+            pos += len;
+            sizes[i] = mSizes[src];
+            modified[i] = mModified[src];
+            flags[i] = mFlags[src];
+        }
+        offsets[mCount] = pos;
+
+        mNames = names;
+        mOffsets = offsets;
+        mSizes = sizes;
+        mModified = modified;
+        mFlags = flags;
+    }
+
+    private void check_mutable() {
+        if (mFrozen)
+            throw new IllegalStateException("the listing is frozen");
+    }
+
+    private void ensureEntries(int count) {
+        if (count <= mSizes.length)
+            return;
+
+        int capacity = Math.max(count, mSizes.length * 2);
+
+        int[] offsets = new int[capacity + 1];
+        long[] sizes = new long[capacity];
+        long[] modified = new long[capacity];
+        int[] flags = new int[capacity];
+
+        System.arraycopy(mOffsets, 0, offsets, 0, mCount + 1);
+        System.arraycopy(mSizes, 0, sizes, 0, mCount);
+        System.arraycopy(mModified, 0, modified, 0, mCount);
+        System.arraycopy(mFlags, 0, flags, 0, mCount);
+
+        mOffsets = offsets;
+        mSizes = sizes;
+        mModified = modified;
+        mFlags = flags;
+    }
+
+    private void ensureChars(int length) {
+        if (length <= mNames.length)
+            return;
+
+        char[] names = new char[Math.max(length, mNames.length * 2)];
+        System.arraycopy(mNames, 0, names, 0, mOffsets[mCount]);
+        mNames = names;
+    }
+}
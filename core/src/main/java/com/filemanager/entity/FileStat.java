@@ -0,0 +1,61 @@
+package com.filemanager.entity;
+
+/**
+ * What a {@link com.filemanager.FileSystem} knows about one path: whether it
+ * is a directory, a regular file or neither, its size and its modification
+ * time. A stat is a snapshot, it is not updated when the file changes.
+ */
+public final class FileStat {
+    private final boolean mDirectory;
+    private final boolean mFile;
+    private final long mSize;
+    private final long mModified;
+
+    /**
+     * @param directory true for a directory, false for a regular file
+     * @param size      the size in bytes, 0 for a directory
+     * @param modified  the modification time in milliseconds since the epoch
+     */
+    public FileStat(boolean directory, long size, long modified) {
+        this(directory, !directory, size, modified);
+    }
+
+    /**
+     * @param directory true for a directory
+     * @param file      true for a regular file, false for a directory and for
+     *                  special files such as FIFOs and devices
+     * @param size      the size in bytes, 0 for a directory
+     * @param modified  the modification time in milliseconds since the epoch
+     */
+    public FileStat(boolean directory, boolean file, long size, long modified) {
+        mDirectory = directory;
+        mFile = file;
+        mSize = size;
+        mModified = modified;
+    }
+
+    public boolean isDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * @return true for a regular file, which can be read to its end and copied
+     */
+    public boolean isFile() {
+        return mFile;
+    }
+
+    /**
+     * @return the size in bytes, 0 for a directory
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the modification time in milliseconds since the epoch
+     */
+    public long getModified() {
+        return mModified;
+    }
+}
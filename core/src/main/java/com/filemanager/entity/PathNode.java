@@ -0,0 +1,147 @@
+package com.filemanager.entity;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * A path in the file system, stored as a name and a reference to the node of
+ * its parent directory. Nodes are interned: asking a directory for the same
+ * child twice returns the same node, so the full path string and the File of a
+ * node are built once, the first time they are asked for, and then reused by
+ * every listing, row and thumbnail that refers to it.
+ * <br>
+ * <br>
+ * A parent only holds its children weakly, nodes nobody refers to anymore are
+ * garbage collected, and a node keeps all of its ancestors alive. Code that
+ * asks for the same nodes again and again, such as the rows of a listing, must
+ * keep them itself for as long as it uses them.
+ */
+public final class PathNode {
+    /**
+     * The root directory, "/".
+     */
+    public static final PathNode ROOT = new PathNode(null, "");
+
+    private final PathNode mParent;
+    private final String mName;
+    private final int mDepth;
+    private WeakHashMap<String, WeakReference<PathNode>> mChildren;
+    //built on first use, both are immutable so a race only builds them twice
+    private String mPath;
+    private File mFile;
+
+    private PathNode(PathNode parent, String name) {
+        mParent = parent;
+        mName = name;
+        mDepth = parent == null ? 0 : parent.mDepth + 1;
+    }
+
+    /**
+     * @param path a full path, empty parts, "." and ".." are resolved
+     * @return the interned node of the path
+     */
+    public static PathNode get(String path) {
+        PathNode node = ROOT;
+        int start = 0;
+        int length = path.length();
+
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0)
+                end = length;
+
+            if (end > start) {
+                String name = path.substring(start, end);
+
+                if (name.equals(".."))
+                    node = node.mParent != null ? node.mParent : node;
+                else if (!name.equals("."))
+                    node = node.child(name);
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * @param name the name of an entry of this directory
+     * @return the interned node of the entry
+     */
+    public synchronized PathNode child(String name) {
+        if (mChildren == null)
+            mChildren = new WeakHashMap<String, WeakReference<PathNode>>();
+
+        WeakReference<PathNode> ref = mChildren.get(name);
+        PathNode child = ref == null ? null : ref.get();
+
+        if (child == null) {
+            child = new PathNode(this, name);
+            //the key is the name held by the child, so the entry goes away with it
+            mChildren.put(child.mName, new WeakReference<PathNode>(child));
+        }
+        return child;
+    }
+
+    /**
+     * @return the parent directory, null for the root
+     */
+    public PathNode getParent() {
+        return mParent;
+    }
+
+    /**
+     * @return the last part of the path, an empty string for the root
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the number of directories above this node, 0 for the root
+     */
+    public int getDepth() {
+        return mDepth;
+    }
+
+    public boolean isRoot() {
+        return mParent == null;
+    }
+
+    /**
+     * @return the full path, without a trailing / except for the root
+     */
+    public String getPath() {
+        String path = mPath;
+
+        if (path == null) {
+            if (mParent == null)
+                path = "/";
+            else if (mParent.mParent == null)
+                path = "/" + mName;
+            else
+                path = mParent.getPath() + "/" + mName;
+
+            mPath = path;
+        }
+        return path;
+    }
+
+    /**
+     * @return the File of this path
+     */
+    public File getFile() {
+        File file = mFile;
+
+        if (file == null) {
+            file = new File(getPath());
+            mFile = file;
+        }
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return getPath();
+    }
+}
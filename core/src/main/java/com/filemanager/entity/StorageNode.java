@@ -0,0 +1,164 @@
+package com.filemanager.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One directory of a storage scan, the building block of a treemap. Each node
+ * keeps the size, modification time and type of the files directly inside it
+ * in plain arrays, and the sub directories as child nodes, so a whole scanned
+ * tree is compact and any aggregate can be computed from it without touching
+ * the disk again.
+ * <br>
+ * <br>
+ * A node is filled in by the scanner and read only afterwards. The totals are
+ * computed by {@link #summarize()} once the whole tree is scanned.
+ */
+public class StorageNode {
+    private final String mName;
+    private final long mModified;
+    private final long mScannedAt;
+    private final long[] mFileSizes;
+    private final long[] mFileTimes;
+    private final byte[] mFileTypes;
+    private final StorageNode[] mSlots;
+    private List<StorageNode> mChildren;
+    private long mSize;
+    private int mFileCount;
+
+    /**
+     * @param name      the name of the directory, the full path for the root of a scan
+     * @param modified  the modification time of the directory when it was listed
+     * @param scannedAt the time the directory was listed
+     * @param sizes     the size of each file directly in the directory
+     * @param times     the modification time of each file
+     * @param types     the FileClassifier type code of each file
+     * @param children  one slot per sub directory, filled in by the scanner as the
+     *                  sub directories are done. Slots left null are skipped.
+     */
+    public StorageNode(String name, long modified, long scannedAt, long[] sizes, long[] times,
+                       byte[] types, StorageNode[] children) {
+        mName = name;
+        mModified = modified;
+        mScannedAt = scannedAt;
+        mFileSizes = sizes;
+        mFileTimes = times;
+        mFileTypes = types;
+        mSlots = children;
+    }
+
+    /**
+     * Computes the totals of this node and every node below it.
+     */
+    public void summarize() {
+        ArrayList<StorageNode> children = new ArrayList<StorageNode>(mSlots.length);
+        long size = 0;
+        int count = mFileSizes.length;
+
+        for (long fileSize : mFileSizes)
+            size += fileSize;
+
+        for (StorageNode child : mSlots) {
+            if (child == null)
+                continue;
+
+            child.summarize();
+            children.add(child);
+            size += child.mSize;
+            count += child.mFileCount;
+        }
+
+        mChildren = Collections.unmodifiableList(children);
+        mSize = size;
+        mFileCount = count;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the modification time of the directory when it was scanned
+     */
+    public long getModified() {
+        return mModified;
+    }
+
+    /**
+     * @return the time the directory was listed
+     */
+    public long getScannedAt() {
+        return mScannedAt;
+    }
+
+    /**
+     * @return the sub directories
+     */
+    public List<StorageNode> getChildren() {
+        return mChildren;
+    }
+
+    /**
+     * @param name the name of a sub directory
+     * @return the node of the sub directory, null if there is none
+     */
+    public StorageNode getChild(String name) {
+        for (StorageNode child : mSlots) {
+            if (child != null && child.mName.equals(name))
+                return child;
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of bytes in this directory and all directories below it
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of files in this directory and all directories below it
+     */
+    public int getFileCount() {
+        return mFileCount;
+    }
+
+    /**
+     * @return the number of files directly in this directory
+     */
+    public int getOwnFileCount() {
+        return mFileSizes.length;
+    }
+
+    public long getFileSize(int index) {
+        return mFileSizes[index];
+    }
+
+    public long getFileModified(int index) {
+        return mFileTimes[index];
+    }
+
+    public int getFileType(int index) {
+        return mFileTypes[index];
+    }
+
+    /**
+     * The file arrays are never changed once scanned, a refresh hands them on to
+     * the node of the same directory when it did not change.
+     *
+     * @return the size of each file directly in this directory
+     */
+    public long[] getFileSizes() {
+        return mFileSizes;
+    }
+
+    public long[] getFileTimes() {
+        return mFileTimes;
+    }
+
+    public byte[] getFileTypes() {
+        return mFileTypes;
+    }
+}
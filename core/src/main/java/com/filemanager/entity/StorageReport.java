@@ -0,0 +1,197 @@
+package com.filemanager.entity;
+
+import com.filemanager.FileClassifier;
+
+/**
+ * What is using the space of a directory tree: the bytes and number of files
+ * per kind of file, per age and per size, plus the scanned tree itself, whose
+ * top level directories and their children can be drawn as a treemap.
+ * <br>
+ * <br>
+ * All numbers are computed from the tree in memory, no file is looked at again.
+ */
+public class StorageReport {
+    public static final int CATEGORY_IMAGE = 0;
+    public static final int CATEGORY_VIDEO = 1;
+    public static final int CATEGORY_AUDIO = 2;
+    public static final int CATEGORY_DOCUMENT = 3;
+    public static final int CATEGORY_ARCHIVE = 4;
+    public static final int CATEGORY_APPLICATION = 5;
+    public static final int CATEGORY_OTHER = 6;
+    public static final int CATEGORY_COUNT = 7;
+
+    public static final int AGE_WEEK = 0;
+    public static final int AGE_MONTH = 1;
+    public static final int AGE_YEAR = 2;
+    public static final int AGE_OLDER = 3;
+    public static final int AGE_COUNT = 4;
+
+    //each size bucket holds files up to 16 times larger than the one before, starting below 4 KB
+    public static final int SIZE_BUCKETS = 6;
+    private static final long SMALLEST_BUCKET = 4 * 1024;
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private final StorageNode mRoot;
+    private final long mTime;
+    private final long[] mCategoryBytes = new long[CATEGORY_COUNT];
+    private final int[] mCategoryFiles = new int[CATEGORY_COUNT];
+    private final long[] mAgeBytes = new long[AGE_COUNT];
+    private final int[] mAgeFiles = new int[AGE_COUNT];
+    private final long[] mSizeBytes = new long[SIZE_BUCKETS];
+    private final int[] mSizeFiles = new int[SIZE_BUCKETS];
+
+    /**
+     * Sums up a scanned tree.
+     *
+     * @param root a completely scanned tree
+     * @param time the time the ages of files are measured from
+     */
+    public StorageReport(StorageNode root, long time) {
+        mRoot = root;
+        mTime = time;
+
+        root.summarize();
+        add_files(root);
+    }
+
+    /**
+     * @return the root of the scanned tree. Its children are the top level folders.
+     */
+    public StorageNode getRoot() {
+        return mRoot;
+    }
+
+    /**
+     * @return the time the report was made
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    public long getTotalBytes() {
+        return mRoot.getSize();
+    }
+
+    public int getTotalFiles() {
+        return mRoot.getFileCount();
+    }
+
+    /**
+     * @param category one of the CATEGORY_ constants
+     * @return the bytes used by files of the category
+     */
+    public long getCategoryBytes(int category) {
+        return mCategoryBytes[category];
+    }
+
+    public int getCategoryFiles(int category) {
+        return mCategoryFiles[category];
+    }
+
+    /**
+     * @param age one of the AGE_ constants, by time since last modification
+     * @return the bytes used by files of that age
+     */
+    public long getAgeBytes(int age) {
+        return mAgeBytes[age];
+    }
+
+    public int getAgeFiles(int age) {
+        return mAgeFiles[age];
+    }
+
+    /**
+     * @param bucket a size bucket, 0 to SIZE_BUCKETS - 1
+     * @return the bytes used by files of the bucket
+     */
+    public long getSizeBytes(int bucket) {
+        return mSizeBytes[bucket];
+    }
+
+    public int getSizeFiles(int bucket) {
+        return mSizeFiles[bucket];
+    }
+
+    /**
+     * @param bucket a size bucket
+     * @return the size files of the bucket stay below, Long.MAX_VALUE for the last one
+     */
+    public static long getSizeLimit(int bucket) {
+        return bucket == SIZE_BUCKETS - 1 ? Long.MAX_VALUE : SMALLEST_BUCKET << (4 * bucket);
+    }
+
+    /**
+     * @param type a FileClassifier type code
+     * @return the CATEGORY_ constant the type is counted in
+     */
+    public static int categoryOf(int type) {
+        switch (type) {
+            case FileClassifier.TYPE_IMAGE:
+                return CATEGORY_IMAGE;
+            case FileClassifier.TYPE_VIDEO:
+                return CATEGORY_VIDEO;
+            case FileClassifier.TYPE_AUDIO:
+                return CATEGORY_AUDIO;
+            case FileClassifier.TYPE_PDF:
+            case FileClassifier.TYPE_WORD:
+            case FileClassifier.TYPE_EXCEL:
+            case FileClassifier.TYPE_PPT:
+            case FileClassifier.TYPE_HTML:
+            case FileClassifier.TYPE_XML:
+                return CATEGORY_DOCUMENT;
+            case FileClassifier.TYPE_ARCHIVE:
+                return CATEGORY_ARCHIVE;
+            case FileClassifier.TYPE_APK:
+            case FileClassifier.TYPE_JAR:
+                return CATEGORY_APPLICATION;
+            default:
+                return CATEGORY_OTHER;
+        }
+    }
+
+    private void add_files(StorageNode node) {
+        long[] sizes = node.getFileSizes();
+        long[] times = node.getFileTimes();
+        byte[] types = node.getFileTypes();
+
+        for (int i = 0; i < sizes.length; i++) {
+            long size = sizes[i];
+            int category = categoryOf(types[i]);
+            int age = age_of(times[i]);
+            int bucket = bucket_of(size);
+
+            mCategoryBytes[category] += size;
+            mCategoryFiles[category]++;
+            mAgeBytes[age] += size;
+            mAgeFiles[age]++;
+            mSizeBytes[bucket] += size;
+            mSizeFiles[bucket]++;
+        }
+
+        for (StorageNode child : node.getChildren())
+            add_files(child);
+    }
+
+    private int age_of(long modified) {
+        long age = mTime - modified;
+
+        if (age < 7 * DAY)
+            return AGE_WEEK;
+        if (age < 30 * DAY)
+            return AGE_MONTH;
+        if (age < 365 * DAY)
+            return AGE_YEAR;
+
+        return AGE_OLDER;
+    }
+
+    private static int bucket_of(long size) {
+        int bucket = 0;
+
+        while (bucket < SIZE_BUCKETS - 1 && size >= getSizeLimit(bucket))
+            bucket++;
+
+        return bucket;
+    }
+}
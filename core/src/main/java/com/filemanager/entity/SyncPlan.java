@@ -0,0 +1,145 @@
+package com.filemanager.entity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The list of changes needed to make a target directory tree match a source
+ * tree. A plan is computed without changing anything, so it can be shown to
+ * the user as a dry run before it is executed.
+ */
+public class SyncPlan {
+    public static final int ACTION_MKDIR = 0;
+    public static final int ACTION_COPY = 1;
+    public static final int ACTION_UPDATE = 2;
+    public static final int ACTION_TOUCH = 3;
+    public static final int ACTION_DELETE = 4;
+
+    private final String mSource;
+    private final String mTarget;
+    private final ArrayList<Action> mActions = new ArrayList<Action>();
+    private long mBytesToCopy = 0;
+    private int mUnchanged = 0;
+
+    /**
+     * One change of the plan.
+     */
+    public static class Action {
+        private final int mType;
+        private final String mPath;
+        private final long mSize;
+
+        public Action(int type, String path, long size) {
+            mType = type;
+            mPath = path;
+            mSize = size;
+        }
+
+        /**
+         * @return one of the ACTION_ constants of SyncPlan
+         */
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * @return the path relative to the source and target roots, without a leading /
+         */
+        public String getPath() {
+            return mPath;
+        }
+
+        /**
+         * @return the number of bytes to copy, 0 for anything but a copy or update
+         */
+        public long getSize() {
+            return mSize;
+        }
+
+        @Override
+        public String toString() {
+            switch (mType) {
+                case ACTION_MKDIR:
+                    return "mkdir  " + mPath;
+                case ACTION_COPY:
+                    return "copy   " + mPath;
+                case ACTION_UPDATE:
+                    return "update " + mPath;
+                case ACTION_TOUCH:
+                    return "touch  " + mPath;
+                default:
+                    return "delete " + mPath;
+            }
+        }
+    }
+
+    public SyncPlan(String source, String target) {
+        mSource = source;
+        mTarget = target;
+    }
+
+    public void add(int type, String path, long size) {
+        mActions.add(new Action(type, path, size));
+
+        if (type == ACTION_COPY || type == ACTION_UPDATE)
+            mBytesToCopy += size;
+    }
+
+    /**
+     * Counts a file that is the same on both sides.
+     */
+    public void addUnchanged() {
+        mUnchanged++;
+    }
+
+    public String getSource() {
+        return mSource;
+    }
+
+    public String getTarget() {
+        return mTarget;
+    }
+
+    /**
+     * @return the changes in the order they have to be executed
+     */
+    public List<Action> getActions() {
+        return mActions;
+    }
+
+    /**
+     * @return the number of bytes the plan will copy
+     */
+    public long getBytesToCopy() {
+        return mBytesToCopy;
+    }
+
+    /**
+     * @return the number of files that are already up to date
+     */
+    public int getUnchanged() {
+        return mUnchanged;
+    }
+
+    /**
+     * @return true if the target already matches the source
+     */
+    public boolean isEmpty() {
+        return mActions.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+
+        out.append(mSource).append(" -> ").append(mTarget).append(": ")
+                .append(mActions.size()).append(" changes, ")
+                .append(mBytesToCopy).append(" bytes to copy, ")
+                .append(mUnchanged).append(" unchanged\n");
+
+        for (Action action : mActions)
+            out.append(action).append('\n');
+
+        return out.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package com.filemanager;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Serves a temporary directory on localhost and checks the responses to ranges,
+ * to clients over the limit and to paths that must not be served.
+ */
+public class ShareServerTest {
+    private File mDir;
+    private File mOutside;
+    private FileManager mFileMang;
+    private ShareServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("share", "");
+        mDir.delete();
+        mDir.mkdir();
+        mOutside = File.createTempFile("outside", ".txt");
+
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) i;
+
+        write(new File(mDir, "data.bin"), data);
+        write(new File(mDir, ".secret"), "hidden".getBytes("UTF-8"));
+        write(mOutside, "outside".getBytes("UTF-8"));
+
+        mFileMang = new FileManager();
+        mServer = new ShareServer(mFileMang, mDir.getPath(), 1);
+        mServer.start(0);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+        for (File file : mDir.listFiles())
+            file.delete();
+        mDir.delete();
+        mOutside.delete();
+    }
+
+    @Test
+    public void rangeReturnsThePart() throws IOException {
+        String response = get("/data.bin", "bytes=10-19");
+
+        assertTrue(response, response.startsWith("HTTP/1.1 206 "));
+        assertTrue(response, response.contains("Content-Range: bytes 10-19/1000\r\n"));
+        assertTrue(response, response.contains("Content-Length: 10\r\n"));
+
+        String body = response.substring(response.indexOf("\r\n\r\n") + 4);
+        assertEquals(10, body.length());
+        assertEquals(10, body.charAt(0));
+        assertEquals(19, body.charAt(9));
+    }
+
+    @Test
+    public void rangePastTheEndIsUnsatisfiable() throws IOException {
+        String response = get("/data.bin", "bytes=1000-");
+
+        assertTrue(response, response.startsWith("HTTP/1.1 416 "));
+        assertTrue(response, response.contains("Content-Range: bytes */1000\r\n"));
+    }
+
+    @Test
+    public void clientOverTheLimitGets503() throws Exception {
+        Socket idle = new Socket("127.0.0.1", mServer.getPort());
+
+        try {
+            //let the server take the first connection before the second arrives
+            Thread.sleep(200);
+            assertTrue(get("/data.bin", null).startsWith("HTTP/1.1 503 "));
+        } finally {
+            idle.close();
+        }
+    }
+
+    @Test
+    public void hiddenFileIsOnlyServedWhenShown() throws IOException {
+        assertTrue(get("/.secret", null).startsWith("HTTP/1.1 404 "));
+
+        mFileMang.setShowHiddenFiles(true);
+        assertTrue(get("/.secret", null).startsWith("HTTP/1.1 200 "));
+    }
+
+    @Test
+    public void linkOutOfTheRootIsNotServed() throws Exception {
+        File link = new File(mDir, "link.txt");
+        Process ln = Runtime.getRuntime().exec(new String[]{"ln", "-s", mOutside.getPath(), link.getPath()});
+        Assume.assumeTrue(ln.waitFor() == 0);
+
+        assertTrue(get("/link.txt", null).startsWith("HTTP/1.1 404 "));
+    }
+
+    /* the whole response to a GET, read as ISO-8859-1 so every byte is one char */
+    private String get(String path, String range) throws IOException {
+        Socket socket = new Socket("127.0.0.1", mServer.getPort());
+
+        try {
+            socket.setSoTimeout(5000);
+            String request = "GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n" +
+                    (range == null ? "" : "Range: " + range + "\r\n") + "\r\n";
+
+            OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes("ISO-8859-1"));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+
+            while ((read = in.read(buffer)) != -1)
+                response.write(buffer, 0, read);
+
+            return new String(response.toByteArray(), "ISO-8859-1");
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
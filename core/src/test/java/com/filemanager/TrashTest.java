@@ -0,0 +1,94 @@
+package com.filemanager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Deletes and undoes deletes in a {@link MemoryFileSystem}, on a scheduler with
+ * idle workers, so a purge would start as soon as it is queued.
+ */
+public class TrashTest {
+    private MemoryFileSystem mFileSystem;
+    private JobScheduler mScheduler;
+    private Trash mTrash;
+
+    @Before
+    public void setUp() throws IOException {
+        mFileSystem = new MemoryFileSystem();
+        mFileSystem.mkdirs("/data/photos");
+        mFileSystem.openWrite("/data/photos/a.jpg").close();
+        mFileSystem.openWrite("/data/notes.txt").close();
+
+        mScheduler = new JobScheduler(2, 1);
+        mTrash = new Trash(mFileSystem, mScheduler, 2);
+    }
+
+    @After
+    public void tearDown() {
+        mScheduler.shutdown();
+    }
+
+    @Test
+    public void undoWithinGracePeriod() throws InterruptedException {
+        Trash.Deletion deletion = mTrash.delete(Arrays.asList("/data/photos"));
+
+        assertNull(mFileSystem.stat("/data/photos"));
+        //well after an idle scheduler would have started the purge
+        Thread.sleep(200);
+
+        List<String> failed = deletion.undo();
+        assertNotNull(failed);
+        assertTrue(failed.isEmpty());
+        assertNotNull(mFileSystem.stat("/data/photos/a.jpg"));
+
+        //the purge never ran, but it is over
+        deletion.getPurge().await();
+        assertEquals(JobScheduler.STATE_CANCELLED, deletion.getPurge().getState());
+    }
+
+    @Test
+    public void purgeAfterGracePeriod() throws InterruptedException {
+        mTrash.setGracePeriod(50);
+        Trash.Deletion deletion = mTrash.delete(Arrays.asList("/data/photos"));
+
+        deletion.getPurge().await();
+
+        assertEquals(JobScheduler.STATE_DONE, deletion.getPurge().getState());
+        assertEquals(0, mFileSystem.list("/data/.trash").length);
+        assertNull(deletion.undo());
+    }
+
+    @Test
+    public void nextDeleteQueuesThePurge() throws InterruptedException {
+        Trash.Deletion first = mTrash.delete(Arrays.asList("/data/photos"));
+        Trash.Deletion second = mTrash.delete(Arrays.asList("/data/notes.txt"));
+
+        first.getPurge().await();
+
+        assertNull(first.undo());
+        assertTrue(second.undo().isEmpty());
+        assertNotNull(mFileSystem.stat("/data/notes.txt"));
+    }
+
+    @Test
+    public void commitQueuesThePurge() throws InterruptedException {
+        Trash.Deletion deletion = mTrash.delete(Arrays.asList("/data/notes.txt"));
+
+        deletion.commit();
+        deletion.getPurge().await();
+
+        assertNull(deletion.undo());
+        assertNull(mFileSystem.stat("/data/notes.txt"));
+        assertTrue(deletion.getFailed().isEmpty());
+    }
+}
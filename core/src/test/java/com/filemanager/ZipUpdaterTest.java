@@ -0,0 +1,123 @@
+package com.filemanager;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Updates a small archive and checks that it still opens, also after an add
+ * that failed half way.
+ */
+public class ZipUpdaterTest {
+    private File mDir;
+    private File mZip;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("zip", "");
+        mDir.delete();
+        mDir.mkdir();
+
+        mZip = new File(mDir, "test.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mZip));
+        out.putNextEntry(new ZipEntry("a.txt"));
+        out.write("first".getBytes("UTF-8"));
+        out.closeEntry();
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : mDir.listFiles())
+            file.delete();
+        mDir.delete();
+    }
+
+    @Test
+    public void addKeepsEntries() throws IOException {
+        File source = write("b.txt", "second");
+        ZipUpdater updater = new ZipUpdater(mZip);
+
+        updater.add("b.txt", source);
+        assertTrue(updater.commit() > source.length());
+
+        assertEquals("first", read("a.txt"));
+        assertEquals("second", read("b.txt"));
+    }
+
+    @Test
+    public void missingSourceLeavesArchive() throws IOException {
+        ZipUpdater updater = new ZipUpdater(mZip);
+
+        updater.add("b.txt", new File(mDir, "missing.txt"));
+        try {
+            updater.commit();
+            fail("the commit should fail");
+        } catch (IOException e) {
+            //expected
+        }
+
+        assertEquals("first", read("a.txt"));
+        assertEquals(Arrays.asList("a.txt"), updater.getNames());
+    }
+
+    @Test
+    public void failedReadRestoresDirectory() throws IOException {
+        //a file that can be opened, but not read
+        File broken = new File("/proc/self/mem");
+        Assume.assumeTrue(broken.isFile() && broken.canRead());
+
+        long length = mZip.length();
+        ZipUpdater updater = new ZipUpdater(mZip);
+
+        updater.add("b.txt", write("b.txt", "second"));
+        updater.add("c.txt", broken);
+        try {
+            updater.commit();
+            fail("the commit should fail");
+        } catch (IOException e) {
+            //expected
+        }
+
+        assertEquals(length, mZip.length());
+        assertEquals("first", read("a.txt"));
+        assertEquals(Arrays.asList("a.txt"), updater.getNames());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(mDir, name);
+        FileOutputStream out = new FileOutputStream(file);
+
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+
+    private String read(String name) throws IOException {
+        ZipFile zip = new ZipFile(mZip);
+
+        try {
+            InputStream in = zip.getInputStream(zip.getEntry(name));
+            byte[] data = new byte[64];
+            int length = in.read(data);
+
+            return new String(data, 0, length, "UTF-8");
+        } finally {
+            zip.close();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.filemanager;
+
+import android.util.Log;
+
+/**
+ * Forwards the log of the core classes to the Android log.
+ */
+public class AndroidLogger extends Logger {
+
+    @Override
+    public void log(int level, String tag, String message) {
+        Log.println(level, tag, message == null ? "" : message);
+    }
+}
@@ -10,15 +10,19 @@ import android.os.Message;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.filemanager.entity.FileEntity;
+import com.filemanager.entity.FileListing;
+import com.filemanager.entity.PathNode;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -35,8 +39,11 @@ import java.util.ArrayList;
  *
  */
 public class EventHandler {
+    private static final String SNAPSHOT_FILE = "home.snapshot";
+
     private final Context mContext;
     private final FileManager mFileMang;
+    private final ListingService mListingService;
     private ThumbnailCreator mThumbnail;
     private TableRow mDelegate;
 
@@ -44,11 +51,25 @@ public class EventHandler {
     private boolean thumbnail_flag = true;
     private int mColor = Color.WHITE;
 
-    //the list used to feed info into the array adapter and when multi-select is on
-    private ArrayList<FileEntity> mDataSource, mMultiSelectData;
+    //the listing used to feed info into the adapter, frozen and owned without a copy
+    private FileListing mDataSource = FileListing.EMPTY;
+    //the node of every row of mDataSource, made on its first bind, and the
+    //directory they are in. Held here so they outlive the weak interning of PathNode.
+    private PathNode[] mNodes = new PathNode[0];
+    private PathNode mNodesDir;
+    //the files and folders selected when multi-select is on
+    private final SelectionModel mSelection = new SelectionModel();
     private TextView mPathLabel;
     private TextView mInfoLabel;
-    ArrayList<String> arrayFilename = new ArrayList<String>();
+
+    //entries of the current directory that are still being loaded, -1 until they are counted
+    private int mRemaining = 0;
+    //incremented on every navigation, results of older requests are dropped
+    private int mListingGeneration = 0;
+    private final Handler mListingHandler = new Handler();
+    //the listing of the home directory is saved here and shown first on the next start
+    private final File mSnapshotFile;
+    private final String mHomeDir;
 
 
     /**
@@ -61,18 +82,20 @@ public class EventHandler {
     public EventHandler(Context context, final FileManager manager) {
         mContext = context;
         mFileMang = manager;
+        mListingService = new ListingService(manager);
+        mSnapshotFile = new File(context.getCacheDir(), SNAPSHOT_FILE);
+        mHomeDir = mFileMang.enterHomeDir(Environment.getExternalStorageDirectory().getPath());
 
-        mDataSource = new ArrayList<FileEntity>(mFileMang.setHomeDir
-                (Environment.getExternalStorageDirectory().getPath()));
-
-        setFileArray();
-
-    }
+        /* the home directory as it was last shown is on screen with the first
+         * frame, it is replaced once the directory was listed again
+         */
+        ListingSnapshot snapshot = ListingSnapshot.load(mSnapshotFile);
 
-    private void setFileArray() {
-        arrayFilename.clear();
-        for (FileEntity fileEntity : mDataSource) {
-            arrayFilename.add(fileEntity.getFileName());
+        if (snapshot != null && snapshot.getPath().equals(mHomeDir)) {
+            set_listing(snapshot.getListing());
+            load_current_dir(false, true);
+        } else {
+            load_current_dir(false, false);
         }
     }
 
@@ -87,9 +110,12 @@ public class EventHandler {
     public EventHandler(Context context, final FileManager manager, String location) {
         mContext = context;
         mFileMang = manager;
+        mListingService = new ListingService(manager);
+        mSnapshotFile = new File(context.getCacheDir(), SNAPSHOT_FILE);
+        mHomeDir = PathNode.get(Environment.getExternalStorageDirectory().getPath()).getPath();
 
-        mDataSource = new ArrayList<FileEntity>(mFileMang.getNextDir(location, true));
-        setFileArray();
+        mFileMang.enterDir(location, true);
+        load_current_dir(false, false);
     }
 
     /**
@@ -151,26 +177,33 @@ public class EventHandler {
      * @return returns true if the user is holding multiple objects (multi-select)
      */
     public boolean hasMultiSelectData() {
-        return (mMultiSelectData != null && mMultiSelectData.size() > 0);
+        return mSelection.size() > 0;
+    }
+
+    /**
+     * @return the full paths of the files and folders selected in multi-select mode
+     */
+    public ArrayList<String> getMultiSelectData() {
+        return mSelection.getSelectedPaths();
     }
 
    /**
-     * this will stop our background thread that creates thumbnail icons
-     * if the thread is running. this should be stopped when ever
+     * this will stop the background job that creates thumbnail icons
+     * if it is running. this should be stopped when ever
      * we leave the folder the image files are in.
      */
     public void stopThumbnailThread() {
         if (mThumbnail != null) {
-            mThumbnail.setCancelThumbnails(true);
+            mThumbnail.cancel();
             mThumbnail = null;
         }
     }
 
     /**
-     * will return the data in the ArrayList that holds the dir contents.
+     * will return the data in the listing that holds the dir contents.
      *
-     * @param position the indext of the arraylist holding the dir content
-     * @return the data in the arraylist at position (position)
+     * @param position the index of the listing holding the dir content
+     * @return the data in the listing at position (position)
      */
     public FileEntity getData(int position) {
 
@@ -184,18 +217,185 @@ public class EventHandler {
      * called to update the file contents as the user navigates there
      * phones file system.
      *
-     * @param content an ArrayList of the file/folders in the current directory.
+     * @param content the listing of the file/folders in the current directory.
      */
-    public void updateDirectory(ArrayList<FileEntity> content) {
-        if (!mDataSource.isEmpty())
-            mDataSource.clear();
+    public void updateDirectory(FileListing content) {
+        set_listing(content);
 
-        for (FileEntity data : content)
-            mDataSource.add(data);
+        mDelegate.notifyDataSetChanged();
+    }
 
-        setFileArray();
+    /**
+     * Moves into a directory and lists it in the background. The path is
+     * changed right away, the content is shown page by page as it is loaded.
+     * If the directory turns out to be unreadable the user is told and the
+     * path goes back to where it was. Navigating again before the listing is
+     * done cancels it.
+     *
+     * @param path       the name of a sub directory, or a full path
+     * @param isFullPath true if path is a full path
+     */
+    public void openDirectory(String path, boolean isFullPath) {
+        mFileMang.enterDir(path, isFullPath);
+        load_current_dir(true, false);
+    }
 
-        mDelegate.notifyDataSetChanged();
+    /**
+     * Moves back to the previous directory and lists it in the background.
+     */
+    public void openPreviousDir() {
+        mFileMang.leaveDir();
+        load_current_dir(false, false);
+    }
+
+    /**
+     * Stops the background listing. This should be called when the activity
+     * is destroyed.
+     */
+    public void stopListing() {
+        mListingGeneration++;
+        mListingService.shutdown();
+    }
+
+    /*
+     * clears the list and asks the listing service for the current directory.
+     * Results are applied on the UI thread, and only if the user has not
+     * navigated somewhere else in the meantime. To revalidate what is shown,
+     * the list is not cleared and only the complete listing replaces it.
+     */
+    private void load_current_dir(final boolean leaveOnError, final boolean revalidate) {
+        final int generation = ++mListingGeneration;
+        //the thumbnails of the old listing are not wanted anymore
+        stopThumbnailThread();
+
+        if (!revalidate) {
+            set_listing(null);
+            mRemaining = -1;
+            if (mDelegate != null)
+                mDelegate.notifyDataSetChanged();
+        }
+
+        mListingService.list(mFileMang.getCurrentDir(), new ListingService.Callback() {
+            public void onPage(String path, final FileListing listing, final int remaining) {
+                if (revalidate && remaining > 0)
+                    return;
+                if (remaining == 0 && path.equals(mHomeDir))
+                    save_snapshot(path, listing);
+
+                mListingHandler.post(new Runnable() {
+                    public void run() {
+                        if (generation != mListingGeneration)
+                            return;
+
+                        set_listing(listing);
+                        mRemaining = remaining;
+                        if (mDelegate != null)
+                            mDelegate.notifyDataSetChanged();
+                    }
+                });
+            }
+
+            public void onError(String path) {
+                mListingHandler.post(new Runnable() {
+                    public void run() {
+                        if (generation != mListingGeneration)
+                            return;
+
+                        Toast.makeText(mContext, "Can't read folder due to permissions",
+                                Toast.LENGTH_SHORT).show();
+
+                        if (leaveOnError) {
+                            mFileMang.leaveDir();
+                            if (mPathLabel != null)
+                                mPathLabel.setText(mFileMang.getCurrentDir());
+                            load_current_dir(false, false);
+
+                        } else {
+                            if (revalidate)
+                                set_listing(null);
+                            mRemaining = 0;
+                            if (mDelegate != null)
+                                mDelegate.notifyDataSetChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /*
+     * saves a complete listing of the home directory for the next start, in the background
+     */
+    private void save_snapshot(final String path, final FileListing listing) {
+        mFileMang.getScheduler().submit(new JobScheduler.Job("Save " + SNAPSHOT_FILE,
+                JobScheduler.LANE_BACKGROUND, mSnapshotFile.getPath()) {
+            @Override
+            protected void run() throws IOException {
+                ListingSnapshot.save(mSnapshotFile, path, listing);
+            }
+        });
+    }
+
+    /*
+     * replaces the content shown in the list, null to show nothing. The
+     * listing is kept, not copied, and frozen if it was not already. The
+     * selections are remembered by name while the content changes.
+     */
+    private void set_listing(FileListing content) {
+        mSelection.unbind();
+
+        mDataSource = content == null ? FileListing.EMPTY : content.freeze();
+        bind_nodes();
+
+        mSelection.bind(mDataSource, mFileMang.getCurrentDir());
+    }
+
+    /*
+     * makes room for the nodes of a new listing. A later page of the same
+     * directory keeps the nodes already made, the old rows are found in the new
+     * listing in one pass since both are sorted the same way and it only grew.
+     */
+    private void bind_nodes() {
+        PathNode dir = mFileMang.getCurrentNode();
+        PathNode[] old = mNodes;
+        PathNode[] nodes = new PathNode[mDataSource.size()];
+
+        if (dir == mNodesDir && nodes.length >= old.length) {
+            int at = 0;
+
+            for (int i = 0; i < old.length && at < nodes.length; i++) {
+                if (old[i] == null)
+                    continue;
+
+                String name = old[i].getName();
+                int found = at;
+
+                while (found < nodes.length && !mDataSource.nameEquals(found, name))
+                    found++;
+
+                //not there anymore, it is made again if needed
+                if (found < nodes.length) {
+                    nodes[found] = old[i];
+                    at = found + 1;
+                }
+            }
+        }
+
+        mNodes = nodes;
+        mNodesDir = dir;
+    }
+
+    /*
+     * the node of a row, made once per listing
+     */
+    private PathNode node_at(int position) {
+        PathNode node = mNodes[position];
+
+        if (node == null) {
+            node = mNodesDir.child(mDataSource.getName(position));
+            mNodes[position] = node;
+        }
+        return node;
     }
 
     private static class ViewHolder {
@@ -215,37 +415,63 @@ public class EventHandler {
      *
      * @author Joe Berria
      */
-    public class TableRow extends ArrayAdapter<String> {
+    public class TableRow extends BaseAdapter {
         private final int KB = 1024;
         private final int MG = KB * KB;
         private final int GB = MG * KB;
         private String display_size;
-        private ArrayList<Integer> positions;
         private LinearLayout hidden_layout;
 
-        public TableRow() {
-            super(mContext, R.layout.tablerow, arrayFilename);
+        @Override
+        public int getCount() {
+            //one more row to show that the directory is still loading
+            return mRemaining != 0 ? mDataSource.size() + 1 : mDataSource.size();
         }
 
-        public void addMultiPosition(int index, String path) {
-            if (positions == null)
-                positions = new ArrayList<Integer>();
+        @Override
+        public Object getItem(int position) {
+            return position < mDataSource.size() ? mDataSource.getName(position) : null;
+        }
 
-            if (mMultiSelectData == null) {
-                positions.add(index);
-                add_multiSelect_file(path);
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
 
-            } else if (mMultiSelectData.contains(path)) {
-                if (positions.contains(index))
-                    positions.remove(new Integer(index));
+        /**
+         * Selects the row at index, or deselects it if it was selected.
+         *
+         * @param index the position of the row
+         */
+        public void addMultiPosition(int index) {
+            if (index < mDataSource.size())
+                mSelection.toggle(index);
 
-                mMultiSelectData.remove(path);
+            notifyDataSetChanged();
+        }
 
-            } else {
-                positions.add(index);
-                add_multiSelect_file(path);
-            }
+        /**
+         * Selects every row of the current directory.
+         */
+        public void selectAll() {
+            mSelection.selectAll();
+            notifyDataSetChanged();
+        }
 
+        /**
+         * Selects the rows of the current directory that are not selected
+         * and deselects the others.
+         */
+        public void invertSelection() {
+            mSelection.invert();
+            notifyDataSetChanged();
+        }
+
+        /**
+         * Selects every row between two positions, both included.
+         */
+        public void selectRange(int from, int to) {
+            mSelection.selectRange(from, to);
             notifyDataSetChanged();
         }
 
@@ -263,12 +489,8 @@ public class EventHandler {
             hidden_layout.setVisibility(LinearLayout.GONE);
             multi_select_flag = false;
 
-            if (positions != null && !positions.isEmpty())
-                positions.clear();
-
             if (clearData)
-                if (mMultiSelectData != null && !mMultiSelectData.isEmpty())
-                    mMultiSelectData.clear();
+                mSelection.clear();
 
             notifyDataSetChanged();
         }
@@ -289,13 +511,6 @@ public class EventHandler {
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
             final ViewHolder mViewHolder;
-            int num_items = 0;
-            String temp = mFileMang.getCurrentDir();
-            File file = new File(temp + "/" + mDataSource.get(position).getFileName());
-            String[] list = file.list();
-
-            if (list != null)
-                num_items = list.length;
 
             if (convertView == null) {
                 LayoutInflater inflater = (LayoutInflater) mContext.
@@ -315,7 +530,15 @@ public class EventHandler {
                 mViewHolder = (ViewHolder) convertView.getTag();
             }
 
-            if (positions != null && positions.contains(position))
+            if (position >= mDataSource.size())
+                return getLoadingView(mViewHolder, convertView);
+
+            int num_items = 0;
+            //the node is kept for the row, rebinding it builds no name, path or File
+            PathNode node = node_at(position);
+            File file = node.getFile();
+
+            if (multi_select_flag && mSelection.isSelected(position))
                 mViewHolder.mSelect.setVisibility(ImageView.VISIBLE);
             else
                 mViewHolder.mSelect.setVisibility(ImageView.GONE);
@@ -324,105 +547,97 @@ public class EventHandler {
             mViewHolder.bottomView.setTextColor(mColor);
 
             if (mThumbnail == null)
-                mThumbnail = new ThumbnailCreator(52, 52);
-
-            if (file != null && file.isFile()) {
-                String ext = file.toString();
-                String sub_ext = ext.substring(ext.lastIndexOf(".") + 1);
+                mThumbnail = new ThumbnailCreator(52, 52, mFileMang.getScheduler());
 
-    			/* This series of else if statements will determine which 
-    			 * icon is displayed 
+            if (mDataSource.isFile(position)) {
+    			/* The type code was computed once when the directory was
+    			 * listed, it determines which icon is displayed
     			 */
-                if (sub_ext.equalsIgnoreCase("pdf")) {
-                    mViewHolder.icon.setImageResource(R.drawable.pdf);
-
-                } else if (sub_ext.equalsIgnoreCase("mp3") ||
-                        sub_ext.equalsIgnoreCase("wma") ||
-                        sub_ext.equalsIgnoreCase("m4a") ||
-                        sub_ext.equalsIgnoreCase("m4p")) {
-
-                    mViewHolder.icon.setImageResource(R.drawable.music);
+                switch (mDataSource.getType(position)) {
+                    case FileClassifier.TYPE_PDF:
+                        mViewHolder.icon.setImageResource(R.drawable.pdf);
+                        break;
 
-                } else if (sub_ext.equalsIgnoreCase("png") ||
-                        sub_ext.equalsIgnoreCase("jpg") ||
-                        sub_ext.equalsIgnoreCase("jpeg") ||
-                        sub_ext.equalsIgnoreCase("gif") ||
-                        sub_ext.equalsIgnoreCase("tiff")) {
+                    case FileClassifier.TYPE_AUDIO:
+                        mViewHolder.icon.setImageResource(R.drawable.music);
+                        break;
 
-                    if (thumbnail_flag && file.length() != 0) {
-                        Bitmap thumb = mThumbnail.isBitmapCached(file.getPath());
+                    case FileClassifier.TYPE_IMAGE:
+                        if (thumbnail_flag && mDataSource.getSize(position) != 0) {
+                            Bitmap thumb = mThumbnail.isBitmapCached(file.getPath());
 
-                        if (thumb == null) {
-                            final Handler handle = new Handler(new Handler.Callback() {
-                                public boolean handleMessage(Message msg) {
-                                    notifyDataSetChanged();
+                            if (thumb == null) {
+                                final Handler handle = new Handler(new Handler.Callback() {
+                                    public boolean handleMessage(Message msg) {
+                                        notifyDataSetChanged();
 
-                                    return true;
-                                }
-                            });
+                                        return true;
+                                    }
+                                });
 
-                            mThumbnail.createNewThumbnail(mDataSource, mFileMang.getCurrentDir(), handle);
+                                mThumbnail.createNewThumbnail(mDataSource, mFileMang.getCurrentNode(), handle);
 
-                            if (!mThumbnail.isAlive())
-                                mThumbnail.start();
+                            } else {
+                                mViewHolder.icon.setImageBitmap(thumb);
+                            }
 
                         } else {
-                            mViewHolder.icon.setImageBitmap(thumb);
+                            mViewHolder.icon.setImageResource(R.drawable.image);
                         }
+                        break;
 
-                    } else {
-                        mViewHolder.icon.setImageResource(R.drawable.image);
-                    }
-
-                } else if (sub_ext.equalsIgnoreCase("zip") ||
-                        sub_ext.equalsIgnoreCase("gzip") ||
-                        sub_ext.equalsIgnoreCase("gz")) {
-
-                    mViewHolder.icon.setImageResource(R.drawable.zip);
+                    case FileClassifier.TYPE_ARCHIVE:
+                        mViewHolder.icon.setImageResource(R.drawable.zip);
+                        break;
 
-                } else if (sub_ext.equalsIgnoreCase("m4v") ||
-                        sub_ext.equalsIgnoreCase("wmv") ||
-                        sub_ext.equalsIgnoreCase("3gp") ||
-                        sub_ext.equalsIgnoreCase("mp4")) {
+                    case FileClassifier.TYPE_VIDEO:
+                        mViewHolder.icon.setImageResource(R.drawable.movies);
+                        break;
 
-                    mViewHolder.icon.setImageResource(R.drawable.movies);
+                    case FileClassifier.TYPE_WORD:
+                        mViewHolder.icon.setImageResource(R.drawable.word);
+                        break;
 
-                } else if (sub_ext.equalsIgnoreCase("doc") ||
-                        sub_ext.equalsIgnoreCase("docx")) {
+                    case FileClassifier.TYPE_EXCEL:
+                        mViewHolder.icon.setImageResource(R.drawable.excel);
+                        break;
 
-                    mViewHolder.icon.setImageResource(R.drawable.word);
+                    case FileClassifier.TYPE_PPT:
+                        mViewHolder.icon.setImageResource(R.drawable.ppt);
+                        break;
 
-                } else if (sub_ext.equalsIgnoreCase("xls") ||
-                        sub_ext.equalsIgnoreCase("xlsx")) {
+                    case FileClassifier.TYPE_HTML:
+                        mViewHolder.icon.setImageResource(R.drawable.html32);
+                        break;
 
-                    mViewHolder.icon.setImageResource(R.drawable.excel);
+                    case FileClassifier.TYPE_XML:
+                        mViewHolder.icon.setImageResource(R.drawable.xml32);
+                        break;
 
-                } else if (sub_ext.equalsIgnoreCase("ppt") ||
-                        sub_ext.equalsIgnoreCase("pptx")) {
+                    case FileClassifier.TYPE_CONFIG:
+                        mViewHolder.icon.setImageResource(R.drawable.config32);
+                        break;
 
-                    mViewHolder.icon.setImageResource(R.drawable.ppt);
+                    case FileClassifier.TYPE_APK:
+                        mViewHolder.icon.setImageResource(R.drawable.appicon);
+                        break;
 
-                } else if (sub_ext.equalsIgnoreCase("html")) {
-                    mViewHolder.icon.setImageResource(R.drawable.html32);
+                    case FileClassifier.TYPE_JAR:
+                        mViewHolder.icon.setImageResource(R.drawable.jar32);
+                        break;
 
-                } else if (sub_ext.equalsIgnoreCase("xml")) {
-                    mViewHolder.icon.setImageResource(R.drawable.xml32);
-
-                } else if (sub_ext.equalsIgnoreCase("conf")) {
-                    mViewHolder.icon.setImageResource(R.drawable.config32);
-
-                } else if (sub_ext.equalsIgnoreCase("apk")) {
-                    mViewHolder.icon.setImageResource(R.drawable.appicon);
+                    default:
+                        mViewHolder.icon.setImageResource(R.drawable.text);
+                        break;
+                }
 
-                } else if (sub_ext.equalsIgnoreCase("jar")) {
-                    mViewHolder.icon.setImageResource(R.drawable.jar32);
+            } else if (mDataSource.isDirectory(position)) {
+                String[] list = file.list();
 
-                } else {
-                    mViewHolder.icon.setImageResource(R.drawable.text);
-                }
+                if (list != null)
+                    num_items = list.length;
 
-            } else if (file != null && file.isDirectory()) {
-                if (file.canRead() && file.list().length > 0)
+                if (num_items > 0)
                     mViewHolder.icon.setImageResource(R.drawable.folder_full);
                 else
                     mViewHolder.icon.setImageResource(R.drawable.folder);
@@ -430,8 +645,8 @@ public class EventHandler {
 
             String permission = getFilePermissions(file);
 
-            if (file.isFile()) {
-                double size = file.length();
+            if (mDataSource.isFile(position)) {
+                double size = mDataSource.getSize(position);
                 if (size > GB)
                     display_size = String.format("%.2f Gb ", (double) size / GB);
                 else if (size < GB && size > MG)
@@ -441,21 +656,21 @@ public class EventHandler {
                 else
                     display_size = String.format("%.2f bytes ", (double) size);
 
-                if (file.isHidden())
+                if (mDataSource.isHidden(position))
                     mViewHolder.bottomView.setText("(hidden) | " + display_size + " | " + permission);
                 else
                     mViewHolder.bottomView.setText(display_size + " | " + permission);
 
             } else {
-                if (file.isHidden())
+                if (mDataSource.isHidden(position))
                     mViewHolder.bottomView.setText("(hidden) | " + num_items + " items | " + permission);
                 else
                     mViewHolder.bottomView.setText(num_items + " items | " + permission);
             }
 
-            mViewHolder.topView.setText(file.getName());
+            mViewHolder.topView.setText(node.getName());
 
-            if (mDataSource.get(position).isHighlighted())
+            if (mDataSource.isHighlighted(position))
                 mViewHolder.relativeBg.setBackgroundColor(mContext.getResources().getColor(R.color.darkBlue));
             else
                 mViewHolder.relativeBg.setBackgroundColor(mContext.getResources().getColor(R.color.black));
@@ -463,11 +678,18 @@ public class EventHandler {
             return convertView;
         }
 
-        private void add_multiSelect_file(String src) {
-            if (mMultiSelectData == null)
-                mMultiSelectData = new ArrayList<FileEntity>();
+        /*
+         * the last row while the directory is still loading
+         */
+        private View getLoadingView(ViewHolder holder, View convertView) {
+            holder.mSelect.setVisibility(ImageView.GONE);
+            holder.icon.setImageResource(R.drawable.more);
+            holder.topView.setTextColor(mColor);
+            holder.topView.setText(mRemaining > 0 ? "Loading " + mRemaining + " more..." : "Loading...");
+            holder.bottomView.setText("");
+            holder.relativeBg.setBackgroundColor(mContext.getResources().getColor(R.color.black));
 
-            mMultiSelectData.add(new FileEntity(src, false));
+            return convertView;
         }
     }
 }
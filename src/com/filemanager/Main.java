@@ -14,8 +14,6 @@ import android.widget.Toast;
 
 import com.filemanager.entity.FileEntity;
 
-import java.io.File;
-
 /**
  * This is the main activity. The activity that is presented to the user
  * as the application launches. This class is, and expected not to be, instantiated.
@@ -62,6 +60,10 @@ public final class Main extends ListActivity {
         int color = mSettings.getInt(PREFS_COLOR, -1);
         int sort = mSettings.getInt(PREFS_SORT, 3);
 
+        Logger.setLogger(new AndroidLogger());
+        //jobs on the SD card are limited separately from internal storage
+        JobScheduler.getDefault().addVolume(Environment.getExternalStorageDirectory().getPath());
+
         mFileMag = new FileManager();
         mFileMag.setShowHiddenFiles(hide);
         mFileMag.setSortType(sort);
@@ -95,6 +97,13 @@ public final class Main extends ListActivity {
         mHandler.setUpdateLabels(mPathLabel, mDetailLabel);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        mHandler.stopListing();
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -102,19 +111,36 @@ public final class Main extends ListActivity {
         outState.putString("location", mFileMag.getCurrentDir());
     }
 
+    /*
+     * StatFs can block on a busy or slow card, so it runs in the background
+     * and the label is set once the numbers are known.
+     */
     private void updateStorageLabel() {
-        long total, aval;
-        int kb = 1024;
+        final String path = Environment.getExternalStorageDirectory().getPath();
+
+        mFileMag.getScheduler().submit(new JobScheduler.Job("Storage label",
+                JobScheduler.LANE_BACKGROUND, path) {
+            @Override
+            protected void run() {
+                long total, aval;
+                int kb = 1024;
 
-        StatFs fs = new StatFs(Environment.
-                getExternalStorageDirectory().getPath());
+                StatFs fs = new StatFs(path);
 
-        total = fs.getBlockCount() * (fs.getBlockSize() / kb);
-        aval = fs.getAvailableBlocks() * (fs.getBlockSize() / kb);
+                total = (long) fs.getBlockCount() * (fs.getBlockSize() / kb);
+                aval = (long) fs.getAvailableBlocks() * (fs.getBlockSize() / kb);
 
-        mStorageLabel.setText(String.format("sdcard: Total %.2f GB " +
-                        "\t\tAvailable %.2f GB",
-                (double) total / (kb * kb), (double) aval / (kb * kb)));
+                final String label = String.format("sdcard: Total %.2f GB " +
+                                "\t\tAvailable %.2f GB",
+                        (double) total / (kb * kb), (double) aval / (kb * kb));
+
+                mStorageLabel.post(new Runnable() {
+                    public void run() {
+                        mStorageLabel.setText(label);
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -126,41 +152,34 @@ public final class Main extends ListActivity {
     @Override
     public void onListItemClick(ListView parent, View view, int position, long id) {
         final FileEntity item = (FileEntity) mHandler.getData(position);
-        boolean multiSelect = mHandler.isMultiSelected();
-        File file = new File(mFileMag.getCurrentDir() + "/" + item.getFileName());
-        String item_ext = null;
 
-        try {
-            item_ext = item.getFileName().substring(item.getFileName().lastIndexOf("."), item.getFileName().length());
+        //the row that shows the directory is still loading
+        if (item == null)
+            return;
 
-        } catch (IndexOutOfBoundsException e) {
-            item_ext = "";
-        }
+        boolean multiSelect = mHandler.isMultiSelected();
 
     	/*
     	 * If the user has multi-select on, we just need to record the file
     	 * not make an intent for it.
     	 */
         if (multiSelect) {
-            mTable.addMultiPosition(position, file.getPath());
+            mTable.addMultiPosition(position);
 
         } else {
-            if (file.isDirectory()) {
-                if (file.canRead()) {
-                    mHandler.stopThumbnailThread();
-                    mHandler.updateDirectory(mFileMag.getNextDir(item.getFileName(), false));
-                    mPathLabel.setText(mFileMag.getCurrentDir());
-		    		
-		    		/*set back button switch to true 
-		    		 * (this will be better implemented later)
-		    		 */
-                    if (!mUseBackKey)
-                        mUseBackKey = true;
-
-                } else {
-                    Toast.makeText(this, "Can't read folder due to permissions",
-                            Toast.LENGTH_SHORT).show();
-                }
+            if (item.getFileType() == FileClassifier.TYPE_DIRECTORY) {
+                /*the folder is listed in the background, if it can't be
+                 *read the EventHandler tells the user and goes back
+                 */
+                mHandler.stopThumbnailThread();
+                mHandler.openDirectory(item.getFileName(), false);
+                mPathLabel.setText(mFileMag.getCurrentDir());
+
+	    		/*set back button switch to true 
+	    		 * (this will be better implemented later)
+	    		 */
+                if (!mUseBackKey)
+                    mUseBackKey = true;
             }
 
         }
@@ -189,7 +208,7 @@ public final class Main extends ListActivity {
             } else {
                 //stop updating thumbnail icons if its running
                 mHandler.stopThumbnailThread();
-                mHandler.updateDirectory(mFileMag.getPreviousDir());
+                mHandler.openPreviousDir();
                 mPathLabel.setText(mFileMag.getCurrentDir());
             }
             return true;
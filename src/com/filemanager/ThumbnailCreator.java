@@ -3,107 +3,129 @@ package com.filemanager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Handler;
-import android.os.Message;
 
-import com.filemanager.entity.FileEntity;
+import com.filemanager.entity.FileListing;
+import com.filemanager.entity.PathNode;
 
-import java.lang.ref.SoftReference;
 import java.util.HashMap;
-import java.util.ArrayList;
 import java.io.File;
 
-public class ThumbnailCreator extends Thread {	
-	private int mWidth;
-	private int mHeight;
-	private SoftReference<Bitmap> mThumb;
-	private static HashMap<String, Bitmap> mCacheMap = null;
-	private ArrayList<FileEntity> mFiles;
-	private String mDir;
-	private Handler mHandler;
-	private boolean mStop = false;
-
-	public ThumbnailCreator(int width, int height) {
+/**
+ * Decodes the thumbnails of the images of a listing as one job in the background
+ * lane of the {@link JobScheduler}, so they never hold up a listing and are held
+ * up by the volume limits like any other work on the disk. A job is started for
+ * the listing shown and cancelled when another listing is shown or
+ * {@link #cancel()} is called, it stops before the next image.
+ */
+public class ThumbnailCreator {
+	private static final Metrics.Histogram DECODE_TIME = Metrics.getDefault().histogram("thumbnail.decode_time");
+	private static final Metrics.Counter CACHE_HITS = Metrics.getDefault().counter("thumbnail.cache_hits");
+	private static final Metrics.Counter CACHE_MISSES = Metrics.getDefault().counter("thumbnail.cache_misses");
+
+	private static final HashMap<String, Bitmap> mCacheMap = new HashMap<String, Bitmap>();
+
+	private final int mWidth;
+	private final int mHeight;
+	private final JobScheduler mScheduler;
+	private FileListing mFiles;
+	private JobScheduler.Job mJob;
+
+	public ThumbnailCreator(int width, int height, JobScheduler scheduler) {
 		mHeight = height;
 		mWidth = width;
-		
-		if(mCacheMap == null)
-			mCacheMap = new HashMap<String, Bitmap>();
+		mScheduler = scheduler;
 	}
-	
+
 	public Bitmap isBitmapCached(String name) {
-		return mCacheMap.get(name);
+		Bitmap bitmap;
+
+		synchronized (mCacheMap) {
+			bitmap = mCacheMap.get(name);
+		}
+
+		if (bitmap != null)
+			CACHE_HITS.increment();
+		else
+			CACHE_MISSES.increment();
+
+		return bitmap;
 	}
 
-	public void setCancelThumbnails(boolean stop) {
-		mStop = stop;
+	/**
+	 * Cancels the thumbnails that are being decoded, the ones done stay cached.
+	 */
+	public synchronized void cancel() {
+		if (mJob != null) {
+			mJob.cancel();
+			mJob = null;
+		}
+		mFiles = null;
 	}
-	
-	public void createNewThumbnail(ArrayList<FileEntity> files,  String dir,  Handler handler) {
-		this.mFiles = files;
-		this.mDir = dir;
-		this.mHandler = handler;		
+
+	/**
+	 * Starts decoding the thumbnails of a listing, unless they are already being
+	 * decoded. The handler gets a message with the bitmap after each one.
+	 */
+	public synchronized void createNewThumbnail(final FileListing files, final PathNode dir, final Handler handler) {
+		if (files == mFiles && mJob != null && mJob.getState() <= JobScheduler.STATE_RUNNING)
+			return;
+
+		cancel();
+		mFiles = files;
+		mJob = mScheduler.submit(new JobScheduler.Job("Thumbnails " + dir.getPath(),
+				JobScheduler.LANE_BACKGROUND, dir.getPath()) {
+			@Override
+			protected void run() {
+				decode_all(files, dir, handler, this);
+			}
+		});
 	}
-	
-	@Override
-	public void run() {
-		int len = mFiles.size();
-		
-		for (int i = 0; i < len; i++) {	
-			if (mStop) {
-				mStop = false;
-				mFiles = null;
-				return;
+
+	/*
+	 * decodes the images of the listing that are not cached yet, until the job is cancelled
+	 */
+	private void decode_all(FileListing files, PathNode dir, Handler handler, JobScheduler.Job job) {
+		int len = files.size();
+
+		for (int i = 0; i < len && !job.isCancelled(); i++) {
+			if (!FileClassifier.isImage(files.getType(i)))
+				continue;
+
+			File file = dir.child(files.getName(i)).getFile();
+
+			synchronized (mCacheMap) {
+				if (mCacheMap.containsKey(file.getPath()))
+					continue;
 			}
-			final File file = new File(mDir + "/" + mFiles.get(i).getFileName());
-			
-			if (isImageFile(file.getName())) {
-				long len_kb = file.length() / 1024;
-				
-				BitmapFactory.Options options = new BitmapFactory.Options();
-				options.outWidth = mWidth;
-				options.outHeight = mHeight;
-					
-				if (len_kb > 1000 && len_kb < 5000) {
-					options.inSampleSize = 32;
-					options.inPurgeable = true;
-					mThumb = new SoftReference<Bitmap>(BitmapFactory.decodeFile(file.getPath(), options));
-										
-				} else if (len_kb >= 5000) {
-					options.inSampleSize = 32;
-					options.inPurgeable = true;
-					mThumb = new SoftReference<Bitmap>(BitmapFactory.decodeFile(file.getPath(), options));
-									
-				} else if (len_kb <= 1000) {
-					options.inPurgeable = true;
-					mThumb = new SoftReference<Bitmap>(Bitmap.createScaledBitmap(
-							 						   BitmapFactory.decodeFile(file.getPath()),
-							 						   mWidth,
-							 						   mHeight,
-							 						   false));
-				}
-								
-				mCacheMap.put(file.getPath(), mThumb.get());
-				
-				mHandler.post(new Runnable() {
-					@Override
-					public void run() {
-						Message msg = mHandler.obtainMessage();
-						msg.obj = (Bitmap)mThumb.get();
-						msg.sendToTarget();
-					}
-				});
+
+			long start = DECODE_TIME.start();
+			Bitmap thumb = decode(file, files.getSize(i) / 1024);
+			DECODE_TIME.stop(start);
+
+			if (thumb == null)
+				continue;
+
+			synchronized (mCacheMap) {
+				mCacheMap.put(file.getPath(), thumb);
 			}
+			if (!job.isCancelled())
+				handler.obtainMessage(0, thumb).sendToTarget();
 		}
 	}
-	
-	private boolean isImageFile(String file) {
-		String ext = file.substring(file.lastIndexOf(".") + 1);
-		
-		if (ext.equalsIgnoreCase("png") || ext.equalsIgnoreCase("jpg") ||
-			ext.equalsIgnoreCase("jpeg")|| ext.equalsIgnoreCase("gif") ||
-			ext.equalsIgnoreCase("tiff")|| ext.equalsIgnoreCase("tif"))
-			return true;
-		
-		return false;
+
+	private Bitmap decode(File file, long len_kb) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.outWidth = mWidth;
+		options.outHeight = mHeight;
+		options.inPurgeable = true;
+
+		if (len_kb > 1000) {
+			options.inSampleSize = 32;
+			return BitmapFactory.decodeFile(file.getPath(), options);
+		}
+
+		Bitmap full = BitmapFactory.decodeFile(file.getPath());
+
+		return full == null ? null : Bitmap.createScaledBitmap(full, mWidth, mHeight, false);
 	}
-}
\ No newline at end of file
+}